@@ -0,0 +1,113 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures one batch through {@link AsyncBatchMessageProcessorRoute}, with messages which complete
+ * immediately, so that the route's own overhead dominates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AsyncBatchMessageProcessorRouteBenchmark {
+    @Param({"1", "100", "1000"})
+    int batchSize;
+
+    /** Every nth message fails. 0 means none fail. */
+    @Param({"0", "10"})
+    int failEvery;
+
+    CamelContext context;
+    ProducerTemplate template;
+    List<Integer> batch;
+
+    volatile int lastFailureCount;
+
+    @Setup
+    public void setUp() throws Exception {
+        context = new DefaultCamelContext();
+        context.addRoutes(new AsyncBatchMessageProcessorRoute("direct:batch", "direct:failures",
+                Duration.ofSeconds(10), this::messageForBody));
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:failures").process(exchange -> lastFailureCount =
+                        exchange.getIn().getMandatoryBody(Collection.class).size());
+            }
+        });
+        context.start();
+
+        template = context.createProducerTemplate();
+
+        batch = new ArrayList<>(batchSize);
+
+        for (int i = 1; i <= batchSize; i++) {
+            batch.add(i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        context.stop();
+    }
+
+    @Benchmark
+    public int processBatch() {
+        template.sendBody("direct:batch", batch);
+        return lastFailureCount;
+    }
+
+    private Message messageForBody(Object body) {
+        int number = (Integer) body;
+        boolean fails = failEvery > 0 && number % failEvery == 0;
+
+        return () -> {
+            CompletableFuture<Void> processed = new CompletableFuture<>();
+
+            if (fails) {
+                processed.completeExceptionally(new RuntimeException("Failed message " + number));
+            } else {
+                processed.complete(null);
+            }
+
+            return processed;
+        };
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how {@link RetryingBatchFailedMessageRoute} compares a retried message's new failure
+ * with its previous one, which it does for every failed retry.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RetryingBatchFailedMessageRouteBenchmark {
+    @Param({"0", "3"})
+    int causeDepth;
+
+    Throwable exception;
+    Throwable equalException;
+    Throwable differentMessageException;
+
+    @Setup
+    public void setUp() {
+        Throwable[] equalExceptions = new Throwable[2];
+
+        // Created on the same line so that their stack traces are equal.
+        for (int i = 0; i < equalExceptions.length; i++) {
+            equalExceptions[i] = newException("failed", causeDepth);
+        }
+
+        exception = equalExceptions[0];
+        equalException = equalExceptions[1];
+        differentMessageException = newException("failed differently", causeDepth);
+    }
+
+    @Benchmark
+    public boolean sameException() {
+        return RetryingBatchFailedMessageRoute.areExceptionsEqual(exception, exception);
+    }
+
+    @Benchmark
+    public boolean equalExceptions() {
+        return RetryingBatchFailedMessageRoute.areExceptionsEqual(exception, equalException);
+    }
+
+    @Benchmark
+    public boolean differentMessages() {
+        return RetryingBatchFailedMessageRoute.areExceptionsEqual(
+                exception, differentMessageException);
+    }
+
+    private static Throwable newException(String message, int causeDepth) {
+        Throwable exception = new RuntimeException(message);
+
+        for (int i = 0; i < causeDepth; i++) {
+            exception = new RuntimeException(message, exception);
+        }
+
+        return exception;
+    }
+}
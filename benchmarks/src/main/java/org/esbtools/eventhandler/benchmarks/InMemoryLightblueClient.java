@@ -0,0 +1,149 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redhat.lightblue.client.LightblueClient;
+import com.redhat.lightblue.client.LightblueException;
+import com.redhat.lightblue.client.Locking;
+import com.redhat.lightblue.client.request.AbstractDataBulkRequest;
+import com.redhat.lightblue.client.request.AbstractLightblueDataRequest;
+import com.redhat.lightblue.client.request.LightblueRequest;
+import com.redhat.lightblue.client.response.DefaultLightblueDataResponse;
+import com.redhat.lightblue.client.response.LightblueBulkDataResponse;
+import com.redhat.lightblue.client.response.LightblueDataResponse;
+import com.redhat.lightblue.client.response.LightblueMetadataResponse;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * {@link LightblueClient} stand-in which answers every data request with the same canned
+ * response, parsed once up front, so that benchmarks measure our code rather than lightblue or
+ * the network.
+ */
+public class InMemoryLightblueClient implements LightblueClient {
+    private final LightblueDataResponse response;
+    private final Locking locking = new InMemoryLocking();
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * @param processed Documents to return from every request.
+     */
+    public InMemoryLightblueClient(Object... processed) {
+        try {
+            JsonNode responseJson = objectMapper.createObjectNode()
+                    .put("status", "COMPLETE")
+                    .put("modifiedCount", 0)
+                    .put("matchCount", processed.length)
+                    .set("processed", objectMapper.valueToTree(processed));
+            response = new DefaultLightblueDataResponse(responseJson);
+        } catch (LightblueException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @Override
+    public Locking getLocking(String domain) {
+        return locking;
+    }
+
+    @Override
+    public LightblueMetadataResponse metadata(LightblueRequest request) {
+        throw new UnsupportedOperationException("metadata");
+    }
+
+    @Override
+    public LightblueDataResponse data(LightblueRequest request) {
+        return response;
+    }
+
+    @Override
+    public LightblueBulkDataResponse bulkData(
+            AbstractDataBulkRequest<AbstractLightblueDataRequest> bulkRequest) {
+        return new CannedBulkDataResponse(bulkRequest.getRequests(), response);
+    }
+
+    @Override
+    public <T> T data(AbstractLightblueDataRequest request, Class<T> type)
+            throws LightblueException {
+        return response.parseProcessed(type);
+    }
+
+    private static class CannedBulkDataResponse implements LightblueBulkDataResponse {
+        private final List<? extends AbstractLightblueDataRequest> requests;
+        private final Map<LightblueRequest, LightblueDataResponse> responsesByRequest;
+        private final SortedMap<Integer, LightblueDataResponse> sequencedResponses =
+                new TreeMap<>();
+
+        CannedBulkDataResponse(List<? extends AbstractLightblueDataRequest> requests,
+                LightblueDataResponse response) {
+            this.requests = requests;
+            this.responsesByRequest = new IdentityHashMap<>(requests.size());
+
+            for (int i = 0; i < requests.size(); i++) {
+                responsesByRequest.put(requests.get(i), response);
+                sequencedResponses.put(i, response);
+            }
+        }
+
+        @Override
+        public LightblueDataResponse getResponse(LightblueRequest request) {
+            return responsesByRequest.get(request);
+        }
+
+        @Override
+        public LightblueDataResponse getResponse(int sequence) {
+            return sequencedResponses.get(sequence);
+        }
+
+        @Override
+        public List<LightblueDataResponse> getResponses() {
+            return new ArrayList<>(sequencedResponses.values());
+        }
+
+        @Override
+        public List<? extends AbstractLightblueDataRequest> getRequests() {
+            return requests;
+        }
+
+        @Override
+        public SortedMap<Integer, LightblueDataResponse> getSequencedResponses() {
+            return sequencedResponses;
+        }
+
+        @Override
+        public String getText() {
+            return getJson().toString();
+        }
+
+        @Override
+        public JsonNode getJson() {
+            return objectMapper.valueToTree(getResponses().stream()
+                    .map(LightblueDataResponse::getJson)
+                    .toArray());
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler.benchmarks;
+
+import com.redhat.lightblue.client.Locking;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Lightblue {@link Locking} stand-in which holds locks in memory, so that lock strategies may be
+ * benchmarked without the cost of a lightblue instance. Locks never expire.
+ */
+public class InMemoryLocking extends Locking {
+    private final ConcurrentMap<String, String> callersByResourceId = new ConcurrentHashMap<>();
+
+    public InMemoryLocking() {
+        super("benchmarks");
+    }
+
+    @Override
+    public boolean acquire(String callerId, String resourceId, Long ttl) {
+        return callersByResourceId.putIfAbsent(resourceId, callerId) == null;
+    }
+
+    @Override
+    public boolean release(String callerId, String resourceId) {
+        return callersByResourceId.remove(resourceId, callerId);
+    }
+
+    @Override
+    public int getLockCount(String callerId, String resourceId) {
+        return callerId.equals(callersByResourceId.get(resourceId)) ? 1 : 0;
+    }
+
+    @Override
+    public boolean ping(String callerId, String resourceId) {
+        return callerId.equals(callersByResourceId.get(resourceId));
+    }
+}
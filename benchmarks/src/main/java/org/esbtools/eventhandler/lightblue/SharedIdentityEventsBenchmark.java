@@ -0,0 +1,193 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler.lightblue;
+
+import org.esbtools.eventhandler.DocumentEvent;
+import org.esbtools.eventhandler.benchmarks.InMemoryLightblueClient;
+import org.esbtools.eventhandler.benchmarks.InMemoryLocking;
+import org.esbtools.eventhandler.lightblue.LightblueDocumentEventRepository.SharedIdentityEvents;
+import org.esbtools.eventhandler.lightblue.client.BulkLightblueRequester;
+import org.esbtools.eventhandler.lightblue.locking.LightblueAutoPingLockStrategy;
+import org.esbtools.eventhandler.lightblue.locking.LockStrategy;
+import org.esbtools.eventhandler.lightblue.locking.LockedResources;
+import org.esbtools.eventhandler.lightblue.partitioning.IdentityPartitioner;
+
+import com.google.common.util.concurrent.Futures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing, locking, and optimizing a batch of retrieved document event entities.
+ *
+ * <p>Events are spread evenly among {@link #identities}. Within an identity, events with the same
+ * value supersede one another, and there are {@link #valuesPerIdentity} distinct values, so more
+ * values per identity means more events survive optimization and more comparisons are needed.
+ * {@link #keyed} events expose their value as a {@link KeyedDocumentEvent#optimizationKey()}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SharedIdentityEventsBenchmark {
+    @Param({"1000"})
+    int events;
+
+    @Param({"1", "10", "100", "1000"})
+    int identities;
+
+    @Param({"1", "10"})
+    int valuesPerIdentity;
+
+    @Param({"false", "true"})
+    boolean keyed;
+
+    final Clock clock = Clock.systemUTC();
+
+    ScheduledExecutorService pingScheduler;
+    LockStrategy lockStrategy;
+    BulkLightblueRequester requester;
+    Map<String, DocumentEventFactory> documentEventFactoriesByType;
+
+    DocumentEventEntity[] entities;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        pingScheduler = LightblueAutoPingLockStrategy.newSharedPingScheduler(1);
+        lockStrategy = new LightblueAutoPingLockStrategy(new InMemoryLocking(),
+                Duration.ofMinutes(1), Duration.ofMinutes(5), pingScheduler);
+        requester = new BulkLightblueRequester(new InMemoryLightblueClient());
+        documentEventFactoriesByType = Collections.singletonMap("Benchmark",
+                (entity, requester) -> keyed
+                        ? new KeyedBenchmarkDocumentEvent(entity)
+                        : new BenchmarkDocumentEvent(entity));
+    }
+
+    /** Optimization mutates entities, so each invocation needs fresh ones. */
+    @Setup(Level.Invocation)
+    public void setUpEntities() {
+        entities = new DocumentEventEntity[events];
+        ZonedDateTime now = ZonedDateTime.now(clock);
+
+        for (int i = 0; i < events; i++) {
+            int identity = i % identities;
+            int value = (i / identities) % valuesPerIdentity;
+
+            DocumentEventEntity entity = DocumentEventEntity.newlyCreated(null, "Benchmark", 50,
+                    now,
+                    new DocumentEventEntity.KeyAndValue("identity", Integer.toString(identity)),
+                    new DocumentEventEntity.KeyAndValue("value", Integer.toString(value)));
+            entity.set_id(Integer.toString(i));
+            entities[i] = entity;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() {
+        pingScheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public int parseAndOptimize() throws IOException {
+        try (LockedResources<SharedIdentityEvents> locks =
+                     SharedIdentityEvents.parseAndOptimizeLockableDocumentEventEntities(
+                             identities, entities, requester, documentEventFactoriesByType,
+                             lockStrategy, IdentityPartitioner.ownsEverything(), clock)) {
+            return locks.getLocks().size();
+        }
+    }
+
+    static class BenchmarkDocumentEvent implements LightblueDocumentEvent {
+        final String identity;
+        final String value;
+        final DocumentEventEntity wrappedEntity;
+
+        BenchmarkDocumentEvent(DocumentEventEntity wrappedEntity) {
+            this.wrappedEntity = wrappedEntity;
+
+            identity = wrappedEntity.getParameterByKey("identity");
+            value = wrappedEntity.getParameterByKey("value");
+        }
+
+        @Override
+        public Identity identity() {
+            return new TypeAndValueIdentity(BenchmarkDocumentEvent.class, identity);
+        }
+
+        @Override
+        public DocumentEventEntity wrappedDocumentEventEntity() {
+            return wrappedEntity;
+        }
+
+        @Override
+        public Future<?> lookupDocument() {
+            return Futures.immediateFuture(value);
+        }
+
+        @Override
+        public boolean isSupersededBy(DocumentEvent event) {
+            if (!(event instanceof BenchmarkDocumentEvent)) {
+                return false;
+            }
+
+            BenchmarkDocumentEvent other = (BenchmarkDocumentEvent) event;
+
+            return Objects.equals(identity, other.identity) && Objects.equals(value, other.value);
+        }
+
+        @Override
+        public boolean couldMergeWith(DocumentEvent event) {
+            return false;
+        }
+
+        @Override
+        public LightblueDocumentEvent merge(DocumentEvent event) {
+            throw new UnsupportedOperationException("Benchmark events do not merge.");
+        }
+    }
+
+    static class KeyedBenchmarkDocumentEvent extends BenchmarkDocumentEvent
+            implements KeyedDocumentEvent {
+        KeyedBenchmarkDocumentEvent(DocumentEventEntity wrappedEntity) {
+            super(wrappedEntity);
+        }
+
+        @Override
+        public Object optimizationKey() {
+            return value;
+        }
+    }
+}
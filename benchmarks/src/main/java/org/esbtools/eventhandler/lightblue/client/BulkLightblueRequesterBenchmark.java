@@ -0,0 +1,86 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler.lightblue.client;
+
+import org.esbtools.eventhandler.TransformableFuture;
+import org.esbtools.eventhandler.benchmarks.InMemoryLightblueClient;
+import org.esbtools.eventhandler.lightblue.DocumentEventEntity;
+
+import com.redhat.lightblue.client.Projection;
+import com.redhat.lightblue.client.Query;
+import com.redhat.lightblue.client.request.data.DataFindRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures queueing many lazy requests and resolving them all in one bulk request, as document
+ * events do when looking up their documents.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BulkLightblueRequesterBenchmark {
+    @Param({"1", "10", "100", "1000"})
+    int requests;
+
+    InMemoryLightblueClient lightblue;
+    DataFindRequest[] findRequests;
+
+    @Setup
+    public void setUp() {
+        lightblue = new InMemoryLightblueClient(
+                DocumentEventEntity.newlyCreated(null, "Benchmark", 50, null,
+                        new DocumentEventEntity.KeyAndValue("key", "value")));
+
+        findRequests = new DataFindRequest[requests];
+
+        for (int i = 0; i < requests; i++) {
+            DataFindRequest find = new DataFindRequest(DocumentEventEntity.ENTITY_NAME,
+                    DocumentEventEntity.VERSION);
+            find.where(Query.withValue("_id", Query.BinOp.eq, Integer.toString(i)));
+            find.select(Projection.includeFieldRecursively("*"));
+            findRequests[i] = find;
+        }
+    }
+
+    @Benchmark
+    public void requestAndResolveAll(Blackhole blackhole) throws Exception {
+        BulkLightblueRequester requester = new BulkLightblueRequester(lightblue);
+        List<TransformableFuture<LightblueDataResponses>> futures = new ArrayList<>(requests);
+
+        for (DataFindRequest find : findRequests) {
+            futures.add(requester.request(find));
+        }
+
+        for (int i = 0; i < requests; i++) {
+            blackhole.consume(futures.get(i).get().forRequest(findRequests[i]));
+        }
+    }
+}
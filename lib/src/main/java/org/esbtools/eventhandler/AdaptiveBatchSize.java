@@ -0,0 +1,127 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Decides how many items a polling route should retrieve per cycle, based on how long previous
+ * cycles took. A cycle is retrieving a batch and everything done with it until it is finished
+ * processing.
+ *
+ * <p>The batch size is adjusted additively up and multiplicatively down (AIMD). If a cycle of a
+ * full batch finished within the target cycle time, the batch size increases by a fixed step. If
+ * a cycle took longer than the target cycle time, the batch size is halved. Cycles of partial
+ * batches within the target say nothing about whether larger batches would be fine, so they do
+ * not increase the batch size.
+ *
+ * <p>The target cycle time is capped by a cycle time limit, which should be how long retrieved
+ * items may be processed before they may be retrieved again by another poll (for example, a
+ * processing timeout minus its expire threshold).
+ *
+ * <p>Bounds are retrieved from suppliers each time they are needed, so they may be backed by
+ * configuration which changes at runtime.
+ */
+@ThreadSafe
+public class AdaptiveBatchSize {
+    private final int additiveIncrease;
+    private final Supplier<Integer> minBatchSize;
+    private final Supplier<Integer> maxBatchSize;
+    private final Supplier<Duration> targetCycleTime;
+    private final Supplier<Duration> cycleTimeLimit;
+
+    private int currentBatchSize;
+
+    /**
+     * @param initialBatchSize Batch size to start with, before any cycles have completed.
+     * @param additiveIncrease How much to increase the batch size by after a full batch finished
+     *                         within the target cycle time.
+     * @param minBatchSize The batch size will never be decreased below this.
+     * @param maxBatchSize The batch size will never be increased above this.
+     * @param targetCycleTime How long cycles should take.
+     * @param cycleTimeLimit How long cycles must not take. If less than the target, this is the
+     *                       effective target.
+     */
+    public AdaptiveBatchSize(int initialBatchSize, int additiveIncrease,
+            Supplier<Integer> minBatchSize, Supplier<Integer> maxBatchSize,
+            Supplier<Duration> targetCycleTime, Supplier<Duration> cycleTimeLimit) {
+        if (initialBatchSize < 1) {
+            throw new IllegalArgumentException("initialBatchSize must be at least 1 but was: " +
+                    initialBatchSize);
+        }
+
+        if (additiveIncrease < 1) {
+            throw new IllegalArgumentException("additiveIncrease must be at least 1 but was: " +
+                    additiveIncrease);
+        }
+
+        this.currentBatchSize = initialBatchSize;
+        this.additiveIncrease = additiveIncrease;
+        this.minBatchSize = Objects.requireNonNull(minBatchSize, "minBatchSize");
+        this.maxBatchSize = Objects.requireNonNull(maxBatchSize, "maxBatchSize");
+        this.targetCycleTime = Objects.requireNonNull(targetCycleTime, "targetCycleTime");
+        this.cycleTimeLimit = Objects.requireNonNull(cycleTimeLimit, "cycleTimeLimit");
+    }
+
+    /**
+     * The batch size the next cycle should use.
+     */
+    public synchronized int getCurrentBatchSize() {
+        return clamp(currentBatchSize);
+    }
+
+    /**
+     * Adjusts the batch size given a completed cycle.
+     *
+     * @param batchSize The batch size the cycle asked for.
+     * @param retrieved How many items the cycle actually retrieved.
+     * @param cycleTime How long the cycle took, from retrieval until finished processing.
+     */
+    public synchronized void onCycleCompleted(int batchSize, int retrieved, Duration cycleTime) {
+        Duration target = targetCycleTime.get();
+        Duration limit = cycleTimeLimit.get();
+
+        if (limit.compareTo(target) < 0) {
+            target = limit;
+        }
+
+        int current = clamp(currentBatchSize);
+
+        // With pipelining, cycles may complete after the batch size was already adjusted since
+        // they started. Those cycles do not tell us anything about the current batch size.
+        if (cycleTime.compareTo(target) > 0) {
+            if (batchSize <= current) {
+                currentBatchSize = clamp(current / 2);
+            }
+        } else if (retrieved >= batchSize && batchSize >= current) {
+            // The max may be as large as Integer.MAX_VALUE, so do not let the increase overflow.
+            currentBatchSize = clamp(
+                    (int) Math.min((long) current + additiveIncrease, Integer.MAX_VALUE));
+        }
+    }
+
+    private int clamp(int batchSize) {
+        int min = Math.max(1, minBatchSize.get());
+        int max = Math.max(min, maxBatchSize.get());
+        return Math.min(max, Math.max(min, batchSize));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Decides when a polling route should next poll based on how full its last batch was.
+ *
+ * <p>After a full batch, there is likely more work waiting, so the next poll is due after only the
+ * minimum interval. After an empty batch, the interval doubles, up to the maximum interval, so an
+ * idle repository is not queried needlessly. After a partial batch, or the first time, the
+ * initial interval is used.
+ *
+ * <p>Bounds are retrieved from suppliers each time they are needed, so they may be backed by
+ * configuration which changes at runtime.
+ */
+@ThreadSafe
+public class AdaptivePollingInterval {
+    /**
+     * How often a route using an adaptive interval checks whether a poll is due. This is the
+     * effective lower bound of the minimum interval.
+     */
+    static final Duration DUE_CHECK_PERIOD = Duration.ofMillis(50);
+
+    private final Duration initialInterval;
+    private final Supplier<Duration> minInterval;
+    private final Supplier<Duration> maxInterval;
+
+    private Duration currentInterval;
+    private long nextPollNanos = System.nanoTime();
+
+    /**
+     * @param initialInterval Interval used at first and after partial batches.
+     * @param minInterval Interval used after full batches.
+     * @param maxInterval Ceiling of the interval when backing off after empty batches.
+     */
+    public AdaptivePollingInterval(Duration initialInterval, Supplier<Duration> minInterval,
+            Supplier<Duration> maxInterval) {
+        this.initialInterval = Objects.requireNonNull(initialInterval, "initialInterval");
+        this.minInterval = Objects.requireNonNull(minInterval, "minInterval");
+        this.maxInterval = Objects.requireNonNull(maxInterval, "maxInterval");
+        this.currentInterval = initialInterval;
+    }
+
+    public synchronized boolean isPollDue() {
+        return System.nanoTime() - nextPollNanos >= 0;
+    }
+
+    /**
+     * Schedules the next poll given the result of the last one.
+     *
+     * @param retrieved How many items the last poll retrieved.
+     * @param batchSize How many items the last poll asked for.
+     */
+    public synchronized void onBatchRetrieved(int retrieved, int batchSize) {
+        Duration min = minInterval.get();
+        Duration max = maxInterval.get();
+
+        if (retrieved >= batchSize) {
+            currentInterval = min;
+        } else if (retrieved == 0) {
+            Duration backedOff = currentInterval.compareTo(initialInterval) < 0
+                    ? initialInterval
+                    : currentInterval.multipliedBy(2);
+            currentInterval = backedOff.compareTo(max) > 0 ? max : backedOff;
+        } else {
+            currentInterval = initialInterval;
+        }
+
+        if (currentInterval.compareTo(min) < 0) {
+            currentInterval = min;
+        }
+
+        nextPollNanos = System.nanoTime() + currentInterval.toNanos();
+    }
+
+    /**
+     * Treats a failed poll like an empty one, backing off.
+     */
+    public void onBatchFailed() {
+        onBatchRetrieved(0, 1);
+    }
+
+    public synchronized Duration getCurrentInterval() {
+        return currentInterval;
+    }
+}
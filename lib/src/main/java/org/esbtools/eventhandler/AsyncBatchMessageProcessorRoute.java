@@ -18,17 +18,20 @@
 
 package org.esbtools.eventhandler;
 
+import org.apache.camel.ProducerTemplate;
 import org.apache.camel.builder.RouteBuilder;
 
+import javax.annotation.Nullable;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -37,6 +40,8 @@ public class AsyncBatchMessageProcessorRoute extends RouteBuilder {
     private final String failureUri;
     private final Duration processTimeout;
     private final MessageFactory messageFactory;
+    private final @Nullable Duration failureWindow;
+    private final int maxMessagesInFlight;
 
     private final int idCount = idCounter.getAndIncrement();
     private final String routeId = "messageProcessor-" + idCount;
@@ -49,98 +54,211 @@ public class AsyncBatchMessageProcessorRoute extends RouteBuilder {
      *                {@code messageFactory} to parse them into {@link Message}s.
      * @param failureUri Endpoint where failures will be sent to as a {@code Collection} of
      *                   {@link FailedMessage}s.
-     * @param processTimeout How to long to wait for a message process before timing out?
+     * @param processTimeout How to long to wait for a batch of messages to process before timing
+     *                       out those which have not finished?
      * @param messageFactory Accepts each element in the exchange body {@code Collection} and
      *                       parses them to create message implementations which will be processed.
      */
     public AsyncBatchMessageProcessorRoute(String fromUri, String failureUri,
             Duration processTimeout, MessageFactory messageFactory) {
+        this(fromUri, failureUri, processTimeout, messageFactory, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Streams failures to {@code failureUri} while the batch is still processing, rather than
+     * sending them all once the whole batch is done, so that they may be retried without waiting
+     * on the slowest message in the batch.
+     *
+     * @param failureWindow How long to collect failures before sending them on, as one
+     *                      {@code Collection} of {@link FailedMessage}s. The window starts at the
+     *                      first failure not yet sent. {@link Duration#ZERO} sends each failure
+     *                      as soon as it is found.
+     * @see #AsyncBatchMessageProcessorRoute(String, String, Duration, MessageFactory)
+     */
+    public AsyncBatchMessageProcessorRoute(String fromUri, String failureUri,
+            Duration processTimeout, MessageFactory messageFactory, Duration failureWindow) {
+        this(fromUri, failureUri, processTimeout, messageFactory,
+                Objects.requireNonNull(failureWindow, "failureWindow"), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Processes at most {@code maxMessagesInFlight} messages at a time, starting the next message
+     * in the batch as soon as any message in flight finishes, rather than starting all of the
+     * batch's messages at once. Messages not yet started by the time the batch times out fail
+     * with a timeout, like those still processing.
+     *
+     * <p>{@code fromUri} may also deliver {@link Iterable} or {@link Iterator} bodies. These are
+     * only read from as messages are started, so with a limit, large batches need not be held in
+     * memory at once.
+     *
+     * @param failureWindow See
+     *                      {@link #AsyncBatchMessageProcessorRoute(String, String, Duration,
+     *                      MessageFactory, Duration)}. May be null to send all of a batch's
+     *                      failures once the batch is done.
+     * @param maxMessagesInFlight How many messages from a batch may process at once.
+     * @see #AsyncBatchMessageProcessorRoute(String, String, Duration, MessageFactory)
+     */
+    public AsyncBatchMessageProcessorRoute(String fromUri, String failureUri,
+            Duration processTimeout, MessageFactory messageFactory,
+            @Nullable Duration failureWindow, int maxMessagesInFlight) {
         this.fromUri = Objects.requireNonNull(fromUri, "fromUri");
         this.failureUri = Objects.requireNonNull(failureUri, "failureUri");
         this.processTimeout = Objects.requireNonNull(processTimeout, "processTimeout");
         this.messageFactory = Objects.requireNonNull(messageFactory, "messageFactory");
+        this.failureWindow = failureWindow;
+
+        if (maxMessagesInFlight < 1) {
+            throw new IllegalArgumentException("maxMessagesInFlight must be at least 1, but was " +
+                    maxMessagesInFlight);
+        }
+
+        this.maxMessagesInFlight = maxMessagesInFlight;
     }
 
     @Override
     public void configure() throws Exception {
+        ProducerTemplate failureProducer = failureWindow == null
+                ? null
+                : getContext().createProducerTemplate();
+
         from(fromUri)
         .routeId(routeId)
+        .routePolicy(failureProducer == null
+                ? new ServicesRoutePolicy()
+                : new ServicesRoutePolicy(failureProducer))
         .process(exchange -> {
             Object exchangeBody = exchange.getIn().getBody();
+            Iterator<?> originalMessages;
 
-            if (!(exchangeBody instanceof Collection)) {
+            if (exchangeBody instanceof Iterable) {
+                originalMessages = ((Iterable<?>) exchangeBody).iterator();
+            } else if (exchangeBody instanceof Iterator) {
+                originalMessages = (Iterator<?>) exchangeBody;
+            } else {
                 throw new IllegalArgumentException("Expected `fromUri` to deliver exchanges with " +
-                        "Collection bodies so that we may batch process for efficiency. However, " +
-                        "the uri '" + fromUri + "' returned " +
+                        "Collection, Iterable, or Iterator bodies so that we may batch process " +
+                        "for efficiency. However, the uri '" + fromUri + "' returned " +
                         ((exchangeBody == null)
                                 ? "null."
                                 : "the " + exchangeBody.getClass().getName() + ": " + exchangeBody));
             }
 
-            Collection originalMessages = (Collection) exchangeBody;
+            if (exchangeBody instanceof Collection) {
+                log.debug("Received {} messages on route {}: {}",
+                        ((Collection) exchangeBody).size(), routeId, exchangeBody);
+            }
 
-            List<ProcessingMessage> processingMessages = new ArrayList<>(originalMessages.size());
             List<FailedMessage> failures = new ArrayList<>();
+            List<Message> processedSuccessfully = log.isDebugEnabled()
+                    ? new ArrayList<>()
+                    : Collections.emptyList();
+            int received = 0;
 
-            log.debug("Received {} messages on route {}: {}",
-                    originalMessages.size(), routeId, originalMessages);
+            // Process messages in the batch in parallel, up to the in flight limit, as they
+            // complete, up to one timeout for the whole batch.
+            FutureBatch<ProcessingMessage> processingBatch = new FutureBatch<>(
+                    Collections.emptyList(), m -> m.future, processTimeout);
+            InterruptedException interrupted = null;
+            long failureWindowEndNanos = 0;
+            boolean streamFailures = failureWindow != null;
 
-            // Start processing all of the messages in the batch in parallel.
-            for (Object originalMessage : originalMessages) {
-                final Message message;
+            try {
+                while (true) {
+                    int failureCount = failures.size();
 
-                try {
-                    message = messageFactory.getMessageForBody(originalMessage);
-                } catch (Exception e) {
-                    log.error("Failure parsing message. Body was: " + originalMessage, e);
-                    failures.add(new FailedMessage(originalMessage, e));
-                    continue;
-                }
+                    while (processingBatch.pending().size() < maxMessagesInFlight &&
+                            originalMessages.hasNext() && !processingBatch.isPastDeadline()) {
+                        received++;
+                        startProcessing(originalMessages.next(), processingBatch, failures);
+                    }
 
-                final Future<Void> processingFuture;
+                    if (streamFailures && failureCount == 0 && !failures.isEmpty()) {
+                        failureWindowEndNanos = System.nanoTime() + failureWindow.toNanos();
+                    }
 
-                try {
-                    processingFuture = message.process();
-                } catch (Exception e) {
-                    log.error("Failed to process message: " + message, e);
-                    FailedMessage failure = new FailedMessage(originalMessage, message, e);
-                    failures.add(failure);
-                    continue;
-                }
+                    if (streamFailures && !failures.isEmpty() &&
+                            System.nanoTime() - failureWindowEndNanos >= 0) {
+                        log.debug("Sending {} failures from route {} while batch is processing",
+                                failures.size(), routeId);
+                        try {
+                            failureProducer.sendBody(failureUri, failures);
+                            failures = new ArrayList<>();
+                        } catch (Exception e) {
+                            // Keep the failures to send with the rest once the batch is done.
+                            log.error("Failed to send failures to " + failureUri + " while " +
+                                    "batch is processing. Will send all failures once batch is " +
+                                    "done instead.", e);
+                            streamFailures = false;
+                        }
+                    }
 
-                ProcessingMessage processing = new ProcessingMessage(
-                        originalMessage, message, processingFuture);
-                processingMessages.add(processing);
-            }
+                    Optional<ProcessingMessage> maybeDone = processingBatch.nextDone(
+                            !streamFailures || failures.isEmpty()
+                                    ? Long.MAX_VALUE
+                                    : failureWindowEndNanos - System.nanoTime());
 
-            List<Message> processedSuccessfully = log.isDebugEnabled()
-                    ? new ArrayList<>(processingMessages.size())
-                    : Collections.emptyList();
+                    if (!maybeDone.isPresent()) {
+                        if (processingBatch.isPastDeadline() ||
+                                (processingBatch.pending().isEmpty() &&
+                                        !originalMessages.hasNext())) {
+                            break;
+                        }
+                        continue;
+                    }
+
+                    ProcessingMessage processingMsg = maybeDone.get();
+                    failureCount = failures.size();
 
-            // Wait for processing to complete.
-            for (ProcessingMessage processingMsg : processingMessages) {
-                try {
-                    processingMsg.future.get(processTimeout.toMillis(), TimeUnit.MILLISECONDS);
+                    try {
+                        processingMsg.future.get();
 
-                    if (log.isDebugEnabled()) {
-                        processedSuccessfully.add(processingMsg.parsedMessage);
+                        if (log.isDebugEnabled()) {
+                            processedSuccessfully.add(processingMsg.parsedMessage);
+                        }
+                    } catch (ExecutionException e) {
+                        log.error("Failed to process message: " + processingMsg.parsedMessage, e);
+                        FailedMessage failure = new FailedMessage(processingMsg.originalMessage,
+                                processingMsg.parsedMessage, e.getCause());
+                        failures.add(failure);
+                    } catch (InterruptedException e) {
+                        failures.add(new FailedMessage(processingMsg.originalMessage,
+                                processingMsg.parsedMessage, e));
+                        throw e;
+                    }
+
+                    if (streamFailures && failureCount == 0 && !failures.isEmpty()) {
+                        failureWindowEndNanos = System.nanoTime() + failureWindow.toNanos();
                     }
-                } catch (ExecutionException e) {
-                    log.error("Failed to process message: " + processingMsg.parsedMessage, e);
-                    FailedMessage failure = new FailedMessage(processingMsg.originalMessage,
-                            processingMsg.parsedMessage, e.getCause());
-                    failures.add(failure);
-                } catch (InterruptedException | TimeoutException e) {
-                    log.warn("Timed out processing message: " + processingMsg.parsedMessage, e);
-                    FailedMessage failure = new FailedMessage(
-                            processingMsg.originalMessage, processingMsg.parsedMessage, e);
-                    failures.add(failure);
                 }
+            } catch (InterruptedException e) {
+                interrupted = e;
+                Thread.currentThread().interrupt();
+            }
+
+            for (ProcessingMessage processingMsg : processingBatch.pending()) {
+                Exception e = interrupted != null
+                        ? interrupted
+                        : new TimeoutException("Message not processed within batch timeout of " +
+                                processTimeout);
+                log.warn("Timed out processing message: " + processingMsg.parsedMessage, e);
+                FailedMessage failure = new FailedMessage(
+                        processingMsg.originalMessage, processingMsg.parsedMessage, e);
+                failures.add(failure);
+            }
+
+            while (originalMessages.hasNext()) {
+                Object originalMessage = originalMessages.next();
+                received++;
+                Exception e = interrupted != null
+                        ? interrupted
+                        : new TimeoutException("Message not started within batch timeout of " +
+                                processTimeout);
+                log.warn("Timed out before processing message. Body was: " + originalMessage, e);
+                failures.add(new FailedMessage(originalMessage, e));
             }
 
             log.debug("Processed {}/{} messages on route {}: {}",
-                    processedSuccessfully.size(), originalMessages.size(),
-                    routeId, processedSuccessfully);
+                    processedSuccessfully.size(), received, routeId, processedSuccessfully);
 
             // Deal with failures...
             exchange.getIn().setBody(failures);
@@ -148,6 +266,36 @@ public class AsyncBatchMessageProcessorRoute extends RouteBuilder {
         .to(failureUri);
     }
 
+    /**
+     * Parses and starts processing a message, adding it to the {@code processingBatch}, or to
+     * {@code failures} if it could not be parsed or started.
+     */
+    private void startProcessing(Object originalMessage,
+            FutureBatch<ProcessingMessage> processingBatch, List<FailedMessage> failures) {
+        final Message message;
+
+        try {
+            message = messageFactory.getMessageForBody(originalMessage);
+        } catch (Exception e) {
+            log.error("Failure parsing message. Body was: " + originalMessage, e);
+            failures.add(new FailedMessage(originalMessage, e));
+            return;
+        }
+
+        final Future<Void> processingFuture;
+
+        try {
+            processingFuture = message.process();
+        } catch (Exception e) {
+            log.error("Failed to process message: " + message, e);
+            FailedMessage failure = new FailedMessage(originalMessage, message, e);
+            failures.add(failure);
+            return;
+        }
+
+        processingBatch.add(new ProcessingMessage(originalMessage, message, processingFuture));
+    }
+
     /**
      * Simple struct for storing a message and its future processing result.
      */
@@ -18,8 +18,10 @@
 
 package org.esbtools.eventhandler;
 
+import java.time.Duration;
 import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Abstracts a transactional backing store and staging area for {@link DocumentEvent events}.
@@ -59,6 +61,19 @@ public interface DocumentEventRepository {
      */
     List<? extends DocumentEvent> retrievePriorityDocumentEventsUpTo(int maxEvents) throws Exception;
 
+    /**
+     * Like {@link #retrievePriorityDocumentEventsUpTo(int)}, but also tells how many events were
+     * retrieved before they were optimized. Since optimization may drop and merge many events,
+     * this is a better measure of how much work was waiting than the number of events returned.
+     *
+     * <p>By default, returned events are assumed to be all of the events which were retrieved.
+     */
+    default RetrievedDocumentEvents<? extends DocumentEvent>
+            retrievePriorityDocumentEventsAndCountUpTo(int maxEvents) throws Exception {
+        List<? extends DocumentEvent> documentEvents = retrievePriorityDocumentEventsUpTo(maxEvents);
+        return new RetrievedDocumentEvents<>(documentEvents, documentEvents.size());
+    }
+
     /**
      * Throws a descriptive exception if the provided {@code event} is not in an active transaction,
      * or if the current state of its transaction is unknown.
@@ -85,4 +100,15 @@ public interface DocumentEventRepository {
     // TODO: Should we make rollback from failure explicit or leave this up to impl?
     void markDocumentEventsPublishedOrFailed(Collection<? extends DocumentEvent> events,
             Collection<FailedDocumentEvent> failures) throws Exception;
+
+    /**
+     * How long after being retrieved from {@link #retrievePriorityDocumentEventsUpTo(int)} an
+     * event's transaction remains active at most, if known. Work for retrieved events which is not
+     * done by then may be abandoned, since their transactions will have ended anyway.
+     *
+     * <p>By default, this is not known, and work is never abandoned.
+     */
+    default Optional<Duration> getTransactionTimeout() {
+        return Optional.empty();
+    }
 }
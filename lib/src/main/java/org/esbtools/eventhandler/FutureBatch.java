@@ -0,0 +1,188 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Waits on a batch of futures under one deadline for the whole batch, rather than one timeout per
+ * future, so that a batch of stuck futures holds the waiting thread no longer than that deadline.
+ *
+ * <p>Items are returned in the order their futures are found to be done. Futures which support
+ * completion callbacks report themselves done; others are checked periodically. While none are
+ * done, this waits on the oldest pending future in short slices, rather than only waiting for
+ * callbacks, because some futures only complete lazily, when waited on.
+ *
+ * <p>Not thread safe.
+ */
+class FutureBatch<T> {
+    private final Map<T, Future<?>> pending;
+    private final Map<T, Future<?>> unobservable;
+    private final Queue<T> done = new ConcurrentLinkedQueue<>();
+    private final Function<T, Future<?>> toFuture;
+    private final long deadlineNanos;
+
+    /**
+     * How long to wait on the oldest pending future before checking whether any others are done.
+     */
+    static final long WAIT_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    FutureBatch(Collection<T> items, Function<T, Future<?>> toFuture, Duration timeout) {
+        this.deadlineNanos = System.nanoTime() + timeout.toNanos();
+        this.toFuture = toFuture;
+        this.pending = new LinkedHashMap<>(items.size());
+        this.unobservable = new LinkedHashMap<>();
+
+        for (T item : items) {
+            add(item);
+        }
+    }
+
+    /**
+     * Adds an item to the batch, under the same deadline as the rest of the batch.
+     */
+    void add(T item) {
+        Future<?> future = toFuture.apply(item);
+        pending.put(item, future);
+
+        if (future instanceof TransformableFuture) {
+            ((TransformableFuture<?>) future).whenDoneOrCancelled(() -> done.add(item));
+        } else if (future instanceof CompletableFuture) {
+            ((CompletableFuture<?>) future).whenComplete((result, exception) -> done.add(item));
+        } else if (future instanceof ListenableFuture) {
+            ((ListenableFuture<?>) future).addListener(() -> done.add(item),
+                    MoreExecutors.directExecutor());
+        } else {
+            unobservable.put(item, future);
+        }
+    }
+
+    /**
+     * Returns the next item whose future is done, waiting until the batch deadline at most.
+     * Getting the item's future result will then not block.
+     *
+     * @return The next done item, or empty if there are no more pending items or the deadline
+     * passed before any more were done.
+     */
+    Optional<T> nextDone() throws InterruptedException {
+        return nextDone(Long.MAX_VALUE);
+    }
+
+    /**
+     * Like {@link #nextDone()}, but waits no longer than {@code maxWaitNanos}, even if the batch
+     * deadline is further off. Use {@link #isPastDeadline()} to tell whether an empty result
+     * was due to the deadline or this shorter wait.
+     */
+    Optional<T> nextDone(long maxWaitNanos) throws InterruptedException {
+        long startNanos = System.nanoTime();
+        long waitNanos = Math.min(deadlineNanos - startNanos, maxWaitNanos);
+
+        while (!pending.isEmpty()) {
+            Optional<T> maybeDone = pollDone();
+
+            if (maybeDone.isPresent()) {
+                return maybeDone;
+            }
+
+            long remainingNanos = waitNanos - (System.nanoTime() - startNanos);
+
+            if (remainingNanos <= 0) {
+                if (isPastDeadline()) {
+                    // Last look, so that futures done by the deadline are never reported as
+                    // timed out, whether or not we noticed them yet.
+                    pending.forEach((item, future) -> {
+                        if (future.isDone() && !unobservable.containsKey(item)) {
+                            done.add(item);
+                        }
+                    });
+                    return pollDone();
+                }
+
+                return Optional.empty();
+            }
+
+            Future<?> oldest = pending.values().iterator().next();
+
+            try {
+                oldest.get(Math.min(remainingNanos, WAIT_SLICE_NANOS), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException | CancellationException | TimeoutException e) {
+                // Either done, which we find out on the next poll, or keep waiting.
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    boolean isPastDeadline() {
+        return System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * Items whose futures have not yet been harvested. Once {@link #nextDone()} returns empty,
+     * these are the items whose futures were not done by the deadline.
+     */
+    Collection<T> pending() {
+        return pending.keySet();
+    }
+
+    /**
+     * Harvests an item whose future is done, if any, without waiting. Unobservable futures
+     * found done are queued all at once, so each is only checked once per call.
+     */
+    private Optional<T> pollDone() {
+        if (done.isEmpty()) {
+            Iterator<Map.Entry<T, Future<?>>> unobservableIterator =
+                    unobservable.entrySet().iterator();
+            while (unobservableIterator.hasNext()) {
+                Map.Entry<T, Future<?>> itemToFuture = unobservableIterator.next();
+                if (itemToFuture.getValue().isDone()) {
+                    unobservableIterator.remove();
+                    done.add(itemToFuture.getKey());
+                }
+            }
+        }
+
+        T item;
+        while ((item = done.poll()) != null) {
+            // Items may be queued twice, by their callback and the last look at the deadline.
+            if (pending.remove(item) != null) {
+                return Optional.of(item);
+            }
+        }
+
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.util.AsyncProcessorHelper;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Like {@link AsyncBatchMessageProcessorRoute}, but does not block the consuming thread while
+ * messages process. Instead, a callback is registered on each message's future, and the exchange
+ * is completed via Camel's {@link AsyncCallback} once all messages are done, or the batch's
+ * {@code processTimeout} passes. The rest of the route continues on whichever thread completed
+ * the batch.
+ *
+ * <p>Callbacks are registered through {@link TransformableFuture#whenDoneOrCancelled(
+ * FutureDoneCallback)}, {@link CompletableFuture#whenComplete(java.util.function.BiConsumer)} or
+ * {@link ListenableFuture#addListener(Runnable, java.util.concurrent.Executor)}. Other futures are
+ * checked periodically. Futures which only complete lazily, when waited on,
+ * never complete here and so will time out: messages with such futures should use
+ * {@link AsyncBatchMessageProcessorRoute}.
+ *
+ * <p>To actually free the consumer's thread, the {@code fromUri} consumer must support
+ * asynchronous routing, for example a JMS endpoint with {@code asyncConsumer=true}.
+ */
+public class NonBlockingBatchMessageProcessorRoute extends RouteBuilder {
+    private final String fromUri;
+    private final String failureUri;
+    private final Duration processTimeout;
+    private final MessageFactory messageFactory;
+
+    private final int idCount = idCounter.getAndIncrement();
+    private final String routeId = "nonBlockingMessageProcessor-" + idCount;
+
+    private static final AtomicInteger idCounter = new AtomicInteger(0);
+
+    /** How often to check futures which we cannot register callbacks with. */
+    private static final Duration UNOBSERVABLE_FUTURE_CHECK_PERIOD = Duration.ofMillis(10);
+
+    /**
+     * @see AsyncBatchMessageProcessorRoute#AsyncBatchMessageProcessorRoute(String, String,
+     * Duration, MessageFactory)
+     */
+    public NonBlockingBatchMessageProcessorRoute(String fromUri, String failureUri,
+            Duration processTimeout, MessageFactory messageFactory) {
+        this.fromUri = Objects.requireNonNull(fromUri, "fromUri");
+        this.failureUri = Objects.requireNonNull(failureUri, "failureUri");
+        this.processTimeout = Objects.requireNonNull(processTimeout, "processTimeout");
+        this.messageFactory = Objects.requireNonNull(messageFactory, "messageFactory");
+    }
+
+    @Override
+    public void configure() throws Exception {
+        ScheduledExecutorService scheduler = getContext().getExecutorServiceManager()
+                .newSingleThreadScheduledExecutor(this, routeId);
+
+        from(fromUri)
+        .routeId(routeId)
+        .process(new BatchMessageProcessor(scheduler))
+        .to(failureUri);
+    }
+
+    private class BatchMessageProcessor implements AsyncProcessor {
+        private final ScheduledExecutorService scheduler;
+
+        BatchMessageProcessor(ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public void process(Exchange exchange) throws Exception {
+            AsyncProcessorHelper.process(this, exchange);
+        }
+
+        @Override
+        public boolean process(Exchange exchange, AsyncCallback callback) {
+            Object exchangeBody = exchange.getIn().getBody();
+
+            if (!(exchangeBody instanceof Collection)) {
+                exchange.setException(new IllegalArgumentException("Expected `fromUri` to " +
+                        "deliver exchanges with Collection bodies so that we may batch process " +
+                        "for efficiency. However, the uri '" + fromUri + "' returned " +
+                        ((exchangeBody == null)
+                                ? "null."
+                                : "the " + exchangeBody.getClass().getName() + ": " +
+                                exchangeBody)));
+                callback.done(true);
+                return true;
+            }
+
+            Collection originalMessages = (Collection) exchangeBody;
+
+            List<ProcessingMessage> processingMessages = new ArrayList<>(originalMessages.size());
+            List<FailedMessage> failures = new ArrayList<>();
+
+            log.debug("Received {} messages on route {}: {}",
+                    originalMessages.size(), routeId, originalMessages);
+
+            // Start processing all of the messages in the batch in parallel.
+            for (Object originalMessage : originalMessages) {
+                final Message message;
+
+                try {
+                    message = messageFactory.getMessageForBody(originalMessage);
+                } catch (Exception e) {
+                    log.error("Failure parsing message. Body was: " + originalMessage, e);
+                    failures.add(new FailedMessage(originalMessage, e));
+                    continue;
+                }
+
+                try {
+                    processingMessages.add(
+                            new ProcessingMessage(originalMessage, message, message.process()));
+                } catch (Exception e) {
+                    log.error("Failed to process message: " + message, e);
+                    failures.add(new FailedMessage(originalMessage, message, e));
+                }
+            }
+
+            if (processingMessages.isEmpty()) {
+                exchange.getIn().setBody(failures);
+                callback.done(true);
+                return true;
+            }
+
+            new ProcessingBatch(exchange, callback, processingMessages, failures, scheduler)
+                    .start();
+
+            return false;
+        }
+    }
+
+    /**
+     * Tracks a batch of processing messages, completing its exchange once all are done or the
+     * batch times out, whichever is first.
+     */
+    private class ProcessingBatch {
+        private final Exchange exchange;
+        private final AsyncCallback callback;
+        private final List<ProcessingMessage> processingMessages;
+        private final ScheduledExecutorService scheduler;
+
+        // Guarded by this
+        private final Set<ProcessingMessage> pending;
+        private final List<FailedMessage> failures;
+        private int processedSuccessfully = 0;
+        private boolean finished = false;
+
+        private ScheduledFuture<?> timeout;
+        private ScheduledFuture<?> unobservableFutureCheck;
+
+        ProcessingBatch(Exchange exchange, AsyncCallback callback,
+                List<ProcessingMessage> processingMessages, List<FailedMessage> failures,
+                ScheduledExecutorService scheduler) {
+            this.exchange = exchange;
+            this.callback = callback;
+            this.processingMessages = processingMessages;
+            this.failures = failures;
+            this.scheduler = scheduler;
+            this.pending = new LinkedHashSet<>(processingMessages);
+        }
+
+        void start() {
+            List<ProcessingMessage> unobservable = new ArrayList<>();
+
+            for (ProcessingMessage processingMsg : processingMessages) {
+                if (!(processingMsg.future instanceof TransformableFuture) &&
+                        !(processingMsg.future instanceof CompletableFuture) &&
+                        !(processingMsg.future instanceof ListenableFuture)) {
+                    unobservable.add(processingMsg);
+                }
+            }
+
+            // Schedule before registering callbacks, which may finish the batch immediately.
+            synchronized (this) {
+                timeout = scheduler.schedule(this::onTimeout,
+                        processTimeout.toNanos(), TimeUnit.NANOSECONDS);
+
+                if (!unobservable.isEmpty()) {
+                    long period = UNOBSERVABLE_FUTURE_CHECK_PERIOD.toNanos();
+                    unobservableFutureCheck = scheduler.scheduleWithFixedDelay(() -> {
+                        for (ProcessingMessage processingMsg : unobservable) {
+                            if (processingMsg.future.isDone()) {
+                                onDone(processingMsg);
+                            }
+                        }
+                    }, period, period, TimeUnit.NANOSECONDS);
+                }
+            }
+
+            for (ProcessingMessage processingMsg : processingMessages) {
+                if (processingMsg.future instanceof TransformableFuture) {
+                    ((TransformableFuture<?>) processingMsg.future)
+                            .whenDoneOrCancelled(() -> onDone(processingMsg));
+                } else if (processingMsg.future instanceof CompletableFuture) {
+                    ((CompletableFuture<?>) processingMsg.future)
+                            .whenComplete((result, exception) -> onDone(processingMsg));
+                } else if (processingMsg.future instanceof ListenableFuture) {
+                    ((ListenableFuture<?>) processingMsg.future)
+                            .addListener(() -> onDone(processingMsg),
+                                    MoreExecutors.directExecutor());
+                }
+            }
+        }
+
+        private void onDone(ProcessingMessage processingMsg) {
+            synchronized (this) {
+                if (finished || !pending.remove(processingMsg)) {
+                    return;
+                }
+
+                try {
+                    processingMsg.future.get();
+                    processedSuccessfully++;
+                } catch (ExecutionException e) {
+                    log.error("Failed to process message: " + processingMsg.parsedMessage, e);
+                    failures.add(new FailedMessage(processingMsg.originalMessage,
+                            processingMsg.parsedMessage, e.getCause()));
+                } catch (InterruptedException | CancellationException e) {
+                    log.warn("Message processing was interrupted or cancelled: " +
+                            processingMsg.parsedMessage, e);
+                    failures.add(new FailedMessage(processingMsg.originalMessage,
+                            processingMsg.parsedMessage, e));
+                }
+
+                if (!pending.isEmpty()) {
+                    return;
+                }
+
+                finished = true;
+            }
+
+            complete();
+        }
+
+        private void onTimeout() {
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+
+                for (ProcessingMessage processingMsg : pending) {
+                    TimeoutException e = new TimeoutException("Message not processed within " +
+                            "batch timeout of " + processTimeout);
+                    log.warn("Timed out processing message: " + processingMsg.parsedMessage, e);
+                    failures.add(new FailedMessage(processingMsg.originalMessage,
+                            processingMsg.parsedMessage, e));
+                }
+
+                pending.clear();
+                finished = true;
+            }
+
+            complete();
+        }
+
+        private void complete() {
+            synchronized (this) {
+                timeout.cancel(false);
+
+                if (unobservableFutureCheck != null) {
+                    unobservableFutureCheck.cancel(false);
+                }
+            }
+
+            log.debug("Processed {}/{} messages on route {}",
+                    processedSuccessfully, processingMessages.size(), routeId);
+
+            // Deal with failures...
+            exchange.getIn().setBody(failures);
+            callback.done(false);
+        }
+    }
+
+    private static class ProcessingMessage {
+        final Object originalMessage;
+        final Message parsedMessage;
+        final Future<Void> future;
+
+        ProcessingMessage(Object originalMessage, Message parsedMessage,
+                Future<Void> future) {
+            this.originalMessage = originalMessage;
+            this.parsedMessage = parsedMessage;
+            this.future = future;
+        }
+    }
+}
@@ -18,8 +18,10 @@
 
 package org.esbtools.eventhandler;
 
+import java.time.Duration;
 import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Abstracts a transactional backing store and staging area for {@link Notification notifications}.
@@ -68,4 +70,15 @@ public interface NotificationRepository {
 
     void markNotificationsProcessedOrFailed(Collection<? extends Notification> notification,
             Collection<FailedNotification> failures) throws Exception;
+
+    /**
+     * How long after being retrieved from {@link #retrieveOldestNotificationsUpTo(int)} a
+     * notification's transaction remains active at most, if known. Work for retrieved notifications
+     * which is not done by then may be abandoned, since their transactions will have ended anyway.
+     *
+     * <p>By default, this is not known, and work is never abandoned.
+     */
+    default Optional<Duration> getTransactionTimeout() {
+        return Optional.empty();
+    }
 }
@@ -20,8 +20,13 @@ package org.esbtools.eventhandler;
 
 import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.Futures;
+import org.apache.camel.Exchange;
 import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.processor.aggregate.CompletionAwareAggregationStrategy;
+import org.apache.camel.support.SynchronizationAdapter;
 
+import javax.annotation.Nullable;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -29,8 +34,13 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class PollingDocumentEventProcessorRoute extends RouteBuilder {
@@ -39,6 +49,21 @@ public class PollingDocumentEventProcessorRoute extends RouteBuilder {
     private final int batchSize;
     private final String documentEndpoint;
     private final String failureEndpoint;
+    private final int publishedEventsFlushSize;
+    private final Duration publishedEventsFlushInterval;
+    private final int maxBatchesInFlight;
+    private final @Nullable AdaptivePollingInterval adaptivePollingInterval;
+    private final @Nullable AdaptiveBatchSize adaptiveBatchSize;
+
+    /**
+     * Permits for batches which have been retrieved, or are being retrieved, but have not yet
+     * finished publishing.
+     */
+    private final Semaphore batchesInFlight;
+
+    private static final String ORIGINAL_EVENT_PROPERTY = "originalEvent";
+    private static final String PUBLISHED_PROPERTY = "eventPublished";
+    private static final String PUBLISHED_EVENTS_PROPERTY = "publishedEvents";
 
     private static final AtomicInteger idCounter = new AtomicInteger(1);
     private final int id = idCounter.getAndIncrement();
@@ -46,59 +71,137 @@ public class PollingDocumentEventProcessorRoute extends RouteBuilder {
     public PollingDocumentEventProcessorRoute(DocumentEventRepository documentEventRepository,
             Duration pollingInterval, int batchSize, String documentEndpoint,
             String failureEndpoint) {
-        this.documentEventRepository = documentEventRepository;
-        this.pollingInterval = pollingInterval;
-        this.batchSize = batchSize;
-        this.documentEndpoint = documentEndpoint;
-        this.failureEndpoint = failureEndpoint;
+        this(builder(documentEventRepository, documentEndpoint, failureEndpoint)
+                .pollingInterval(pollingInterval)
+                .batchSize(batchSize));
+    }
+
+    private PollingDocumentEventProcessorRoute(Builder builder) {
+        if (builder.pollingInterval == null && builder.adaptivePollingInterval == null) {
+            throw new IllegalArgumentException("Either a pollingInterval or an " +
+                    "adaptivePollingInterval is required.");
+        }
+
+        if (builder.batchSize == null && builder.adaptiveBatchSize == null) {
+            throw new IllegalArgumentException("Either a batchSize or an adaptiveBatchSize is " +
+                    "required.");
+        }
+
+        this.documentEventRepository = builder.documentEventRepository;
+        this.adaptivePollingInterval = builder.adaptivePollingInterval;
+        this.pollingInterval = adaptivePollingInterval == null
+                ? builder.pollingInterval
+                : AdaptivePollingInterval.DUE_CHECK_PERIOD;
+        this.adaptiveBatchSize = builder.adaptiveBatchSize;
+        this.batchSize = adaptiveBatchSize == null
+                ? builder.batchSize
+                : adaptiveBatchSize.getCurrentBatchSize();
+        this.documentEndpoint = builder.documentEndpoint;
+        this.failureEndpoint = builder.failureEndpoint;
+        this.publishedEventsFlushSize = builder.publishedEventsFlushSize == null
+                ? batchSize
+                : builder.publishedEventsFlushSize;
+        this.publishedEventsFlushInterval = builder.publishedEventsFlushInterval != null
+                ? builder.publishedEventsFlushInterval
+                : adaptivePollingInterval == null
+                        ? builder.pollingInterval
+                        : adaptivePollingInterval.getCurrentInterval();
+        this.maxBatchesInFlight = builder.maxBatchesInFlight;
+
+        if (publishedEventsFlushSize < 1) {
+            throw new IllegalArgumentException("publishedEventsFlushSize must be at least 1 but " +
+                    "was: " + publishedEventsFlushSize);
+        }
+
+        if (maxBatchesInFlight < 1) {
+            throw new IllegalArgumentException("maxBatchesInFlight must be at least 1 but was: " +
+                    maxBatchesInFlight);
+        }
+
+        this.batchesInFlight = new Semaphore(maxBatchesInFlight);
+    }
+
+    /**
+     * Starts building a route which publishes documents for events from the
+     * {@code documentEventRepository}. A polling interval and a batch size, either fixed or
+     * adaptive, are required.
+     */
+    public static Builder builder(DocumentEventRepository documentEventRepository,
+            String documentEndpoint, String failureEndpoint) {
+        return new Builder(documentEventRepository, documentEndpoint, failureEndpoint);
     }
 
     @Override
     public void configure() throws Exception {
+        // When pipelined, batches are handed off to be published on another thread, so this one
+        // can go back to retrieving the next batch.
+        String publishEndpoint = maxBatchesInFlight > 1
+                ? "seda:publishDocumentEvents" + id + "?size=" + maxBatchesInFlight
+                : "direct:publishDocumentEvents" + id;
+
         from("timer:pollForDocumentEvents" + id + "?period=" + pollingInterval.toMillis())
         .routeId("documentEventProcessor-" + id)
         .process(exchange -> {
-            List<? extends DocumentEvent> documentEvents = documentEventRepository
-                    .retrievePriorityDocumentEventsUpTo(batchSize);
-            Map<DocumentEvent, Future<?>> eventsToFutureDocuments =
-                    new HashMap<>(documentEvents.size());
-
-            // Intentionally cache all futures before resolving them.
-            for (DocumentEvent event : documentEvents) {
-                try {
-                    eventsToFutureDocuments.put(event, event.lookupDocument());
-                } catch (Exception e) {
-                    log.error("Failed to get future document for document event: " + event, e);
-                    eventsToFutureDocuments.put(event, Futures.immediateFailedFuture(e));
-                }
+            if (adaptivePollingInterval != null && !adaptivePollingInterval.isPollDue()) {
+                exchange.setProperty(Exchange.ROUTE_STOP, true);
+                return;
             }
 
-            Map<DocumentEvent, Object> eventsToDocuments = new HashMap<>(documentEvents.size());
-            List<FailedDocumentEvent> failedEvents = new ArrayList<>();
-
-            for (Map.Entry<DocumentEvent, Future<?>> eventToFutureDocument
-                    : eventsToFutureDocuments.entrySet()) {
-                DocumentEvent event = eventToFutureDocument.getKey();
-                Future<?> futureDoc = eventToFutureDocument.getValue();
-
-                try {
-                    eventsToDocuments.put(event, futureDoc.get());
-                } catch (ExecutionException | InterruptedException e) {
-                    log.error("Failed to get document for document event: " + event, e);
-                    failedEvents.add(new FailedDocumentEvent(event, e));
-                }
+            if (!batchesInFlight.tryAcquire()) {
+                log.debug("Already {} batches in flight on route {}. Skipping poll.",
+                        maxBatchesInFlight, exchange.getFromRouteId());
+                exchange.setProperty(Exchange.ROUTE_STOP, true);
+                return;
             }
 
+            DocumentsToPublish documentsToPublish;
+
             try {
-                documentEventRepository.markDocumentEventsPublishedOrFailed(
-                        Collections.emptyList(), failedEvents);
+                documentsToPublish = retrieveDocumentsToPublish(adaptiveBatchSize == null
+                        ? batchSize
+                        : adaptiveBatchSize.getCurrentBatchSize());
             } catch (Exception e) {
-                if (log.isErrorEnabled()) {
-                    log.error("Failed to update failed events. They will be reprocessed. " +
-                            "Failures were: " + failedEvents, e);
+                batchesInFlight.release();
+                if (adaptivePollingInterval != null) {
+                    adaptivePollingInterval.onBatchFailed();
                 }
+                throw e;
+            }
+
+            if (adaptivePollingInterval != null) {
+                adaptivePollingInterval.onBatchRetrieved(
+                        documentsToPublish.retrieved, documentsToPublish.batchSize);
             }
 
+            if (documentsToPublish.eventsToDocuments.isEmpty()
+                    && documentsToPublish.failedEvents.isEmpty()) {
+                batchesInFlight.release();
+                onCycleCompleted(documentsToPublish);
+                exchange.setProperty(Exchange.ROUTE_STOP, true);
+                return;
+            }
+
+            exchange.getIn().setBody(documentsToPublish);
+        })
+        .to(publishEndpoint);
+
+        from(publishEndpoint)
+        .routeId("documentEventPublisher-" + id)
+        .process(exchange -> {
+            DocumentsToPublish documentsToPublish =
+                    exchange.getIn().getBody(DocumentsToPublish.class);
+
+            // However publishing ends, the batch is no longer in flight.
+            exchange.addOnCompletion(new SynchronizationAdapter() {
+                @Override
+                public void onDone(Exchange exchange) {
+                    batchesInFlight.release();
+                    onCycleCompleted(documentsToPublish);
+                }
+            });
+
+            Map<DocumentEvent, Object> eventsToDocuments = documentsToPublish.eventsToDocuments;
+
             Iterator<Map.Entry<DocumentEvent, Object>> eventsToDocumentsIterator =
                     eventsToDocuments.entrySet().iterator();
             while (eventsToDocumentsIterator.hasNext()) {
@@ -117,9 +220,13 @@ public class PollingDocumentEventProcessorRoute extends RouteBuilder {
             log.debug("Publishing {} documents on route {}: {}",
                     eventsToDocuments.size(), exchange.getFromRouteId(), eventsToDocuments.values());
 
-            exchange.getIn().setBody(Iterables.concat(eventsToDocuments.entrySet(), failedEvents));
+            exchange.getIn().setBody(Iterables.concat(
+                    eventsToDocuments.entrySet(), documentsToPublish.failedEvents));
         })
-        .split(body())
+        // Published events are collected by the aggregation strategy and marked in bulk. Events are
+        // only ever marked after they are published, so if we die mid-batch, unmarked events are
+        // simply published again once their processing times out (at least once delivery).
+        .split(body(), new MarkPublishedEventsAggregationStrategy())
         .streaming()
         .choice()
             .when(e -> e.getIn().getBody() instanceof FailedDocumentEvent).to(failureEndpoint)
@@ -127,26 +234,312 @@ public class PollingDocumentEventProcessorRoute extends RouteBuilder {
                 .process(exchange -> {
                     Map.Entry<DocumentEvent, Object> eventToDocument =
                             exchange.getIn().getBody(Map.Entry.class);
-                    exchange.setProperty("originalEvent", eventToDocument.getKey());
+                    exchange.setProperty(ORIGINAL_EVENT_PROPERTY, eventToDocument.getKey());
                     exchange.getIn().setBody(eventToDocument.getValue());
                 })
                 .to(documentEndpoint)
-                // If producing to documentEndpoint succeeded, update original event status...
-                // TODO(ahenning): This updates event status one at a time. We could consider using
-                // aggregation strategy with splitter to update all in bulk which would take
-                // advantage of repository implementations which can update many statuses in one
-                // call.
-                .process(exchange -> {
-                    DocumentEvent event = exchange.getProperty("originalEvent", DocumentEvent.class);
+                // If producing to documentEndpoint succeeded, flag event to be marked published.
+                .setProperty(PUBLISHED_PROPERTY, constant(true));
+    }
 
-                    if (event == null) {
-                        throw new IllegalStateException("Could not get original event from " +
-                                "exchange. Won't update event status as published. Exchange was: " +
-                                exchange);
-                    }
+    /**
+     * Retrieves a batch of events and looks up their documents. Events whose documents could not
+     * be looked up are marked failed.
+     */
+    private DocumentsToPublish retrieveDocumentsToPublish(int batchSize) throws Exception {
+        long cycleStartNanos = System.nanoTime();
+        RetrievedDocumentEvents<? extends DocumentEvent> retrieved = documentEventRepository
+                .retrievePriorityDocumentEventsAndCountUpTo(batchSize);
+        List<? extends DocumentEvent> documentEvents = retrieved.documentEvents();
+        Map<DocumentEvent, Future<?>> eventsToFutureDocuments =
+                new HashMap<>(documentEvents.size());
+
+        // Intentionally cache all futures before resolving them.
+        for (DocumentEvent event : documentEvents) {
+            try {
+                eventsToFutureDocuments.put(event, event.lookupDocument());
+            } catch (Exception e) {
+                log.error("Failed to get future document for document event: " + event, e);
+                eventsToFutureDocuments.put(event, Futures.immediateFailedFuture(e));
+            }
+        }
+
+        Map<DocumentEvent, Object> eventsToDocuments = new HashMap<>(documentEvents.size());
+        List<FailedDocumentEvent> failedEvents = new ArrayList<>();
+
+        // Documents not looked up by the time the events' transactions end are not worth waiting
+        // for: the events would be dropped before publishing anyway.
+        Optional<Long> deadlineNanos = documentEventRepository.getTransactionTimeout()
+                .map(timeout -> cycleStartNanos + timeout.toNanos());
+
+        for (Map.Entry<DocumentEvent, Future<?>> eventToFutureDocument
+                : eventsToFutureDocuments.entrySet()) {
+            DocumentEvent event = eventToFutureDocument.getKey();
+            Future<?> futureDoc = eventToFutureDocument.getValue();
+
+            try {
+                Object document = deadlineNanos.isPresent()
+                        ? futureDoc.get(Math.max(0, deadlineNanos.get() - System.nanoTime()),
+                                TimeUnit.NANOSECONDS)
+                        : futureDoc.get();
+                eventsToDocuments.put(event, document);
+            } catch (TimeoutException e) {
+                futureDoc.cancel(true);
+                log.error("Timed out getting document for document event: " + event, e);
+                failedEvents.add(new FailedDocumentEvent(event, e));
+            } catch (ExecutionException | InterruptedException e) {
+                log.error("Failed to get document for document event: " + event, e);
+                failedEvents.add(new FailedDocumentEvent(event, e));
+            }
+        }
+
+        try {
+            documentEventRepository.markDocumentEventsPublishedOrFailed(
+                    Collections.emptyList(), failedEvents);
+        } catch (Exception e) {
+            if (log.isErrorEnabled()) {
+                log.error("Failed to update failed events. They will be reprocessed. " +
+                        "Failures were: " + failedEvents, e);
+            }
+        }
+
+        return new DocumentsToPublish(eventsToDocuments, failedEvents, batchSize,
+                retrieved.unoptimizedCount(), cycleStartNanos);
+    }
+
+    private void onCycleCompleted(DocumentsToPublish documentsToPublish) {
+        if (adaptiveBatchSize != null) {
+            adaptiveBatchSize.onCycleCompleted(documentsToPublish.batchSize,
+                    documentsToPublish.retrieved,
+                    Duration.ofNanos(System.nanoTime() - documentsToPublish.cycleStartNanos));
+        }
+    }
+
+    /**
+     * Collects events from split exchanges which were successfully published, and marks them
+     * published in the repository in groups, rather than one repository call per event.
+     *
+     * <p>Unmarked events are kept on the aggregated exchange, so concurrent batches do not share
+     * state. The first exception from a failed split exchange fails the batch once the rest of
+     * its events are published, matching the splitter's default behavior.
+     */
+    private class MarkPublishedEventsAggregationStrategy
+            implements CompletionAwareAggregationStrategy {
+        @Override
+        public Exchange aggregate(Exchange oldExchange, Exchange newExchange) {
+            Exchange aggregate = oldExchange;
+
+            if (aggregate == null) {
+                aggregate = new DefaultExchange(newExchange);
+                aggregate.setProperty(PUBLISHED_EVENTS_PROPERTY, new PublishedEvents());
+            }
+
+            if (newExchange.getException() != null) {
+                // Fail the batch once it is done, as the splitter does without an aggregation
+                // strategy. Later events are still published.
+                if (aggregate.getException() == null) {
+                    aggregate.setException(newExchange.getException());
+                }
+                return aggregate;
+            }
+
+            if (!newExchange.getProperty(PUBLISHED_PROPERTY, false, Boolean.class)) {
+                return aggregate;
+            }
+
+            DocumentEvent event = newExchange.getProperty(ORIGINAL_EVENT_PROPERTY, DocumentEvent.class);
+
+            if (event == null) {
+                log.error("Could not get original event from exchange. Won't update event " +
+                        "status as published. Exchange was: " + newExchange);
+                return aggregate;
+            }
+
+            PublishedEvents published = aggregate.getProperty(
+                    PUBLISHED_EVENTS_PROPERTY, PublishedEvents.class);
+            published.add(event);
+
+            if (published.size() >= publishedEventsFlushSize ||
+                    published.age().compareTo(publishedEventsFlushInterval) >= 0) {
+                published.flush();
+            }
+
+            return aggregate;
+        }
+
+        @Override
+        public void onCompletion(Exchange exchange) {
+            PublishedEvents published = exchange.getProperty(
+                    PUBLISHED_EVENTS_PROPERTY, PublishedEvents.class);
+
+            if (published != null) {
+                published.flush();
+            }
+        }
+    }
+
+    private class PublishedEvents {
+        private final List<DocumentEvent> events = new ArrayList<>(publishedEventsFlushSize);
+        private long oldestEventNanos;
+
+        void add(DocumentEvent event) {
+            if (events.isEmpty()) {
+                oldestEventNanos = System.nanoTime();
+            }
+            events.add(event);
+        }
+
+        int size() {
+            return events.size();
+        }
+
+        Duration age() {
+            return events.isEmpty()
+                    ? Duration.ZERO
+                    : Duration.ofNanos(System.nanoTime() - oldestEventNanos);
+        }
+
+        void flush() {
+            if (events.isEmpty()) {
+                return;
+            }
+
+            List<DocumentEvent> toMark = new ArrayList<>(events);
+            events.clear();
+
+            try {
+                documentEventRepository.markDocumentEventsPublishedOrFailed(
+                        toMark, Collections.emptyList());
+            } catch (Exception e) {
+                if (log.isErrorEnabled()) {
+                    log.error("Failed to update published events. They will be reprocessed. " +
+                            "Published events were: " + toMark, e);
+                }
+            }
+        }
+    }
+
+    public static class Builder {
+        private final DocumentEventRepository documentEventRepository;
+        private final String documentEndpoint;
+        private final String failureEndpoint;
+        private @Nullable Duration pollingInterval;
+        private @Nullable AdaptivePollingInterval adaptivePollingInterval;
+        private @Nullable Integer batchSize;
+        private @Nullable AdaptiveBatchSize adaptiveBatchSize;
+        private @Nullable Integer publishedEventsFlushSize;
+        private @Nullable Duration publishedEventsFlushInterval;
+        private int maxBatchesInFlight = 1;
+
+        private Builder(DocumentEventRepository documentEventRepository, String documentEndpoint,
+                String failureEndpoint) {
+            this.documentEventRepository = Objects.requireNonNull(documentEventRepository,
+                    "documentEventRepository");
+            this.documentEndpoint = Objects.requireNonNull(documentEndpoint, "documentEndpoint");
+            this.failureEndpoint = Objects.requireNonNull(failureEndpoint, "failureEndpoint");
+        }
+
+        /**
+         * Polls for document events at a fixed interval. Replaces any
+         * {@link #adaptivePollingInterval(AdaptivePollingInterval) adaptive polling interval}.
+         */
+        public Builder pollingInterval(Duration pollingInterval) {
+            this.pollingInterval = Objects.requireNonNull(pollingInterval, "pollingInterval");
+            this.adaptivePollingInterval = null;
+            return this;
+        }
+
+        /**
+         * Polls for document events as often as the {@code adaptivePollingInterval} decides,
+         * rather than at a fixed interval.
+         */
+        public Builder adaptivePollingInterval(AdaptivePollingInterval adaptivePollingInterval) {
+            this.adaptivePollingInterval = Objects.requireNonNull(adaptivePollingInterval,
+                    "adaptivePollingInterval");
+            this.pollingInterval = null;
+            return this;
+        }
+
+        /**
+         * Retrieves at most this many document events per poll. Replaces any
+         * {@link #adaptiveBatchSize(AdaptiveBatchSize) adaptive batch size}.
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            this.adaptiveBatchSize = null;
+            return this;
+        }
+
+        /**
+         * Retrieves as many document events per poll as the {@code adaptiveBatchSize} decides,
+         * rather than a fixed batch size. A cycle lasts from retrieving a batch until it is done
+         * publishing.
+         */
+        public Builder adaptiveBatchSize(AdaptiveBatchSize adaptiveBatchSize) {
+            this.adaptiveBatchSize = Objects.requireNonNull(adaptiveBatchSize,
+                    "adaptiveBatchSize");
+            this.batchSize = null;
+            return this;
+        }
+
+        /**
+         * Published events are marked as such in the repository in groups of at most this many
+         * events. An incomplete group is marked when the batch finishes publishing. Defaults to
+         * the (initial) batch size.
+         */
+        public Builder publishedEventsFlushSize(int publishedEventsFlushSize) {
+            this.publishedEventsFlushSize = publishedEventsFlushSize;
+            return this;
+        }
+
+        /**
+         * Published events are also marked if this much time has passed since the oldest
+         * unmarked event was published, even if the group is not yet full. This bounds how long a
+         * slow batch can hold published events in memory. Defaults to the (initial) polling
+         * interval.
+         */
+        public Builder publishedEventsFlushInterval(Duration publishedEventsFlushInterval) {
+            this.publishedEventsFlushInterval = Objects.requireNonNull(
+                    publishedEventsFlushInterval, "publishedEventsFlushInterval");
+            return this;
+        }
+
+        /**
+         * If greater than 1, batches are pipelined: the next batch is retrieved while previous
+         * batches are still publishing, up to this many batches at once. Polls are skipped while
+         * this many batches are in flight. Batches are published one at a time, in the order they
+         * were retrieved. Events whose transactions are no longer active by the time their batch
+         * is published are dropped, same as if they were not active when retrieved. Defaults to 1.
+         */
+        public Builder maxBatchesInFlight(int maxBatchesInFlight) {
+            this.maxBatchesInFlight = maxBatchesInFlight;
+            return this;
+        }
+
+        public PollingDocumentEventProcessorRoute build() {
+            return new PollingDocumentEventProcessorRoute(this);
+        }
+    }
+
+    private static class DocumentsToPublish {
+        final Map<DocumentEvent, Object> eventsToDocuments;
+        final List<FailedDocumentEvent> failedEvents;
+        final int batchSize;
+        /**
+         * How many events were retrieved before optimization, which is what tells us whether the
+         * batch was full, rather than how many events were left to publish.
+         */
+        final int retrieved;
+        final long cycleStartNanos;
 
-                    documentEventRepository.markDocumentEventsPublishedOrFailed(
-                            Collections.singleton(event), Collections.emptyList());
-                });
+        DocumentsToPublish(Map<DocumentEvent, Object> eventsToDocuments,
+                List<FailedDocumentEvent> failedEvents, int batchSize, int retrieved,
+                long cycleStartNanos) {
+            this.eventsToDocuments = eventsToDocuments;
+            this.failedEvents = failedEvents;
+            this.batchSize = batchSize;
+            this.retrieved = retrieved;
+            this.cycleStartNanos = cycleStartNanos;
+        }
     }
 }
@@ -19,8 +19,10 @@
 package org.esbtools.eventhandler;
 
 import com.google.common.util.concurrent.Futures;
+import org.apache.camel.Exchange;
 import org.apache.camel.builder.RouteBuilder;
 
+import javax.annotation.Nullable;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -29,8 +31,12 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
@@ -39,6 +45,8 @@ public class PollingNotificationProcessorRoute extends RouteBuilder {
     private final DocumentEventRepository documentEventRepository;
     private final Duration pollingInterval;
     private final int batchSize;
+    private final @Nullable AdaptivePollingInterval adaptivePollingInterval;
+    private final @Nullable AdaptiveBatchSize adaptiveBatchSize;
 
     private static final AtomicInteger idCounter = new AtomicInteger(1);
     private final int id = idCounter.getAndIncrement();
@@ -46,10 +54,42 @@ public class PollingNotificationProcessorRoute extends RouteBuilder {
     public PollingNotificationProcessorRoute(NotificationRepository notificationRepository,
             DocumentEventRepository documentEventRepository, Duration pollingInterval,
             int batchSize) {
-        this.notificationRepository = notificationRepository;
-        this.documentEventRepository = documentEventRepository;
-        this.pollingInterval = pollingInterval;
-        this.batchSize = batchSize;
+        this(builder(notificationRepository, documentEventRepository)
+                .pollingInterval(pollingInterval)
+                .batchSize(batchSize));
+    }
+
+    private PollingNotificationProcessorRoute(Builder builder) {
+        if (builder.pollingInterval == null && builder.adaptivePollingInterval == null) {
+            throw new IllegalArgumentException("Either a pollingInterval or an " +
+                    "adaptivePollingInterval is required.");
+        }
+
+        if (builder.batchSize == null && builder.adaptiveBatchSize == null) {
+            throw new IllegalArgumentException("Either a batchSize or an adaptiveBatchSize is " +
+                    "required.");
+        }
+
+        this.notificationRepository = builder.notificationRepository;
+        this.documentEventRepository = builder.documentEventRepository;
+        this.adaptivePollingInterval = builder.adaptivePollingInterval;
+        this.pollingInterval = adaptivePollingInterval == null
+                ? builder.pollingInterval
+                : AdaptivePollingInterval.DUE_CHECK_PERIOD;
+        this.adaptiveBatchSize = builder.adaptiveBatchSize;
+        this.batchSize = adaptiveBatchSize == null
+                ? builder.batchSize
+                : adaptiveBatchSize.getCurrentBatchSize();
+    }
+
+    /**
+     * Starts building a route which turns notifications from the {@code notificationRepository}
+     * into document events persisted to the {@code documentEventRepository}. A polling interval
+     * and a batch size, either fixed or adaptive, are required.
+     */
+    public static Builder builder(NotificationRepository notificationRepository,
+            DocumentEventRepository documentEventRepository) {
+        return new Builder(notificationRepository, documentEventRepository);
     }
 
     @Override
@@ -57,8 +97,32 @@ public class PollingNotificationProcessorRoute extends RouteBuilder {
         from("timer:pollForNotifications" + id + "?period=" + pollingInterval.toMillis())
         .routeId("notificationProcessor-" + id)
         .process(exchange -> {
-            List<? extends Notification> notifications =
-                    notificationRepository.retrieveOldestNotificationsUpTo(batchSize);
+            if (adaptivePollingInterval != null && !adaptivePollingInterval.isPollDue()) {
+                exchange.setProperty(Exchange.ROUTE_STOP, true);
+                return;
+            }
+
+            int currentBatchSize = adaptiveBatchSize == null
+                    ? batchSize
+                    : adaptiveBatchSize.getCurrentBatchSize();
+            long cycleStartNanos = System.nanoTime();
+
+            List<? extends Notification> notifications;
+
+            try {
+                notifications =
+                        notificationRepository.retrieveOldestNotificationsUpTo(currentBatchSize);
+            } catch (Exception e) {
+                if (adaptivePollingInterval != null) {
+                    adaptivePollingInterval.onBatchFailed();
+                }
+                throw e;
+            }
+
+            if (adaptivePollingInterval != null) {
+                adaptivePollingInterval.onBatchRetrieved(notifications.size(), currentBatchSize);
+            }
+
             Map<Notification, Future<Collection<DocumentEvent>>> notificationsToFutureEvents =
                     new HashMap<>(notifications.size());
 
@@ -78,14 +142,28 @@ public class PollingNotificationProcessorRoute extends RouteBuilder {
                     new HashMap<>();
             List<FailedNotification> failedNotifications = new ArrayList<>();
 
+            // Document events not ready by the time the notifications' transactions end are not
+            // worth waiting for: the notifications would be dropped before adding them anyway.
+            Optional<Long> deadlineNanos = notificationRepository.getTransactionTimeout()
+                    .map(timeout -> cycleStartNanos + timeout.toNanos());
+
             for (Entry<Notification, Future<Collection<DocumentEvent>>> notificationToFutureEvents
                     : notificationsToFutureEvents.entrySet()) {
                 Notification notification = notificationToFutureEvents.getKey();
                 Future<Collection<DocumentEvent>> futureEvents =
                         notificationToFutureEvents.getValue();
                 try {
-                    Collection<DocumentEvent> events = futureEvents.get();
+                    Collection<DocumentEvent> events = deadlineNanos.isPresent()
+                            ? futureEvents.get(
+                                    Math.max(0, deadlineNanos.get() - System.nanoTime()),
+                                    TimeUnit.NANOSECONDS)
+                            : futureEvents.get();
                     notificationsToDocumentEvents.put(notification, events);
+                } catch (TimeoutException e) {
+                    futureEvents.cancel(true);
+                    log.error("Timed out getting document events for notification: " +
+                            notification, e);
+                    failedNotifications.add(new FailedNotification(notification, e));
                 } catch (ExecutionException | InterruptedException e) {
                     log.error("Failed to get document events for notification: " + notification, e);
                     failedNotifications.add(new FailedNotification(notification, e));
@@ -126,6 +204,75 @@ public class PollingNotificationProcessorRoute extends RouteBuilder {
 
             notificationRepository.markNotificationsProcessedOrFailed(
                     notificationsToDocumentEvents.keySet(), failedNotifications);
+
+            if (adaptiveBatchSize != null) {
+                adaptiveBatchSize.onCycleCompleted(currentBatchSize, notifications.size(),
+                        Duration.ofNanos(System.nanoTime() - cycleStartNanos));
+            }
         });
     }
+
+    public static class Builder {
+        private final NotificationRepository notificationRepository;
+        private final DocumentEventRepository documentEventRepository;
+        private @Nullable Duration pollingInterval;
+        private @Nullable AdaptivePollingInterval adaptivePollingInterval;
+        private @Nullable Integer batchSize;
+        private @Nullable AdaptiveBatchSize adaptiveBatchSize;
+
+        private Builder(NotificationRepository notificationRepository,
+                DocumentEventRepository documentEventRepository) {
+            this.notificationRepository = Objects.requireNonNull(notificationRepository,
+                    "notificationRepository");
+            this.documentEventRepository = Objects.requireNonNull(documentEventRepository,
+                    "documentEventRepository");
+        }
+
+        /**
+         * Polls for notifications at a fixed interval. Replaces any
+         * {@link #adaptivePollingInterval(AdaptivePollingInterval) adaptive polling interval}.
+         */
+        public Builder pollingInterval(Duration pollingInterval) {
+            this.pollingInterval = Objects.requireNonNull(pollingInterval, "pollingInterval");
+            this.adaptivePollingInterval = null;
+            return this;
+        }
+
+        /**
+         * Polls for notifications as often as the {@code adaptivePollingInterval} decides, rather
+         * than at a fixed interval.
+         */
+        public Builder adaptivePollingInterval(AdaptivePollingInterval adaptivePollingInterval) {
+            this.adaptivePollingInterval = Objects.requireNonNull(adaptivePollingInterval,
+                    "adaptivePollingInterval");
+            this.pollingInterval = null;
+            return this;
+        }
+
+        /**
+         * Retrieves at most this many notifications per poll. Replaces any
+         * {@link #adaptiveBatchSize(AdaptiveBatchSize) adaptive batch size}.
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            this.adaptiveBatchSize = null;
+            return this;
+        }
+
+        /**
+         * Retrieves as many notifications per poll as the {@code adaptiveBatchSize} decides,
+         * rather than a fixed batch size. A cycle lasts from retrieving a batch until its document
+         * events are persisted and its notifications are marked processed or failed.
+         */
+        public Builder adaptiveBatchSize(AdaptiveBatchSize adaptiveBatchSize) {
+            this.adaptiveBatchSize = Objects.requireNonNull(adaptiveBatchSize,
+                    "adaptiveBatchSize");
+            this.batchSize = null;
+            return this;
+        }
+
+        public PollingNotificationProcessorRoute build() {
+            return new PollingNotificationProcessorRoute(this);
+        }
+    }
 }
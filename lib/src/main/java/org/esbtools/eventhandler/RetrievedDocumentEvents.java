@@ -0,0 +1,61 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Optimized document events retrieved from a {@link DocumentEventRepository}, along with how many
+ * events were retrieved before they were optimized.
+ *
+ * @see DocumentEventRepository#retrievePriorityDocumentEventsAndCountUpTo(int)
+ */
+public final class RetrievedDocumentEvents<E extends DocumentEvent> {
+    private final List<E> documentEvents;
+    private final int unoptimizedCount;
+
+    public RetrievedDocumentEvents(List<E> documentEvents, int unoptimizedCount) {
+        this.documentEvents = Objects.requireNonNull(documentEvents, "documentEvents");
+        this.unoptimizedCount = unoptimizedCount;
+    }
+
+    /**
+     * The optimized events, ready to be published.
+     */
+    public List<E> documentEvents() {
+        return documentEvents;
+    }
+
+    /**
+     * How many events were retrieved before superseded events were dropped and mergeable events
+     * were merged. This may be more than the number of {@link #documentEvents()}.
+     */
+    public int unoptimizedCount() {
+        return unoptimizedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "RetrievedDocumentEvents{" +
+                "documentEvents=" + documentEvents +
+                ", unoptimizedCount=" + unoptimizedCount +
+                '}';
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler;
+
+import com.google.common.base.Throwables;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Decides whether a failed message is worth retrying, so that failures which can never succeed,
+ * such as parse or validation errors, are dead lettered without using up retries.
+ *
+ * @see RetryingBatchFailedMessageRoute
+ */
+@FunctionalInterface
+public interface RetryClassifier {
+    Retryability classify(FailedMessage failure);
+
+    /** Retries every failure, the same as having no classifier. */
+    static RetryClassifier retryAll() {
+        return failure -> Retryability.RETRY;
+    }
+
+    /**
+     * Classifies failures by the first exception in their cause chain, outermost first, which is
+     * an instance of one of the provided types.
+     *
+     * @param byType Exception types to their retryability. Where an exception is an instance of
+     *               more than one type, the first type in the map's iteration order wins.
+     * @param otherwise Retryability of failures with no matching exception in their cause chain.
+     */
+    static RetryClassifier byExceptionType(Map<Class<? extends Throwable>, Retryability> byType,
+            Retryability otherwise) {
+        Map<Class<? extends Throwable>, Retryability> byTypeCopy =
+                new LinkedHashMap<>(Objects.requireNonNull(byType, "byType"));
+        Objects.requireNonNull(otherwise, "otherwise");
+
+        return failure -> {
+            for (Throwable exception : Throwables.getCausalChain(failure.exception())) {
+                for (Map.Entry<Class<? extends Throwable>, Retryability> typeToRetryability
+                        : byTypeCopy.entrySet()) {
+                    if (typeToRetryability.getKey().isInstance(exception)) {
+                        return typeToRetryability.getValue();
+                    }
+                }
+            }
+
+            return otherwise;
+        };
+    }
+
+    /**
+     * Classifies failures by whether any exception in their cause chain matches the
+     * {@code predicate}.
+     */
+    static RetryClassifier byException(Predicate<? super Throwable> predicate,
+            Retryability whenMatched, Retryability otherwise) {
+        Objects.requireNonNull(predicate, "predicate");
+        Objects.requireNonNull(whenMatched, "whenMatched");
+        Objects.requireNonNull(otherwise, "otherwise");
+
+        return failure -> Throwables.getCausalChain(failure.exception()).stream()
+                .anyMatch(predicate)
+                ? whenMatched
+                : otherwise;
+    }
+}
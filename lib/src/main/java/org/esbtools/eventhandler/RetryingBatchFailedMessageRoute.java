@@ -24,6 +24,7 @@ import static org.apache.camel.builder.PredicateBuilder.not;
 import org.apache.camel.Exchange;
 import org.apache.camel.Expression;
 import org.apache.camel.Predicate;
+import org.apache.camel.ProducerTemplate;
 import org.apache.camel.builder.RouteBuilder;
 
 import javax.annotation.Nullable;
@@ -32,21 +33,33 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class RetryingBatchFailedMessageRoute extends RouteBuilder {
     private final String fromUri;
-    private final Expression retryDelayMillis;
+    private final @Nullable Expression retryDelayMillis;
     private final int maxRetryCount;
     private final Duration processTimeout;
     private final String deadLetterUri;
+    private final @Nullable Duration initialRetryDelay;
+    private final @Nullable Duration maxRetryDelay;
+    private final int maxConcurrentRetries;
+    private final RetryClassifier retryClassifier;
+
+    private final Map<Retryability, AtomicLong> classifiedCounts = newCounts();
+    private final Map<Retryability, AtomicLong> recoveredCounts = newCounts();
 
     private final int idCount = idCounter.getAndIncrement();
     private final String routeId = "failedMessageRetryer-" + idCount;
@@ -58,17 +71,104 @@ public class RetryingBatchFailedMessageRoute extends RouteBuilder {
 
     public RetryingBatchFailedMessageRoute(String fromUri, Expression retryDelayMillis,
             int maxRetryCount, Duration processTimeout, String deadLetterUri) {
+        this(fromUri, retryDelayMillis, maxRetryCount, processTimeout, deadLetterUri,
+                RetryClassifier.retryAll());
+    }
+
+    /**
+     * Only retries failures the {@code retryClassifier} deems retryable, sending the rest to
+     * {@code deadLetterUri} without retrying them. As batches retry in lockstep,
+     * {@link Retryability#RETRY_WITH_LONGER_BACKOFF} failures retry as usual.
+     */
+    public RetryingBatchFailedMessageRoute(String fromUri, Expression retryDelayMillis,
+            int maxRetryCount, Duration processTimeout, String deadLetterUri,
+            RetryClassifier retryClassifier) {
         this.fromUri = fromUri;
         this.retryDelayMillis = retryDelayMillis;
         this.maxRetryCount = maxRetryCount;
         this.processTimeout = processTimeout;
         this.deadLetterUri = deadLetterUri;
+        this.initialRetryDelay = null;
+        this.maxRetryDelay = null;
+        this.maxConcurrentRetries = 0;
+        this.retryClassifier = Objects.requireNonNull(retryClassifier, "retryClassifier");
+    }
+
+    /**
+     * Retries each failed message independently of the others in its batch, rather than retrying
+     * batches in lockstep. Each message is scheduled to retry after a delay which doubles with
+     * each attempt, from {@code initialRetryDelay} up to {@code maxRetryDelay}, and is sent to
+     * {@code deadLetterUri} on its own, as a singleton {@code Collection}, once its retries are
+     * exhausted.
+     *
+     * <p>No thread waits out retry delays. Retries still pending when the route stops are lost,
+     * as with batch retries.
+     *
+     * @param maxConcurrentRetries How many threads reprocess messages as their retries come due.
+     *                             Each waits up to {@code processTimeout} on a message.
+     */
+    public RetryingBatchFailedMessageRoute(String fromUri, Duration initialRetryDelay,
+            Duration maxRetryDelay, int maxRetryCount, Duration processTimeout,
+            String deadLetterUri, int maxConcurrentRetries) {
+        this(fromUri, initialRetryDelay, maxRetryDelay, maxRetryCount, processTimeout,
+                deadLetterUri, maxConcurrentRetries, RetryClassifier.retryAll());
+    }
+
+    /**
+     * Schedules retries per message, as
+     * {@link #RetryingBatchFailedMessageRoute(String, Duration, Duration, int, Duration, String,
+     * int)}, but only for failures the {@code retryClassifier} deems retryable, sending the rest
+     * to {@code deadLetterUri} without retrying them.
+     * {@link Retryability#RETRY_WITH_LONGER_BACKOFF} failures wait {@code maxRetryDelay} before
+     * their next retry, regardless of attempt.
+     */
+    public RetryingBatchFailedMessageRoute(String fromUri, Duration initialRetryDelay,
+            Duration maxRetryDelay, int maxRetryCount, Duration processTimeout,
+            String deadLetterUri, int maxConcurrentRetries, RetryClassifier retryClassifier) {
+        this.fromUri = Objects.requireNonNull(fromUri, "fromUri");
+        this.initialRetryDelay = Objects.requireNonNull(initialRetryDelay, "initialRetryDelay");
+        this.maxRetryDelay = Objects.requireNonNull(maxRetryDelay, "maxRetryDelay");
+        this.maxRetryCount = maxRetryCount;
+        this.processTimeout = Objects.requireNonNull(processTimeout, "processTimeout");
+        this.deadLetterUri = Objects.requireNonNull(deadLetterUri, "deadLetterUri");
+        this.maxConcurrentRetries = maxConcurrentRetries;
+        this.retryDelayMillis = null;
+        this.retryClassifier = Objects.requireNonNull(retryClassifier, "retryClassifier");
+
+        if (maxConcurrentRetries < 1) {
+            throw new IllegalArgumentException("maxConcurrentRetries must be at least 1, but " +
+                    "was " + maxConcurrentRetries);
+        }
+    }
+
+    /**
+     * How many failures this route has classified as {@code retryability}. Messages which fail
+     * more than once are counted once per failure.
+     */
+    public long getClassifiedCount(Retryability retryability) {
+        return classifiedCounts.get(retryability).get();
+    }
+
+    /**
+     * How many messages this route has successfully reprocessed, by how their last failure was
+     * classified.
+     */
+    public long getRecoveredCount(Retryability retryability) {
+        return recoveredCounts.get(retryability).get();
     }
 
     @Override
     public void configure() throws Exception {
+        ProducerTemplate deadLetterProducer = getContext().createProducerTemplate();
+
+        if (initialRetryDelay != null) {
+            configureScheduledRetries(deadLetterProducer);
+            return;
+        }
+
         from(fromUri)
         .routeId(routeId)
+        .routePolicy(new ServicesRoutePolicy(deadLetterProducer))
         // We use loop instead of error handler because error handlers start with original message
         // sent to point of failure; we need the message to stay intact to prevent reprocessing
         // already succeeded messages and to keep context of previous tries' failures.
@@ -88,6 +188,7 @@ public class RetryingBatchFailedMessageRoute extends RouteBuilder {
                     Collection oldFailures = exchange.getIn().getMandatoryBody(Collection.class);
 
                     List<FailedMessage> newFailures = new ArrayList<>();
+                    List<FailedMessage> notRetryable = new ArrayList<>();
                     List<ReprocessingFailure> reprocessingFailures =
                             new ArrayList<>(oldFailures.size());
 
@@ -117,6 +218,13 @@ public class RetryingBatchFailedMessageRoute extends RouteBuilder {
                             continue;
                         }
 
+                        Retryability retryability = classify(failure);
+
+                        if (retryability == Retryability.DEAD_LETTER) {
+                            notRetryable.add(failure);
+                            continue;
+                        }
+
                         Message message = maybeMessage.get();
                         final Future<Void> reprocessingFuture;
 
@@ -130,46 +238,80 @@ public class RetryingBatchFailedMessageRoute extends RouteBuilder {
                             continue;
                         }
 
-                        reprocessingFailures.add(new ReprocessingFailure(failure, reprocessingFuture));
+                        reprocessingFailures.add(
+                                new ReprocessingFailure(failure, retryability, reprocessingFuture));
+                    }
+
+                    if (!notRetryable.isEmpty()) {
+                        log.warn("Sending {} failed messages classified as not retryable to dead " +
+                                "letter URI {}: {}", notRetryable.size(), deadLetterUri,
+                                notRetryable);
+                        deadLetter(notRetryable, deadLetterProducer);
                     }
 
                     List<Message> reprocessedSuccessfully = log.isDebugEnabled()
                             ? new ArrayList<>(reprocessingFailures.size())
                             : Collections.emptyList();
 
-                    for (ReprocessingFailure reprocessingFailure : reprocessingFailures) {
-                        FailedMessage originalFailure = reprocessingFailure.originalFailure;
-
-                        try {
-                            reprocessingFailure.reprocessingFuture
-                                    .get(processTimeout.toMillis(), TimeUnit.MILLISECONDS);
+                    // Wait for reprocessing to complete, as it completes, up to one timeout for
+                    // the whole batch.
+                    FutureBatch<ReprocessingFailure> reprocessingBatch = new FutureBatch<>(
+                            reprocessingFailures, f -> f.reprocessingFuture, processTimeout);
+                    InterruptedException interrupted = null;
 
-                            if (log.isDebugEnabled()) {
-                                reprocessedSuccessfully.add(originalFailure.parsedMessage().get());
-                            }
-                        } catch (ExecutionException e) {
+                    try {
+                        Optional<ReprocessingFailure> maybeDone;
+                        while ((maybeDone = reprocessingBatch.nextDone()).isPresent()) {
+                            FailedMessage originalFailure = maybeDone.get().originalFailure;
                             Message parsedMessage = originalFailure.parsedMessage().get();
 
-                            log.error("Failed to reprocess message (retry attempt #" + retryAttempt +
-                                    "): " + parsedMessage, e);
-
-                            Throwable realException = e.getCause();
-                            suppressPreviousFailureInNewException(originalFailure, realException);
-
-                            FailedMessage failure = new FailedMessage(
-                                    originalFailure.originalMessage(), parsedMessage, realException);
-                            newFailures.add(failure);
-                        } catch (InterruptedException | TimeoutException e) {
-                            Message parsedMessage = originalFailure.parsedMessage().get();
-
-                            log.warn("Timed out reprocessing message (retry attempt #" + retryAttempt +
-                                    "): " + parsedMessage, e);
-
-                            suppressPreviousFailureInNewException(originalFailure, e);
-                            FailedMessage failure = new FailedMessage(
-                                    originalFailure.originalMessage(), parsedMessage, e);
-                            newFailures.add(failure);
+                            try {
+                                maybeDone.get().reprocessingFuture.get();
+                                recoveredCounts.get(maybeDone.get().retryability)
+                                        .incrementAndGet();
+
+                                if (log.isDebugEnabled()) {
+                                    reprocessedSuccessfully.add(parsedMessage);
+                                }
+                            } catch (ExecutionException e) {
+                                log.error("Failed to reprocess message (retry attempt #" +
+                                        retryAttempt + "): " + parsedMessage, e);
+
+                                Throwable realException = e.getCause();
+                                suppressPreviousFailureInNewException(originalFailure,
+                                        realException);
+
+                                FailedMessage failure = new FailedMessage(
+                                        originalFailure.originalMessage(), parsedMessage,
+                                        realException);
+                                newFailures.add(failure);
+                            } catch (InterruptedException e) {
+                                suppressPreviousFailureInNewException(originalFailure, e);
+                                newFailures.add(new FailedMessage(
+                                        originalFailure.originalMessage(), parsedMessage, e));
+                                throw e;
+                            }
                         }
+                    } catch (InterruptedException e) {
+                        interrupted = e;
+                        Thread.currentThread().interrupt();
+                    }
+
+                    for (ReprocessingFailure reprocessingFailure : reprocessingBatch.pending()) {
+                        FailedMessage originalFailure = reprocessingFailure.originalFailure;
+                        Message parsedMessage = originalFailure.parsedMessage().get();
+                        Exception e = interrupted != null
+                                ? new InterruptedException(interrupted.getMessage())
+                                : new TimeoutException("Message not reprocessed within batch " +
+                                        "timeout of " + processTimeout);
+
+                        log.warn("Timed out reprocessing message (retry attempt #" +
+                                retryAttempt + "): " + parsedMessage, e);
+
+                        suppressPreviousFailureInNewException(originalFailure, e);
+                        FailedMessage failure = new FailedMessage(
+                                originalFailure.originalMessage(), parsedMessage, e);
+                        newFailures.add(failure);
                     }
 
                     log.debug("Retry attempt #{} successfully processed {}/{} messages " +
@@ -187,6 +329,160 @@ public class RetryingBatchFailedMessageRoute extends RouteBuilder {
         .to(deadLetterUri);
     }
 
+    private void configureScheduledRetries(ProducerTemplate deadLetterProducer) {
+        ScheduledExecutorService retryScheduler = getContext().getExecutorServiceManager()
+                .newScheduledThreadPool(this, routeId, maxConcurrentRetries);
+
+        from(fromUri)
+        .routeId(routeId)
+        .routePolicy(new ServicesRoutePolicy(deadLetterProducer))
+        .process(exchange -> {
+            Collection failures = exchange.getIn().getMandatoryBody(Collection.class);
+
+            log.debug("Scheduling retries of {} messages on route {}: {}",
+                    failures.size(), routeId, failures);
+
+            for (Object failureAsObject : failures) {
+                if (!(failureAsObject instanceof FailedMessage)) {
+                    throw new IllegalArgumentException("Messages sent to " +
+                            RetryingBatchFailedMessageRoute.class + " route should be " +
+                            "collections of FailedMessage elements, but got collection " +
+                            "of " + failureAsObject.getClass());
+                }
+
+                scheduleRetry((FailedMessage) failureAsObject, FIRST_ATTEMPT_NUMBER,
+                        retryScheduler, deadLetterProducer);
+            }
+        });
+    }
+
+    /**
+     * Schedules {@code failure} for retry attempt number {@code retryAttempt}, or dead letters
+     * it if there is nothing to retry, or it has no retries left.
+     */
+    private void scheduleRetry(FailedMessage failure, int retryAttempt,
+            ScheduledExecutorService retryScheduler, ProducerTemplate deadLetterProducer) {
+        if (!failure.parsedMessage().isPresent()) {
+            // Nothing to retry; dead letter it.
+            log.warn("Failed message had no parsed message. There is no message to retry " +
+                    "without trying to parse again, which is usually fruitless. Sending to dead " +
+                    "letter URI {}.", deadLetterUri);
+            deadLetter(Collections.singletonList(failure), deadLetterProducer);
+            return;
+        }
+
+        Retryability retryability = classify(failure);
+
+        if (retryability == Retryability.DEAD_LETTER) {
+            log.warn("Failed message classified as not retryable. Sending to dead letter URI " +
+                    "{}: {}", deadLetterUri, failure);
+            deadLetter(Collections.singletonList(failure), deadLetterProducer);
+            return;
+        }
+
+        if (retryAttempt - FIRST_ATTEMPT_NUMBER >= maxRetryCount) {
+            deadLetter(Collections.singletonList(failure), deadLetterProducer);
+            return;
+        }
+
+        Duration retryDelay = retryability == Retryability.RETRY_WITH_LONGER_BACKOFF
+                ? maxRetryDelay
+                : retryDelayForAttempt(retryAttempt);
+
+        try {
+            retryScheduler.schedule(
+                    () -> retry(failure, retryability, retryAttempt, retryScheduler,
+                            deadLetterProducer),
+                    retryDelay.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            log.warn("Could not schedule retry, likely because route " + routeId + " is " +
+                    "stopping. Sending to dead letter URI " + deadLetterUri + ": " + failure, e);
+            deadLetter(Collections.singletonList(failure), deadLetterProducer);
+        }
+    }
+
+    private void retry(FailedMessage failure, Retryability retryability, int retryAttempt,
+            ScheduledExecutorService retryScheduler, ProducerTemplate deadLetterProducer) {
+        Message message = failure.parsedMessage().get();
+        Throwable exception;
+
+        try {
+            message.process().get(processTimeout.toNanos(), TimeUnit.NANOSECONDS);
+            recoveredCounts.get(retryability).incrementAndGet();
+
+            log.debug("Retry attempt #{} successfully processed message on route {}: {}",
+                    retryAttempt, routeId, message);
+            return;
+        } catch (ExecutionException e) {
+            exception = e.getCause();
+        } catch (TimeoutException e) {
+            exception = new TimeoutException("Message not reprocessed within timeout of " +
+                    processTimeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exception = e;
+        } catch (Exception e) {
+            exception = e;
+        }
+
+        log.error("Failed to reprocess message (retry attempt #" + retryAttempt + "): " +
+                message, exception);
+
+        suppressPreviousFailureInNewException(failure, exception);
+        scheduleRetry(new FailedMessage(failure.originalMessage(), message, exception),
+                retryAttempt + 1, retryScheduler, deadLetterProducer);
+    }
+
+    private void deadLetter(List<FailedMessage> failures, ProducerTemplate deadLetterProducer) {
+        try {
+            deadLetterProducer.sendBody(deadLetterUri, failures);
+        } catch (Exception e) {
+            log.error("Failed to send failed messages to dead letter URI " + deadLetterUri + ": " +
+                    failures, e);
+        }
+    }
+
+    /**
+     * Classifies the failure, counting its classification. Failures which cannot be classified
+     * are retried.
+     */
+    private Retryability classify(FailedMessage failure) {
+        Retryability retryability;
+
+        try {
+            retryability = Objects.requireNonNull(retryClassifier.classify(failure),
+                    "retryability");
+        } catch (Exception e) {
+            log.error("Failed to classify failed message, so retrying it: " + failure, e);
+            retryability = Retryability.RETRY;
+        }
+
+        classifiedCounts.get(retryability).incrementAndGet();
+        return retryability;
+    }
+
+    private static Map<Retryability, AtomicLong> newCounts() {
+        Map<Retryability, AtomicLong> counts = new EnumMap<>(Retryability.class);
+
+        for (Retryability retryability : Retryability.values()) {
+            counts.put(retryability, new AtomicLong());
+        }
+
+        return counts;
+    }
+
+    /** Doubles the initial retry delay for each attempt after the first, up to the max delay. */
+    private Duration retryDelayForAttempt(int retryAttempt) {
+        Duration delay = initialRetryDelay;
+
+        for (int attempt = FIRST_ATTEMPT_NUMBER;
+                attempt < retryAttempt && delay.compareTo(maxRetryDelay) < 0; attempt++) {
+            delay = delay.multipliedBy(2);
+        }
+
+        return delay.compareTo(maxRetryDelay) > 0 ? maxRetryDelay : delay;
+    }
+
     /**
      * In the event a messages fails on subsequent retries, this tracks that previous failure as a
      * suppressed exception in the latest failure, keeping the history of failures for debugging.
@@ -234,7 +530,8 @@ public class RetryingBatchFailedMessageRoute extends RouteBuilder {
         };
     }
 
-    private static boolean areExceptionsEqual(@Nullable Throwable t1, @Nullable Throwable t2) {
+    /** Package visible for benchmarking. */
+    static boolean areExceptionsEqual(@Nullable Throwable t1, @Nullable Throwable t2) {
         if (t1 == t2 || Objects.equals(t1, t2)) {
             return true;
         }
@@ -260,10 +557,13 @@ public class RetryingBatchFailedMessageRoute extends RouteBuilder {
 
     private static final class ReprocessingFailure {
         private final FailedMessage originalFailure;
+        private final Retryability retryability;
         private final Future<Void> reprocessingFuture;
 
-        private ReprocessingFailure(FailedMessage originalFailure, Future<Void> reprocessingFuture) {
+        private ReprocessingFailure(FailedMessage originalFailure, Retryability retryability,
+                Future<Void> reprocessingFuture) {
             this.originalFailure = originalFailure;
+            this.retryability = retryability;
             this.reprocessingFuture = reprocessingFuture;
         }
 
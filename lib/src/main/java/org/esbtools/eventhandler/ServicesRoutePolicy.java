@@ -0,0 +1,67 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler;
+
+import org.apache.camel.Route;
+import org.apache.camel.Service;
+import org.apache.camel.support.RoutePolicySupport;
+import org.apache.camel.util.ObjectHelper;
+import org.apache.camel.util.ServiceHelper;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Starts and stops services used within a route's processors, such as producer templates, along
+ * with the route.
+ */
+class ServicesRoutePolicy extends RoutePolicySupport {
+    private final List<Service> services;
+
+    ServicesRoutePolicy(Service... services) {
+        this.services = Arrays.asList(services);
+    }
+
+    @Override
+    public void onStart(Route route) {
+        try {
+            ServiceHelper.startServices(services);
+        } catch (Exception e) {
+            throw ObjectHelper.wrapRuntimeCamelException(e);
+        }
+    }
+
+    @Override
+    public void onStop(Route route) {
+        stopServices();
+    }
+
+    @Override
+    public void onRemove(Route route) {
+        stopServices();
+    }
+
+    private void stopServices() {
+        try {
+            ServiceHelper.stopServices(services);
+        } catch (Exception e) {
+            log.warn("Failed to stop services " + services + " with route", e);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler;
+
+import com.google.common.truth.Truth;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class AdaptiveBatchSizeTest {
+    AtomicReference<Integer> maxBatchSize = new AtomicReference<>(100);
+    AtomicReference<Duration> cycleTimeLimit = new AtomicReference<>(Duration.ofMinutes(1));
+
+    AdaptiveBatchSize batchSize = new AdaptiveBatchSize(20, 5, () -> 4, maxBatchSize::get,
+            () -> Duration.ofSeconds(10), cycleTimeLimit::get);
+
+    @Test
+    public void shouldIncreaseAdditivelyAfterFullBatchWithinTarget() {
+        batchSize.onCycleCompleted(20, 20, Duration.ofSeconds(5));
+        batchSize.onCycleCompleted(25, 25, Duration.ofSeconds(5));
+
+        Truth.assertThat(batchSize.getCurrentBatchSize()).isEqualTo(30);
+    }
+
+    @Test
+    public void shouldNotIncreaseAfterPartialBatchWithinTarget() {
+        batchSize.onCycleCompleted(20, 3, Duration.ofSeconds(1));
+
+        Truth.assertThat(batchSize.getCurrentBatchSize()).isEqualTo(20);
+    }
+
+    @Test
+    public void shouldHalveAfterCycleLongerThanTarget() {
+        batchSize.onCycleCompleted(20, 20, Duration.ofSeconds(11));
+
+        Truth.assertThat(batchSize.getCurrentBatchSize()).isEqualTo(10);
+    }
+
+    @Test
+    public void shouldOnlyHalveOnceForConcurrentCyclesOfSameBatchSize() {
+        batchSize.onCycleCompleted(20, 20, Duration.ofSeconds(11));
+        batchSize.onCycleCompleted(20, 20, Duration.ofSeconds(11));
+
+        Truth.assertThat(batchSize.getCurrentBatchSize()).isEqualTo(10);
+    }
+
+    @Test
+    public void shouldTreatCycleTimeLimitAsTargetIfLessThanTarget() {
+        cycleTimeLimit.set(Duration.ofSeconds(2));
+
+        batchSize.onCycleCompleted(20, 20, Duration.ofSeconds(3));
+
+        Truth.assertThat(batchSize.getCurrentBatchSize()).isEqualTo(10);
+    }
+
+    @Test
+    public void shouldNotOverflowWhenIncreasingUpToUnboundedMax() {
+        maxBatchSize.set(Integer.MAX_VALUE);
+        AdaptiveBatchSize nearMax = new AdaptiveBatchSize(Integer.MAX_VALUE - 1, 5, () -> 4,
+                maxBatchSize::get, () -> Duration.ofSeconds(10), cycleTimeLimit::get);
+
+        nearMax.onCycleCompleted(Integer.MAX_VALUE - 1, Integer.MAX_VALUE - 1,
+                Duration.ofSeconds(5));
+
+        Truth.assertThat(nearMax.getCurrentBatchSize()).isEqualTo(Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void shouldStayWithinBounds() {
+        for (int i = 0; i < 10; i++) {
+            batchSize.onCycleCompleted(batchSize.getCurrentBatchSize(),
+                    batchSize.getCurrentBatchSize(), Duration.ofMinutes(1));
+        }
+
+        Truth.assertThat(batchSize.getCurrentBatchSize()).isEqualTo(4);
+
+        maxBatchSize.set(2);
+
+        Truth.assertThat(batchSize.getCurrentBatchSize()).isEqualTo(4);
+    }
+}
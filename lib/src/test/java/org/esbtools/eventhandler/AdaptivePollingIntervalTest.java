@@ -0,0 +1,86 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler;
+
+import com.google.common.truth.Truth;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class AdaptivePollingIntervalTest {
+    AtomicReference<Duration> minInterval = new AtomicReference<>(Duration.ofMillis(10));
+    AtomicReference<Duration> maxInterval = new AtomicReference<>(Duration.ofSeconds(8));
+
+    AdaptivePollingInterval interval = new AdaptivePollingInterval(Duration.ofSeconds(1),
+            minInterval::get, maxInterval::get);
+
+    @Test
+    public void shouldInitiallyUseInitialIntervalAndBeDue() {
+        Truth.assertThat(interval.getCurrentInterval()).isEqualTo(Duration.ofSeconds(1));
+        Truth.assertThat(interval.isPollDue()).isTrue();
+    }
+
+    @Test
+    public void shouldUseMinIntervalAfterFullBatch() {
+        interval.onBatchRetrieved(10, 10);
+
+        Truth.assertThat(interval.getCurrentInterval()).isEqualTo(Duration.ofMillis(10));
+    }
+
+    @Test
+    public void shouldBackOffExponentiallyUpToMaxIntervalAfterEmptyBatches() {
+        interval.onBatchRetrieved(0, 10);
+        Truth.assertThat(interval.getCurrentInterval()).isEqualTo(Duration.ofSeconds(2));
+
+        interval.onBatchRetrieved(0, 10);
+        interval.onBatchRetrieved(0, 10);
+        Truth.assertThat(interval.getCurrentInterval()).isEqualTo(Duration.ofSeconds(8));
+
+        interval.onBatchRetrieved(0, 10);
+        Truth.assertThat(interval.getCurrentInterval()).isEqualTo(Duration.ofSeconds(8));
+        Truth.assertThat(interval.isPollDue()).isFalse();
+    }
+
+    @Test
+    public void shouldStartBackingOffFromInitialIntervalAfterFullBatch() {
+        interval.onBatchRetrieved(10, 10);
+        interval.onBatchRetrieved(0, 10);
+
+        Truth.assertThat(interval.getCurrentInterval()).isEqualTo(Duration.ofSeconds(1));
+    }
+
+    @Test
+    public void shouldResetToInitialIntervalAfterPartialBatch() {
+        interval.onBatchRetrieved(0, 10);
+        interval.onBatchRetrieved(0, 10);
+        interval.onBatchRetrieved(5, 10);
+
+        Truth.assertThat(interval.getCurrentInterval()).isEqualTo(Duration.ofSeconds(1));
+    }
+
+    @Test
+    public void shouldUseLatestBounds() {
+        interval.onBatchRetrieved(0, 10);
+        maxInterval.set(Duration.ofSeconds(3));
+        interval.onBatchRetrieved(0, 10);
+
+        Truth.assertThat(interval.getCurrentInterval()).isEqualTo(Duration.ofSeconds(3));
+    }
+}
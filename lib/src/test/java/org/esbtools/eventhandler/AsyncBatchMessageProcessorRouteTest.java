@@ -57,6 +57,18 @@ public class AsyncBatchMessageProcessorRouteTest extends CamelTestSupport {
     @EndpointInject(uri = "direct:short_timeout")
     ProducerTemplate toShortTimeout;
 
+    @EndpointInject(uri = "direct:half_second_timeout")
+    ProducerTemplate toHalfSecondTimeout;
+
+    @EndpointInject(uri = "direct:streaming_failures")
+    ProducerTemplate toStreamingFailures;
+
+    @EndpointInject(uri = "direct:one_in_flight")
+    ProducerTemplate toOneInFlight;
+
+    @EndpointInject(uri = "direct:two_in_flight")
+    ProducerTemplate toTwoInFlight;
+
     @EndpointInject(uri = "mock:failures")
     MockEndpoint toFailures;
 
@@ -105,9 +117,13 @@ public class AsyncBatchMessageProcessorRouteTest extends CamelTestSupport {
     }
 
     /**
-     * Creates two message processor routes: one which reads from "direct:incoming" with a long
-     * timeout which should not be hit in normal tests, and another with a very short timeout,
-     * reading from "direct:short_timeout", in order to test timeout handling.
+     * Creates five message processor routes: one which reads from "direct:incoming" with a long
+     * timeout which should not be hit in normal tests, others with a very short timeout,
+     * reading from "direct:short_timeout", and a half second timeout, reading from
+     * "direct:half_second_timeout", in order to test timeout handling, one which streams each
+     * failure as soon as it is found, reading from "direct:streaming_failures", and two which
+     * process one or two messages at a time with a half second timeout, reading from
+     * "direct:one_in_flight" and "direct:two_in_flight".
      */
     @Override
     protected RouteBuilder[] createRouteBuilders() throws Exception {
@@ -115,7 +131,15 @@ public class AsyncBatchMessageProcessorRouteTest extends CamelTestSupport {
                 new AsyncBatchMessageProcessorRoute("direct:incoming", "mock:failures",
                         Duration.ofMinutes(1), messageFactory),
                 new AsyncBatchMessageProcessorRoute("direct:short_timeout", "mock:failures",
-                        Duration.ofMillis(1), messageFactory)
+                        Duration.ofMillis(1), messageFactory),
+                new AsyncBatchMessageProcessorRoute("direct:half_second_timeout", "mock:failures",
+                        Duration.ofMillis(500), messageFactory),
+                new AsyncBatchMessageProcessorRoute("direct:streaming_failures", "mock:failures",
+                        Duration.ofMinutes(1), messageFactory, Duration.ZERO),
+                new AsyncBatchMessageProcessorRoute("direct:one_in_flight", "mock:failures",
+                        Duration.ofMillis(500), messageFactory, null, 1),
+                new AsyncBatchMessageProcessorRoute("direct:two_in_flight", "mock:failures",
+                        Duration.ofMillis(500), messageFactory, null, 2)
         };
     }
 
@@ -240,6 +264,134 @@ public class AsyncBatchMessageProcessorRouteTest extends CamelTestSupport {
         Truth.assertThat(failedMessage.exception()).isInstanceOf(TimeoutException.class);
     }
 
+    @Test(timeout = 2000L)
+    public void shouldTimeOutAllMessagesStillProcessingAtOneDeadlineForWholeBatch()
+            throws InterruptedException {
+        toFailures.expectedMessageCount(1);
+
+        toHalfSecondTimeout.sendBody(Arrays.asList(Duration.ofSeconds(5), Duration.ofSeconds(5),
+                Duration.ofSeconds(5), Duration.ofSeconds(5), "success"));
+
+        toFailures.assertIsSatisfied();
+
+        Collection<?> failures = toFailures.getExchanges().get(0).getIn().getBody(Collection.class);
+
+        Truth.assertThat(failures).hasSize(4);
+        Truth.assertThat(persistence).contains("success");
+
+        for (Object failure : failures) {
+            Truth.assertThat(((FailedMessage) failure).exception())
+                    .isInstanceOf(TimeoutException.class);
+        }
+    }
+
+    @Test(timeout = 2000L)
+    public void shouldNotTimeOutMessagesWhichFinishWhileEarlierMessagesAreStillProcessing()
+            throws InterruptedException {
+        toFailures.expectedMessageCount(1);
+
+        toHalfSecondTimeout.sendBody(Arrays.asList(Duration.ofSeconds(5), Duration.ofMillis(100)));
+
+        toFailures.assertIsSatisfied();
+
+        Collection<?> failures = toFailures.getExchanges().get(0).getIn().getBody(Collection.class);
+
+        Truth.assertThat(failures).hasSize(1);
+
+        FailedMessage failure = (FailedMessage) failures.iterator().next();
+        Truth.assertThat(failure.originalMessage()).isEqualTo(Duration.ofSeconds(5));
+        Truth.assertThat(failure.exception()).isInstanceOf(TimeoutException.class);
+    }
+
+    @Test(timeout = 1000L)
+    public void shouldStreamFailuresToFailureUriBeforeWholeBatchIsProcessedIfConfigured()
+            throws InterruptedException {
+        toFailures.expectedMessageCount(1);
+
+        Exception exception = new Exception("Simulated failure");
+
+        toStreamingFailures.asyncSendBody(toStreamingFailures.getDefaultEndpoint(),
+                Arrays.asList(exception, Duration.ofSeconds(1)));
+
+        toFailures.assertIsSatisfied();
+
+        Collection<?> failures = toFailures.getExchanges().get(0).getIn().getBody(Collection.class);
+
+        Truth.assertThat(failures).hasSize(1);
+        Truth.assertThat(((FailedMessage) failures.iterator().next()).exception())
+                .isEqualTo(exception);
+    }
+
+    @Test(timeout = 2000L)
+    public void shouldKeepProcessingAndSendFailuresWhenDoneIfStreamingFailuresCannotBeSent()
+            throws InterruptedException {
+        toFailures.expectedMessageCount(2);
+        toFailures.whenExchangeReceived(1, e -> {
+            throw new Exception("Simulated failure sending failures");
+        });
+
+        Exception exception = new Exception("Simulated failure");
+
+        toStreamingFailures.sendBody(Arrays.asList(exception, Duration.ofMillis(100), "success"));
+
+        toFailures.assertIsSatisfied();
+
+        Collection<?> failures = toFailures.getExchanges().get(1).getIn().getBody(Collection.class);
+
+        Truth.assertThat(failures).hasSize(1);
+        Truth.assertThat(((FailedMessage) failures.iterator().next()).exception())
+                .isEqualTo(exception);
+        Truth.assertThat(persistence).contains("success");
+    }
+
+    @Test(timeout = 1000L)
+    public void shouldProcessMessagesFromIteratorBodies() {
+        toIncoming.sendBody(Arrays.asList("fun", "with", "iterators").iterator());
+
+        Awaitility.await().until(
+                () -> persistence,
+                Matchers.hasItems("fun", "with", "iterators"));
+    }
+
+    @Test(timeout = 2000L)
+    public void shouldNotStartMoreThanMaxMessagesInFlightAndTimeOutThoseNotStarted()
+            throws InterruptedException {
+        toFailures.expectedMessageCount(1);
+
+        toOneInFlight.sendBody(Arrays.asList(Duration.ofMillis(300), Duration.ofMillis(300),
+                "not started").iterator());
+
+        toFailures.assertIsSatisfied();
+
+        Collection<?> failures = toFailures.getExchanges().get(0).getIn().getBody(Collection.class);
+
+        Truth.assertThat(failures).hasSize(2);
+        Truth.assertThat(persistence).doesNotContain("processing not started");
+
+        for (Object failure : failures) {
+            Truth.assertThat(((FailedMessage) failure).exception())
+                    .isInstanceOf(TimeoutException.class);
+        }
+    }
+
+    @Test(timeout = 2000L)
+    public void shouldStartNextMessageWhenAnyMessageInFlightFinishes()
+            throws InterruptedException {
+        toFailures.expectedMessageCount(1);
+
+        toTwoInFlight.sendBody(Arrays.asList(Duration.ofSeconds(5), Duration.ofMillis(100),
+                Duration.ofMillis(100), "success"));
+
+        toFailures.assertIsSatisfied();
+
+        Collection<?> failures = toFailures.getExchanges().get(0).getIn().getBody(Collection.class);
+
+        Truth.assertThat(failures).hasSize(1);
+        Truth.assertThat(((FailedMessage) failures.iterator().next()).originalMessage())
+                .isEqualTo(Duration.ofSeconds(5));
+        Truth.assertThat(persistence).contains("success");
+    }
+
     @Test(timeout = 1000L)
     public void shouldSendAllFailuresInBatchToFailureUriInSameCollection() throws InterruptedException {
         toFailures.expectedMessageCount(1);
@@ -0,0 +1,243 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler;
+
+import org.esbtools.eventhandler.AsyncBatchMessageProcessorRouteTest.ByTypeMessageFactory;
+
+import com.google.common.truth.Truth;
+import com.google.common.util.concurrent.ForwardingListenableFuture.SimpleForwardingListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.jayway.awaitility.Awaitility;
+import org.apache.camel.EndpointInject;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+@RunWith(JUnit4.class)
+public class NonBlockingBatchMessageProcessorRouteTest extends CamelTestSupport {
+    List<Object> persistence = Collections.synchronizedList(new ArrayList<>());
+
+    MessageFactory messageFactory = new FutureMessageFactory(persistence);
+
+    @EndpointInject(uri = "direct:incoming")
+    ProducerTemplate toIncoming;
+
+    @EndpointInject(uri = "seda:single_consumer")
+    ProducerTemplate toSingleConsumer;
+
+    @EndpointInject(uri = "direct:half_second_timeout")
+    ProducerTemplate toHalfSecondTimeout;
+
+    @EndpointInject(uri = "mock:failures")
+    MockEndpoint toFailures;
+
+    /**
+     * Like {@link ByTypeMessageFactory}, but additionally creates a message which returns the
+     * provided object as its future when the object is a {@link Future}, so tests may control
+     * when processing completes.
+     */
+    static class FutureMessageFactory implements MessageFactory {
+        private final List<Object> persistence;
+        private final ByTypeMessageFactory byTypeMessageFactory;
+
+        FutureMessageFactory(List<Object> persistence) {
+            this.persistence = persistence;
+            this.byTypeMessageFactory = new ByTypeMessageFactory(persistence);
+        }
+
+        @Override
+        public Message getMessageForBody(Object body) {
+            if (body instanceof Future) {
+                return new FutureMessage((Future<Void>) body, persistence);
+            }
+
+            return byTypeMessageFactory.getMessageForBody(body);
+        }
+    }
+
+    /**
+     * Creates three message processor routes: one which reads from "direct:incoming" with a long
+     * timeout which should not be hit in normal tests, one reading from a single consumer seda
+     * queue, "seda:single_consumer", and one with a half second timeout, reading from
+     * "direct:half_second_timeout", in order to test timeout handling.
+     */
+    @Override
+    protected RouteBuilder[] createRouteBuilders() throws Exception {
+        return new RouteBuilder[]{
+                new NonBlockingBatchMessageProcessorRoute("direct:incoming", "mock:failures",
+                        Duration.ofMinutes(1), messageFactory),
+                new NonBlockingBatchMessageProcessorRoute("seda:single_consumer", "mock:failures",
+                        Duration.ofMinutes(1), messageFactory),
+                new NonBlockingBatchMessageProcessorRoute("direct:half_second_timeout",
+                        "mock:failures", Duration.ofMillis(500), messageFactory)
+        };
+    }
+
+    @Test(timeout = 1000L)
+    public void shouldProcessReceivedMessagesInCollection() {
+        toIncoming.sendBody(Arrays.asList("fun", "with", "messages"));
+
+        Awaitility.await().until(
+                () -> persistence,
+                Matchers.hasItems("fun", "with", "messages"));
+    }
+
+    @Test(expected = Exception.class)
+    public void shouldFailIfEndpointDoesNotReceiveACollectionType() {
+        toIncoming.sendBody("not a collection");
+    }
+
+    @Test(timeout = 2000L)
+    public void shouldNotBlockConsumerThreadWhileMessagesAreProcessing()
+            throws InterruptedException {
+        CompletableFuture<Void> firstBatchFuture = new CompletableFuture<>();
+        CompletableFuture<Void> secondBatchFuture = new CompletableFuture<>();
+
+        toFailures.expectedMessageCount(2);
+
+        toSingleConsumer.sendBody(Collections.singletonList(firstBatchFuture));
+        toSingleConsumer.sendBody(Collections.singletonList(secondBatchFuture));
+
+        // The only consumer is free to start the second batch before the first is done.
+        Awaitility.await().until(
+                () -> persistence,
+                Matchers.hasItems(firstBatchFuture, secondBatchFuture));
+
+        Truth.assertThat(toFailures.getReceivedCounter()).isEqualTo(0);
+
+        secondBatchFuture.complete(null);
+        firstBatchFuture.completeExceptionally(new Exception("Simulated failure"));
+
+        toFailures.assertIsSatisfied();
+
+        Collection<?> secondBatchFailures = toFailures.getExchanges().get(0).getIn()
+                .getBody(Collection.class);
+        Collection<?> firstBatchFailures = toFailures.getExchanges().get(1).getIn()
+                .getBody(Collection.class);
+
+        Truth.assertThat(secondBatchFailures).isEmpty();
+        Truth.assertThat(firstBatchFailures).hasSize(1);
+    }
+
+    @Test(timeout = 2000L)
+    public void shouldTimeOutAllMessagesStillProcessingAtOneDeadlineForWholeBatch()
+            throws InterruptedException {
+        toFailures.expectedMessageCount(1);
+
+        toHalfSecondTimeout.sendBody(Arrays.asList(new CompletableFuture<Void>(),
+                Duration.ofSeconds(5), new Exception("Simulated failure"), "success"));
+
+        toFailures.assertIsSatisfied();
+
+        Collection<?> failures = toFailures.getExchanges().get(0).getIn().getBody(Collection.class);
+
+        Truth.assertThat(failures).hasSize(3);
+        Truth.assertThat(persistence).contains("success");
+
+        long timeouts = failures.stream()
+                .map(FailedMessage.class::cast)
+                .filter(failure -> failure.exception() instanceof TimeoutException)
+                .count();
+
+        Truth.assertThat(timeouts).isEqualTo(2L);
+    }
+
+    @Test(timeout = 2000L)
+    public void shouldCompleteBatchesOfListenableFuturesThroughListeners()
+            throws InterruptedException {
+        SettableFuture<Void> settableFuture = SettableFuture.create();
+        // Never reports done when checked, so only a listener can tell the batch it finished.
+        SimpleForwardingListenableFuture<Void> listenableFuture =
+                new SimpleForwardingListenableFuture<Void>(settableFuture) {
+                    @Override
+                    public boolean isDone() {
+                        return false;
+                    }
+                };
+
+        toFailures.expectedMessageCount(1);
+
+        toHalfSecondTimeout.asyncSendBody(toHalfSecondTimeout.getDefaultEndpoint(),
+                Collections.singletonList(listenableFuture));
+
+        Awaitility.await().until(() -> persistence, Matchers.hasItem(listenableFuture));
+        settableFuture.set(null);
+
+        toFailures.assertIsSatisfied();
+
+        Truth.assertThat(toFailures.getExchanges().get(0).getIn().getBody(Collection.class))
+                .isEmpty();
+    }
+
+    @Test(timeout = 1000L)
+    public void shouldCompleteBatchesWhichFailBeforeAnyMessageProcesses()
+            throws InterruptedException {
+        toFailures.expectedMessageCount(1);
+
+        toIncoming.sendBody(Collections.singletonList(
+                new AsyncBatchMessageProcessorRouteTest.SimulatedMessageFactoryFailure(
+                        new RuntimeException("Simulated parse failure"))));
+
+        toFailures.assertIsSatisfied();
+
+        Truth.assertThat(toFailures.getExchanges().get(0).getIn().getBody(Collection.class))
+                .hasSize(1);
+    }
+
+    /**
+     * Persists its future when processing starts.
+     */
+    static class FutureMessage implements Message {
+        private final Future<Void> future;
+        private final List<Object> persistence;
+
+        FutureMessage(Future<Void> future, List<Object> persistence) {
+            this.future = future;
+            this.persistence = persistence;
+        }
+
+        @Override
+        public Future<Void> process() {
+            persistence.add(future);
+            return future;
+        }
+
+        @Override
+        public String toString() {
+            return "FutureMessage{" +
+                    "future=" + future +
+                    '}';
+        }
+    }
+}
@@ -21,10 +21,13 @@ package org.esbtools.eventhandler;
 import com.google.common.truth.Truth;
 import com.jayway.awaitility.Awaitility;
 import org.apache.camel.EndpointInject;
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.NotifyBuilder;
 import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.component.mock.MockEndpoint;
 import org.apache.camel.test.junit4.CamelTestSupport;
 import org.esbtools.eventhandler.testing.FailingDocumentEvent;
+import org.esbtools.eventhandler.testing.HangingDocumentEvent;
 import org.esbtools.eventhandler.testing.SimpleInMemoryDocumentEventRepository;
 import org.esbtools.eventhandler.testing.StringDocumentEvent;
 import org.hamcrest.Matchers;
@@ -103,6 +106,30 @@ public class PollingDocumentEventProcessorRouteTest extends CamelTestSupport {
         failureEndpoint.assertIsSatisfied(100);
     }
 
+    @Test
+    public void shouldCancelAndFailLookupsNotDoneWithinTransactionTimeoutButPublishRest()
+            throws Exception {
+        failureEndpoint.expectedMessageCount(2);
+        documentEndpoint.expectedMessageCount(3);
+
+        HangingDocumentEvent hangingEvent1 = new HangingDocumentEvent();
+        HangingDocumentEvent hangingEvent2 = new HangingDocumentEvent();
+
+        List<DocumentEvent> events = new ArrayList<>(5);
+        events.add(hangingEvent1);
+        events.add(hangingEvent2);
+        events.addAll(randomSuccessfulEvents(3));
+
+        documentEventRepository.setTransactionTimeout(Duration.ofMillis(500));
+        documentEventRepository.addNewDocumentEvents(events);
+
+        documentEndpoint.assertIsSatisfied();
+        failureEndpoint.assertIsSatisfied();
+        Truth.assertThat(documentEventRepository.getFailedEvents()).hasSize(2);
+        Truth.assertThat(hangingEvent1.isLookupCancelled()).isTrue();
+        Truth.assertThat(hangingEvent2.isLookupCancelled()).isTrue();
+    }
+
     @Test
     public void shouldMarkEventsAsPublishedAfterPublishingSuccessfully() throws Exception {
         documentEndpoint.expectedMessageCount(5);
@@ -115,6 +142,114 @@ public class PollingDocumentEventProcessorRouteTest extends CamelTestSupport {
                 .until(documentEventRepository::getPublishedEvents, Matchers.hasSize(5));
     }
 
+    @Test
+    public void shouldMarkPublishedEventsInOneUpdatePerBatch() throws Exception {
+        documentEndpoint.expectedMessageCount(10);
+
+        documentEventRepository.addNewDocumentEvents(randomSuccessfulEvents(10));
+
+        Awaitility.await().atMost(5, TimeUnit.SECONDS)
+                .until(documentEventRepository::getPublishedEvents, Matchers.hasSize(10));
+        Truth.assertThat(documentEventRepository.getPublishedUpdateCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldMarkSuccessfullyPublishedEventsEvenIfOthersFailedToPublish() throws Exception {
+        List<StringDocumentEvent> events = randomSuccessfulEvents(6);
+        Object failingDocument = events.get(2).lookupDocument().get();
+
+        documentEndpoint.whenAnyExchangeReceived(exchange -> {
+            if (failingDocument.equals(exchange.getIn().getBody())) {
+                throw new Exception("Simulated publish failure");
+            }
+        });
+
+        documentEventRepository.addNewDocumentEvents(events);
+
+        Awaitility.await().atMost(5, TimeUnit.SECONDS)
+                .until(documentEventRepository::getPublishedEvents, Matchers.hasSize(5));
+        Truth.assertThat(documentEventRepository.getPublishedEvents()).doesNotContain(events.get(2));
+    }
+
+    @Test
+    public void shouldFailBatchIfAnyEventFailedToPublish() throws Exception {
+        List<StringDocumentEvent> events = randomSuccessfulEvents(3);
+        Object failingDocument = events.get(1).lookupDocument().get();
+
+        // Split exchanges fail on their own; only count the batch's exchange.
+        NotifyBuilder batchFailed = new NotifyBuilder(context)
+                .fromRoute("documentEventProcessor-*")
+                .filter(exchange -> exchange.getProperty(Exchange.SPLIT_INDEX) == null)
+                .whenFailed(1)
+                .create();
+
+        documentEndpoint.whenAnyExchangeReceived(exchange -> {
+            if (failingDocument.equals(exchange.getIn().getBody())) {
+                throw new Exception("Simulated publish failure");
+            }
+        });
+
+        documentEventRepository.addNewDocumentEvents(events);
+
+        Awaitility.await().atMost(5, TimeUnit.SECONDS)
+                .until(documentEventRepository::getPublishedEvents, Matchers.hasSize(2));
+        Truth.assertThat(batchFailed.matches(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void shouldRetrieveUpToMaxBatchesInFlightWhilePreviousBatchesArePublishing()
+            throws Exception {
+        SimpleInMemoryDocumentEventRepository pipelinedRepository =
+                new SimpleInMemoryDocumentEventRepository();
+        CountDownLatch publishing = new CountDownLatch(1);
+
+        getMockEndpoint("mock:pipelinedDocuments").whenAnyExchangeReceived(exchange -> {
+            publishing.await();
+        });
+
+        context.addRoutes(PollingDocumentEventProcessorRoute.builder(pipelinedRepository,
+                "mock:pipelinedDocuments", "mock:failures")
+                .pollingInterval(Duration.ofMillis(100))
+                .batchSize(10)
+                .maxBatchesInFlight(2)
+                .build());
+
+        pipelinedRepository.addNewDocumentEvents(randomSuccessfulEvents(30));
+
+        // First batch is stuck publishing, second is waiting to be published, third must wait.
+        Awaitility.await().atMost(5, TimeUnit.SECONDS)
+                .until(pipelinedRepository::getDocumentEvents, Matchers.hasSize(10));
+        Thread.sleep(500);
+        Truth.assertThat(pipelinedRepository.getDocumentEvents()).hasSize(10);
+
+        publishing.countDown();
+
+        Awaitility.await().atMost(5, TimeUnit.SECONDS)
+                .until(pipelinedRepository::getPublishedEvents, Matchers.hasSize(30));
+    }
+
+    @Test
+    public void shouldGrowAdaptiveBatchSizeWhenFullBatchesAreOptimizedDownWithinTargetCycleTime()
+            throws Exception {
+        SimpleInMemoryDocumentEventRepository optimizingRepository =
+                new SimpleInMemoryDocumentEventRepository();
+        AdaptiveBatchSize adaptiveBatchSize = new AdaptiveBatchSize(2, 2, () -> 1, () -> 100,
+                () -> Duration.ofSeconds(10), () -> Duration.ofSeconds(10));
+
+        optimizingRepository.optimizeRetrievedEventsDownTo(1);
+
+        context.addRoutes(PollingDocumentEventProcessorRoute.builder(optimizingRepository,
+                "mock:optimizedDocuments", "mock:failures")
+                .pollingInterval(Duration.ofMillis(100))
+                .adaptiveBatchSize(adaptiveBatchSize)
+                .build());
+
+        optimizingRepository.addNewDocumentEvents(randomSuccessfulEvents(100));
+
+        Awaitility.await().atMost(5, TimeUnit.SECONDS)
+                .until(adaptiveBatchSize::getCurrentBatchSize, Matchers.greaterThan(2));
+    }
+
     @Test(timeout = 10000)
     // Eventually this should be "shouldRollBackEventsWherePublishFailed"
     // See: https://github.com/esbtools/event-handler/issues/18
@@ -19,6 +19,7 @@
 package org.esbtools.eventhandler;
 
 import org.esbtools.eventhandler.testing.FailingNotification;
+import org.esbtools.eventhandler.testing.HangingNotification;
 import org.esbtools.eventhandler.testing.SimpleInMemoryDocumentEventRepository;
 import org.esbtools.eventhandler.testing.SimpleInMemoryNotificationRepository;
 import org.esbtools.eventhandler.testing.StringNotification;
@@ -130,6 +131,48 @@ public class PollingNotificationProcessorRouteTest extends CamelTestSupport {
         Truth.assertThat(documentEventRepository.getDocumentEvents()).isEmpty();
     }
 
+    @Test
+    public void shouldCancelAndFailLookupsNotDoneWithinTransactionTimeoutButProcessRest() {
+        HangingNotification hangingNotification1 = new HangingNotification();
+        HangingNotification hangingNotification2 = new HangingNotification();
+
+        List<Notification> notifications = new ArrayList<>(5);
+        notifications.add(hangingNotification1);
+        notifications.add(hangingNotification2);
+        notifications.addAll(randomNotifications(3));
+
+        notificationRepository.setTransactionTimeout(Duration.ofMillis(500));
+        notificationRepository.addNotifications(notifications);
+
+        Awaitility.await().atMost(5, TimeUnit.SECONDS)
+                .until(documentEventRepository::getDocumentEvents, Matchers.hasSize(3));
+        Awaitility.await().atMost(5, TimeUnit.SECONDS)
+                .until(notificationRepository::getFailedNotifications, Matchers.hasSize(2));
+        Truth.assertThat(notificationRepository.getProcessedNotifications()).hasSize(3);
+        Truth.assertThat(hangingNotification1.isLookupCancelled()).isTrue();
+        Truth.assertThat(hangingNotification2.isLookupCancelled()).isTrue();
+    }
+
+    @Test
+    public void shouldGrowAdaptiveBatchSizeWhenFullBatchesFinishWithinTargetCycleTime()
+            throws Exception {
+        SimpleInMemoryNotificationRepository adaptiveNotificationRepository =
+                new SimpleInMemoryNotificationRepository();
+        AdaptiveBatchSize adaptiveBatchSize = new AdaptiveBatchSize(2, 2, () -> 1, () -> 100,
+                () -> Duration.ofSeconds(10), () -> Duration.ofSeconds(10));
+
+        context.addRoutes(PollingNotificationProcessorRoute.builder(
+                adaptiveNotificationRepository, documentEventRepository)
+                .pollingInterval(Duration.ofMillis(100))
+                .adaptiveBatchSize(adaptiveBatchSize)
+                .build());
+
+        adaptiveNotificationRepository.addNotifications(randomNotifications(100));
+
+        Awaitility.await().atMost(5, TimeUnit.SECONDS)
+                .until(adaptiveBatchSize::getCurrentBatchSize, Matchers.greaterThan(2));
+    }
+
     static List<StringNotification> randomNotifications(int amount) {
         List<StringNotification> notifications = new ArrayList<>(amount);
 
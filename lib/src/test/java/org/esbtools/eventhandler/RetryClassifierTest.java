@@ -0,0 +1,74 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.truth.Truth;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeoutException;
+
+public class RetryClassifierTest {
+    RetryClassifier byType = RetryClassifier.byExceptionType(
+            ImmutableMap.of(
+                    SocketTimeoutException.class, Retryability.RETRY_WITH_LONGER_BACKOFF,
+                    IOException.class, Retryability.RETRY,
+                    IllegalArgumentException.class, Retryability.DEAD_LETTER),
+            Retryability.RETRY);
+
+    @Test
+    public void shouldClassifyByFirstMatchingTypeInMapOrder() {
+        Truth.assertThat(byType.classify(failureOf(new SocketTimeoutException())))
+                .isEqualTo(Retryability.RETRY_WITH_LONGER_BACKOFF);
+        Truth.assertThat(byType.classify(failureOf(new IOException())))
+                .isEqualTo(Retryability.RETRY);
+    }
+
+    @Test
+    public void shouldClassifyByExceptionsInCauseChain() {
+        Exception wrapped = new RuntimeException(new IllegalArgumentException("Simulated bug"));
+
+        Truth.assertThat(byType.classify(failureOf(wrapped))).isEqualTo(Retryability.DEAD_LETTER);
+    }
+
+    @Test
+    public void shouldClassifyUnmatchedExceptionsAsOtherwise() {
+        Truth.assertThat(byType.classify(failureOf(new TimeoutException())))
+                .isEqualTo(Retryability.RETRY);
+    }
+
+    @Test
+    public void shouldClassifyByPredicateOverCauseChain() {
+        RetryClassifier byPredicate = RetryClassifier.byException(
+                e -> e instanceof IllegalStateException, Retryability.DEAD_LETTER,
+                Retryability.RETRY);
+
+        Truth.assertThat(byPredicate.classify(failureOf(
+                new Exception(new IllegalStateException("Simulated bug")))))
+                .isEqualTo(Retryability.DEAD_LETTER);
+        Truth.assertThat(byPredicate.classify(failureOf(new Exception("Simulated failure"))))
+                .isEqualTo(Retryability.RETRY);
+    }
+
+    static FailedMessage failureOf(Exception exception) {
+        return new FailedMessage("original", exception);
+    }
+}
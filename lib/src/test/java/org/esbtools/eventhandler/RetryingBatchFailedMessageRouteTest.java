@@ -21,6 +21,7 @@ package org.esbtools.eventhandler;
 import com.google.common.collect.TreeTraverser;
 import com.google.common.truth.Truth;
 import com.google.common.util.concurrent.Futures;
+import com.jayway.awaitility.Awaitility;
 import org.apache.camel.EndpointInject;
 import org.apache.camel.ProducerTemplate;
 import org.apache.camel.RoutesBuilder;
@@ -35,6 +36,7 @@ import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -47,12 +49,30 @@ public class RetryingBatchFailedMessageRouteTest extends CamelTestSupport {
     @EndpointInject(uri = "direct:failure_batches_long_delay")
     ProducerTemplate toFailureRetry2SecondDelay5Retries;
 
+    @EndpointInject(uri = "direct:failures_scheduled")
+    ProducerTemplate toScheduledRetry5Retries;
+
+    @EndpointInject(uri = "direct:failures_classified")
+    ProducerTemplate toClassifiedRetry5Retries;
+
     @EndpointInject(uri = "mock:direct:dlq")
     MockEndpoint toDlq;
 
+    @EndpointInject(uri = "mock:direct:scheduled_dlq")
+    MockEndpoint toScheduledDlq;
+
+    RetryingBatchFailedMessageRoute classifiedRoute = new RetryingBatchFailedMessageRoute(
+            "direct:failures_classified",
+            /*initialRetryDelay:*/ Duration.ofMillis(10), /*maxRetryDelay:*/ Duration.ofMillis(40),
+            /*maxRetryCount:*/ 5, /*processTimeout:*/ Duration.ofSeconds(5),
+            "mock:direct:scheduled_dlq", /*maxConcurrentRetries:*/ 2,
+            RetryClassifier.byException(e -> e instanceof IllegalArgumentException,
+                    Retryability.DEAD_LETTER, Retryability.RETRY));
+
     @Override
     protected RoutesBuilder[] createRouteBuilders() throws Exception {
         return new RoutesBuilder[] {
+                classifiedRoute,
                 new RetryingBatchFailedMessageRoute("direct:failure_batches",
                         /*retryDelay:*/ ExpressionBuilder.constantExpression(10),
                         /*maxRetryCount:*/ 5, /*processTimeout:*/ Duration.ofSeconds(5),
@@ -61,6 +81,11 @@ public class RetryingBatchFailedMessageRouteTest extends CamelTestSupport {
                         /*retryDelay:*/ ExpressionBuilder.constantExpression(2000),
                         /*maxRetryCount:*/ 5, /*processTimeout:*/ Duration.ofSeconds(5),
                         "mock:direct:dlq"),
+                new RetryingBatchFailedMessageRoute("direct:failures_scheduled",
+                        /*initialRetryDelay:*/ Duration.ofMillis(10),
+                        /*maxRetryDelay:*/ Duration.ofMillis(40), /*maxRetryCount:*/ 5,
+                        /*processTimeout:*/ Duration.ofSeconds(5), "mock:direct:scheduled_dlq",
+                        /*maxConcurrentRetries:*/ 2),
         };
     }
 
@@ -228,6 +253,86 @@ public class RetryingBatchFailedMessageRouteTest extends CamelTestSupport {
                 .inOrder();
     }
 
+    @Test(timeout = 2000L)
+    public void shouldScheduleRetriesPerMessageAndDeadLetterOnlyExhaustedMessages()
+            throws Exception {
+        TestRetryMessage alwaysFailsMsg = TestRetryMessage.neverRecovering();
+        FailedMessage alwaysFails = new FailedMessage(
+                "fail original", alwaysFailsMsg, new Exception("Simulated original failure"));
+
+        TestRetryMessage recoversOn3rdTryMsg = TestRetryMessage.recoveringAfter(3);
+        FailedMessage recoversOn3rdTry = new FailedMessage(
+                "original", recoversOn3rdTryMsg, new Exception("Simulated original failure"));
+
+        toScheduledDlq.expectedMessageCount(1);
+
+        toScheduledRetry5Retries.sendBody(Arrays.asList(alwaysFails, recoversOn3rdTry));
+
+        toScheduledDlq.assertIsSatisfied();
+
+        Collection<FailedMessage> deadLetters =
+                toScheduledDlq.getExchanges().get(0).getIn().getMandatoryBody(Collection.class);
+
+        Truth.assertThat(deadLetters).hasSize(1);
+
+        FailedMessage dead = deadLetters.iterator().next();
+
+        assertEquals("fail original", dead.originalMessage());
+        assertEquals(exceptionMessageForRetryAttempt(5), dead.exception().getMessage());
+        Truth.assertThat(alwaysFailsMsg.processCount).named("times failure retried").isEqualTo(5);
+        Truth.assertThat(recoversOn3rdTryMsg.processCount).named("times failure retried")
+                .isEqualTo(3);
+    }
+
+    @Test(timeout = 2000L)
+    public void shouldNotHoldBackScheduledRetriesOfOtherMessagesWhileOneIsSlow() throws Exception {
+        SlowMessage slowMsg = new SlowMessage(Duration.ofSeconds(1));
+        FailedMessage slow = new FailedMessage(
+                "slow original", slowMsg, new Exception("Simulated original failure"));
+
+        TestRetryMessage recoversOn3rdTryMsg = TestRetryMessage.recoveringAfter(3);
+        FailedMessage recoversOn3rdTry = new FailedMessage(
+                "original", recoversOn3rdTryMsg, new Exception("Simulated original failure"));
+
+        toScheduledRetry5Retries.sendBody(Arrays.asList(slow, recoversOn3rdTry));
+
+        Awaitility.await().atMost(500, TimeUnit.MILLISECONDS)
+                .until(() -> recoversOn3rdTryMsg.processCount == 3);
+
+        Truth.assertThat(slowMsg.done).named("slow message done").isFalse();
+    }
+
+    @Test(timeout = 2000L)
+    public void shouldDeadLetterFailuresClassifiedAsNotRetryableWithoutRetrying()
+            throws Exception {
+        TestRetryMessage neverRetriedMsg = TestRetryMessage.neverRecovering();
+        FailedMessage notRetryable = new FailedMessage("bad original", neverRetriedMsg,
+                new IllegalArgumentException("Simulated validation failure"));
+
+        TestRetryMessage recoversOn2ndTryMsg = TestRetryMessage.recoveringAfter(2);
+        FailedMessage retryable = new FailedMessage(
+                "original", recoversOn2ndTryMsg, new Exception("Simulated original failure"));
+
+        toScheduledDlq.expectedMessageCount(1);
+
+        toClassifiedRetry5Retries.sendBody(Arrays.asList(notRetryable, retryable));
+
+        toScheduledDlq.assertIsSatisfied();
+
+        Collection<FailedMessage> deadLetters =
+                toScheduledDlq.getExchanges().get(0).getIn().getMandatoryBody(Collection.class);
+
+        Truth.assertThat(deadLetters).containsExactly(notRetryable);
+        Truth.assertThat(neverRetriedMsg.processCount).named("times failure retried").isEqualTo(0);
+
+        Awaitility.await().atMost(1, TimeUnit.SECONDS)
+                .until(() -> classifiedRoute.getRecoveredCount(Retryability.RETRY) == 1);
+
+        Truth.assertThat(classifiedRoute.getClassifiedCount(Retryability.DEAD_LETTER))
+                .isEqualTo(1);
+        Truth.assertThat(classifiedRoute.getClassifiedCount(Retryability.RETRY)).isEqualTo(2);
+    }
+
     static String exceptionMessageForRetryAttempt(int processCount) {
         return "Simulated retry failure " + processCount;
     }
@@ -235,7 +340,7 @@ public class RetryingBatchFailedMessageRouteTest extends CamelTestSupport {
     static class TestRetryMessage implements Message {
         final int recoverAfter;
 
-        int processCount = 0;
+        volatile int processCount = 0;
 
         private TestRetryMessage(int recoverAfter) {
             this.recoverAfter = recoverAfter;
@@ -262,6 +367,28 @@ public class RetryingBatchFailedMessageRouteTest extends CamelTestSupport {
         }
     }
 
+    static class SlowMessage implements Message {
+        final Duration duration;
+
+        volatile boolean done = false;
+
+        SlowMessage(Duration duration) {
+            this.duration = duration;
+        }
+
+        @Override
+        public Future<Void> process() {
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    Thread.sleep(duration.toMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done = true;
+            });
+        }
+    }
+
     static class AlwaysFailsForSameReason implements Message {
 
         @Override
@@ -21,18 +21,25 @@ package org.esbtools.eventhandler.testing;
 import org.esbtools.eventhandler.DocumentEvent;
 import org.esbtools.eventhandler.DocumentEventRepository;
 import org.esbtools.eventhandler.FailedDocumentEvent;
+import org.esbtools.eventhandler.RetrievedDocumentEvents;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class SimpleInMemoryDocumentEventRepository implements DocumentEventRepository {
     private final List<DocumentEvent> documentEvents = Collections.synchronizedList(new ArrayList<>());
     private final List<DocumentEvent> published = Collections.synchronizedList(new ArrayList<>());
     private final List<FailedDocumentEvent> failed = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger publishedUpdates = new AtomicInteger();
     private boolean failOnAddingDocumentEvents;
     private boolean considerNoTransactionsActive;
+    private Optional<Duration> transactionTimeout = Optional.empty();
+    private int maxOptimizedEvents = Integer.MAX_VALUE;
 
     public List<DocumentEvent> getDocumentEvents() {
         return documentEvents;
@@ -46,6 +53,11 @@ public class SimpleInMemoryDocumentEventRepository implements DocumentEventRepos
         return failed;
     }
 
+    /** Number of calls to mark events published which included at least one published event. */
+    public int getPublishedUpdateCount() {
+        return publishedUpdates.get();
+    }
+
     public void failOnAddingDocumentEvents() {
         failOnAddingDocumentEvents = true;
     }
@@ -58,6 +70,15 @@ public class SimpleInMemoryDocumentEventRepository implements DocumentEventRepos
         considerNoTransactionsActive = true;
     }
 
+    public void setTransactionTimeout(Duration transactionTimeout) {
+        this.transactionTimeout = Optional.of(transactionTimeout);
+    }
+
+    /** Simulates optimization by returning only up to this many events of each retrieval. */
+    public void optimizeRetrievedEventsDownTo(int maxOptimizedEvents) {
+        this.maxOptimizedEvents = maxOptimizedEvents;
+    }
+
     @Override
     public void addNewDocumentEvents(Collection<? extends DocumentEvent> documentEvents) throws Exception {
         if (documentEvents.isEmpty()) return;
@@ -71,10 +92,19 @@ public class SimpleInMemoryDocumentEventRepository implements DocumentEventRepos
 
     @Override
     public List<? extends DocumentEvent> retrievePriorityDocumentEventsUpTo(int maxEvents) throws Exception {
+        return retrievePriorityDocumentEventsAndCountUpTo(maxEvents).documentEvents();
+    }
+
+    @Override
+    public RetrievedDocumentEvents<DocumentEvent> retrievePriorityDocumentEventsAndCountUpTo(
+            int maxEvents) throws Exception {
         maxEvents = maxEvents > documentEvents.size() ? documentEvents.size() : maxEvents;
         List<DocumentEvent> retrieved = new ArrayList<>(documentEvents.subList(0, maxEvents));
         documentEvents.removeAll(retrieved);
-        return retrieved;
+        List<DocumentEvent> optimized = retrieved.size() > maxOptimizedEvents
+                ? new ArrayList<>(retrieved.subList(0, maxOptimizedEvents))
+                : retrieved;
+        return new RetrievedDocumentEvents<>(optimized, retrieved.size());
     }
 
     @Override
@@ -84,10 +114,18 @@ public class SimpleInMemoryDocumentEventRepository implements DocumentEventRepos
         }
     }
 
+    @Override
+    public Optional<Duration> getTransactionTimeout() {
+        return transactionTimeout;
+    }
+
     @Override
     public void markDocumentEventsPublishedOrFailed(
             Collection<? extends DocumentEvent> events,
             Collection<FailedDocumentEvent> failures) throws Exception {
+        if (!events.isEmpty()) {
+            publishedUpdates.incrementAndGet();
+        }
         published.addAll(events);
         failed.addAll(failures);
     }
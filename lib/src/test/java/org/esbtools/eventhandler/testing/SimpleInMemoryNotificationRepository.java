@@ -22,16 +22,19 @@ import org.esbtools.eventhandler.FailedNotification;
 import org.esbtools.eventhandler.Notification;
 import org.esbtools.eventhandler.NotificationRepository;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 
 public class SimpleInMemoryNotificationRepository implements NotificationRepository {
     private final List<Notification> notifications = Collections.synchronizedList(new ArrayList<>());
     private final List<Notification> processed = Collections.synchronizedList(new ArrayList<>());
     private final List<FailedNotification> failed = Collections.synchronizedList(new ArrayList<>());
     private boolean considerNoTransactionsActive = false;
+    private Optional<Duration> transactionTimeout = Optional.empty();
 
     public void addNotifications(List<? extends Notification> notifications) {
         this.notifications.addAll(notifications);
@@ -49,6 +52,10 @@ public class SimpleInMemoryNotificationRepository implements NotificationReposit
         considerNoTransactionsActive = true;
     }
 
+    public void setTransactionTimeout(Duration transactionTimeout) {
+        this.transactionTimeout = Optional.of(transactionTimeout);
+    }
+
     @Override
     public List<? extends Notification> retrieveOldestNotificationsUpTo(int maxNotifications) throws Exception {
         maxNotifications = maxNotifications > notifications.size() ? notifications.size() : maxNotifications;
@@ -64,6 +71,11 @@ public class SimpleInMemoryNotificationRepository implements NotificationReposit
         }
     }
 
+    @Override
+    public Optional<Duration> getTransactionTimeout() {
+        return transactionTimeout;
+    }
+
     @Override
     public void markNotificationsProcessedOrFailed(Collection<? extends Notification> notification,
             Collection<FailedNotification> failures) throws Exception {
@@ -0,0 +1,47 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler.lightblue;
+
+/**
+ * An optional capability of a {@link LightblueDocumentEvent} which allows events sharing an
+ * {@link #identity() identity} to be optimized among each other without comparing every pair of
+ * events.
+ *
+ * <p>When every event of an identity is keyed, each new event is only compared with previously
+ * optimized events sharing its key, which are found by hash lookup. As soon as any event of an
+ * identity is not keyed, that identity falls back to comparing every pair of events.
+ */
+public interface KeyedDocumentEvent extends LightblueDocumentEvent {
+    /**
+     * A key such that if this event {@link #isSupersededBy(org.esbtools.eventhandler.DocumentEvent)
+     * is superseded by}, supersedes, or {@link #couldMergeWith(org.esbtools.eventhandler.DocumentEvent)
+     * could merge with} another event, then both events have {@link Object#equals(Object) equal}
+     * keys.
+     *
+     * <p>The result of {@link #merge(org.esbtools.eventhandler.DocumentEvent) merging} two events
+     * should have the same key as the events merged. If it does not, the merged event is still
+     * processed correctly, but is not optimized further among events of the other key.
+     *
+     * <p>Events with different keys are never compared. A constant key is always correct, but
+     * gains nothing over not being keyed at all.
+     *
+     * @return A key with well-behaved {@code equals} and {@code hashCode}.
+     */
+    Object optimizationKey();
+}
@@ -21,22 +21,24 @@ package org.esbtools.eventhandler.lightblue;
 import org.esbtools.eventhandler.DocumentEvent;
 import org.esbtools.eventhandler.DocumentEventRepository;
 import org.esbtools.eventhandler.FailedDocumentEvent;
+import org.esbtools.eventhandler.RetrievedDocumentEvents;
 import org.esbtools.eventhandler.lightblue.client.BulkLightblueRequester;
 import org.esbtools.eventhandler.lightblue.client.FindRequests;
 import org.esbtools.eventhandler.lightblue.client.InsertRequests;
 import org.esbtools.eventhandler.lightblue.client.LightblueErrors;
 import org.esbtools.eventhandler.lightblue.client.LightblueRequester;
 import org.esbtools.eventhandler.lightblue.client.UpdateRequests;
-import org.esbtools.eventhandler.lightblue.locking.LockNotAvailableException;
 import org.esbtools.eventhandler.lightblue.locking.LockStrategy;
 import org.esbtools.eventhandler.lightblue.locking.Lockable;
 import org.esbtools.eventhandler.lightblue.locking.LockedResource;
 import org.esbtools.eventhandler.lightblue.locking.LockedResources;
 import org.esbtools.eventhandler.lightblue.locking.LostLockException;
+import org.esbtools.eventhandler.lightblue.partitioning.IdentityPartitioner;
 
 import com.redhat.lightblue.client.LightblueClient;
 import com.redhat.lightblue.client.LightblueException;
 import com.redhat.lightblue.client.request.DataBulkRequest;
+import com.redhat.lightblue.client.request.data.DataUpdateRequest;
 import com.redhat.lightblue.client.response.LightblueBulkDataResponse;
 import com.redhat.lightblue.client.response.LightblueBulkResponseException;
 import com.redhat.lightblue.client.response.LightblueDataResponse;
@@ -52,9 +54,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -72,6 +76,7 @@ public class LightblueDocumentEventRepository implements DocumentEventRepository
     private final LockStrategy lockStrategy;
     private final Map<String, ? extends DocumentEventFactory> documentEventFactoriesByType;
     private final Clock clock;
+    private final IdentityPartitioner identityPartitioner;
 
     private final Set<String> supportedTypes;
     /** Cached to avoid extra garbage. */
@@ -82,11 +87,27 @@ public class LightblueDocumentEventRepository implements DocumentEventRepository
     public LightblueDocumentEventRepository(LightblueClient lightblue,
             LockStrategy lockStrategy, LightblueDocumentEventRepositoryConfig config,
             Map<String, ? extends DocumentEventFactory> documentEventFactoriesByType, Clock clock) {
+        this(lightblue, lockStrategy, config, documentEventFactoriesByType, clock,
+                IdentityPartitioner.ownsEverything());
+    }
+
+    /**
+     * @param identityPartitioner Document events whose identities are owned by this node are
+     *                            locked and processed before any others. Others are only processed
+     *                            with capacity left over, so that nodes sharing the same events
+     *                            tend not to contend for the same identities.
+     */
+    public LightblueDocumentEventRepository(LightblueClient lightblue,
+            LockStrategy lockStrategy, LightblueDocumentEventRepositoryConfig config,
+            Map<String, ? extends DocumentEventFactory> documentEventFactoriesByType, Clock clock,
+            IdentityPartitioner identityPartitioner) {
         this.lightblue = lightblue;
         this.lockStrategy = lockStrategy;
         this.config = config;
         this.documentEventFactoriesByType = documentEventFactoriesByType;
         this.clock = clock;
+        this.identityPartitioner = Objects.requireNonNull(identityPartitioner,
+                "identityPartitioner");
 
         supportedTypes = documentEventFactoriesByType.keySet();
         supportedTypesArray = supportedTypes.toArray(new String[supportedTypes.size()]);
@@ -125,6 +146,19 @@ public class LightblueDocumentEventRepository implements DocumentEventRepository
     @Override
     public List<LightblueDocumentEvent> retrievePriorityDocumentEventsUpTo(int maxEvents)
             throws Exception {
+        return retrievePriorityDocumentEventsAndCountUpTo(maxEvents).documentEvents();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The count is of the document event entities found (or, if
+     * {@link LightblueDocumentEventRepositoryConfig#shouldClaimDocumentEventsAtomically() claiming
+     * atomically}, of the ids found to claim), before they are parsed, locked, and optimized.
+     */
+    @Override
+    public RetrievedDocumentEvents<LightblueDocumentEvent>
+            retrievePriorityDocumentEventsAndCountUpTo(int maxEvents) throws Exception {
         String[] typesToProcess = getSupportedAndEnabledEventTypes();
         Integer documentEventsBatchSize = config.getDocumentEventsBatchSize();
         Duration processingTimeout = config.getDocumentEventProcessingTimeout();
@@ -136,11 +170,16 @@ public class LightblueDocumentEventRepository implements DocumentEventRepository
                     "types are {}. Of those, enabled types are {}. " +
                     "Document event batch size is {}.",
                     supportedTypes, Arrays.toString(typesToProcess), documentEventsBatchSize);
-            return Collections.emptyList();
+            return new RetrievedDocumentEvents<>(Collections.emptyList(), 0);
         }
 
         if (maxEvents == 0) {
-            return Collections.emptyList();
+            return new RetrievedDocumentEvents<>(Collections.emptyList(), 0);
+        }
+
+        if (config.shouldClaimDocumentEventsAtomically()) {
+            return claimPriorityDocumentEventsUpTo(typesToProcess,
+                    Math.min(maxEvents, documentEventsBatchSize), processingTimeout);
         }
 
         DocumentEventEntity[] documentEventEntities = lightblue
@@ -150,7 +189,7 @@ public class LightblueDocumentEventRepository implements DocumentEventRepository
                 .parseProcessed(DocumentEventEntity[].class);
 
         if (documentEventEntities.length == 0) {
-            return Collections.emptyList();
+            return new RetrievedDocumentEvents<>(Collections.emptyList(), 0);
         }
 
         try (LockedResources<SharedIdentityEvents> eventLocks =
@@ -160,9 +199,77 @@ public class LightblueDocumentEventRepository implements DocumentEventRepository
                              new BulkLightblueRequester(lightblue),
                              documentEventFactoriesByType,
                              lockStrategy,
+                             identityPartitioner,
                              clock)) {
 
-            return persistNewEventsAndStatusUpdatesToExisting(eventLocks);
+            return new RetrievedDocumentEvents<>(
+                    persistNewEventsAndStatusUpdatesToExisting(eventLocks, false),
+                    documentEventEntities.length);
+        }
+    }
+
+    /**
+     * Claims events in one conditional update instead of one per event: finds the ids of up to
+     * {@code maxEvents} events available for processing, and then claims those which are still
+     * available in one conditional update, which returns the events it claimed. Claimed events
+     * are then grouped by identity, and those whose identities we can lock are optimized among
+     * each other, persisting only what changed as a result.
+     *
+     * @see LightblueDocumentEventRepositoryConfig#shouldClaimDocumentEventsAtomically()
+     */
+    private RetrievedDocumentEvents<LightblueDocumentEvent> claimPriorityDocumentEventsUpTo(
+            String[] typesToProcess, int maxEvents, Duration processingTimeout) throws Exception {
+        Instant expiredProcessingDate = clock.instant().minus(processingTimeout);
+
+        DocumentEventEntity[] available = lightblue
+                .data(FindRequests.priorityDocumentEventIdsForTypesUpTo(
+                        typesToProcess, maxEvents, expiredProcessingDate))
+                .parseProcessed(DocumentEventEntity[].class);
+
+        if (available.length == 0) {
+            return new RetrievedDocumentEvents<>(Collections.emptyList(), 0);
+        }
+
+        String[] ids = Arrays.stream(available)
+                .map(DocumentEventEntity::get_id)
+                .toArray(String[]::new);
+
+        DocumentEventEntity[] claimed = lightblue
+                .data(UpdateRequests.documentEventsClaimIfAvailable(
+                        ids, expiredProcessingDate, clock.instant()))
+                .parseProcessed(DocumentEventEntity[].class);
+
+        if (claimed.length == 0) {
+            return new RetrievedDocumentEvents<>(Collections.emptyList(), available.length);
+        }
+
+        if (claimed.length < ids.length) {
+            logger.debug("Claimed {} of {} document events. This is not fatal. Assuming another " +
+                    "thread is processing the rest.", claimed.length, ids.length);
+        }
+
+        // Updates do not return documents in any particular order.
+        Arrays.sort(claimed, Comparator
+                .comparing(DocumentEventEntity::getPriority,
+                        Comparator.nullsLast(Comparator.reverseOrder()))
+                .thenComparing(entity -> entity.getCreationDate().toInstant()));
+
+        // Claims are per event, so another thread may have claimed other events of the same
+        // identities. Locking identities keeps them from being processed concurrently. Claimed
+        // events whose identities are locked elsewhere are left to expire and be claimed again.
+        try (LockedResources<SharedIdentityEvents> eventLocks =
+                     SharedIdentityEvents.parseAndOptimizeLockableDocumentEventEntities(
+                             claimed.length,
+                             claimed,
+                             new BulkLightblueRequester(lightblue),
+                             documentEventFactoriesByType,
+                             lockStrategy,
+                             IdentityPartitioner.ownsEverything(),
+                             clock)) {
+
+            return new RetrievedDocumentEvents<>(
+                    persistNewEventsAndStatusUpdatesToExisting(eventLocks, true),
+                    available.length);
         }
     }
 
@@ -194,14 +301,27 @@ public class LightblueDocumentEventRepository implements DocumentEventRepository
         }
     }
 
+    /**
+     * The processing timeout minus the expire threshold, after which
+     * {@link #ensureTransactionActive(DocumentEvent)} fails.
+     */
+    @Override
+    public Optional<Duration> getTransactionTimeout() {
+        return Optional.of(config.getDocumentEventProcessingTimeout()
+                .minus(config.getDocumentEventExpireThreshold()));
+    }
+
     @Override
     public void markDocumentEventsPublishedOrFailed(
             Collection<? extends DocumentEvent> documentEvents,
             Collection<FailedDocumentEvent> failures) throws LightblueException {
+        // Use one timestamp for all so events of the same status can be updated in one request.
+        ZonedDateTime processedDate = ZonedDateTime.now(clock);
+
         List<DocumentEventEntity> processed = documentEvents.stream()
                 .map(LightblueDocumentEventRepository::asEntity)
                 .peek((e) -> {
-                    e.setProcessedDate(ZonedDateTime.now(clock));
+                    e.setProcessedDate(processedDate);
                     e.setStatus(DocumentEventEntity.Status.published);
                 })
                 .collect(Collectors.toList());
@@ -210,14 +330,16 @@ public class LightblueDocumentEventRepository implements DocumentEventRepository
                 .map(FailedDocumentEvent::documentEvent)
                 .map(LightblueDocumentEventRepository::asEntity)
                 .peek((e) -> {
-                    e.setProcessedDate(ZonedDateTime.now(clock));
+                    e.setProcessedDate(processedDate);
                     e.setStatus(DocumentEventEntity.Status.failed);
                 })
                 .collect(Collectors.toList());
 
         DataBulkRequest markDocumentEvents = new DataBulkRequest();
-        markDocumentEvents.addAll(UpdateRequests.documentEventsStatusAndProcessedDate(processed));
-        markDocumentEvents.addAll(UpdateRequests.documentEventsStatusAndProcessedDate(failed));
+        markDocumentEvents.addAll(
+                UpdateRequests.documentEventsStatusAndProcessedDateInGroups(processed));
+        markDocumentEvents.addAll(
+                UpdateRequests.documentEventsStatusAndProcessedDateInGroups(failed));
 
         if (markDocumentEvents.getRequests().isEmpty()) {
             return;
@@ -250,20 +372,31 @@ public class LightblueDocumentEventRepository implements DocumentEventRepository
      * survivor id updates.
      *
      * <p>Checks for lost locks before persisting, dropping and logging those lost.
+     *
+     * <p>If {@link LightblueDocumentEventRepositoryConfig#shouldGroupDocumentEventClaims()},
+     * existing events are updated together where possible. See {@link ClaimGroup}.
+     *
+     * @param eventsAlreadyClaimed Whether existing events were already persisted as processing
+     *                             before being optimized, in which case those which are still
+     *                             processing, and did not become survivors of other events, need
+     *                             no update.
      */
     private List<LightblueDocumentEvent> persistNewEventsAndStatusUpdatesToExisting(
-            LockedResources<SharedIdentityEvents> identityLocks) throws LightblueException {
+            LockedResources<SharedIdentityEvents> identityLocks, boolean eventsAlreadyClaimed)
+            throws LightblueException {
         if (identityLocks.getLocks().isEmpty()) {
             return Collections.emptyList();
         }
 
+        boolean groupClaims = config.shouldGroupDocumentEventClaims();
+        ZonedDateTime claimDate = ZonedDateTime.now(clock);
+
         DataBulkRequest insertAndUpdateEvents = new DataBulkRequest();
         List<LightblueDocumentEvent> savedEvents = new ArrayList<>();
+        // In the same order as their requests, which come before any requests for claim groups.
+        List<LightblueDocumentEvent> individuallySavedEvents = new ArrayList<>();
+        Map<List<Object>, ClaimGroup> claimGroups = new LinkedHashMap<>();
 
-        // TODO: We make single request per event here (wrapped in bulk request). Maybe could optimize.
-        // Right now each event may have different processing date which we are looking for.
-        // Could probably change that so processing dates were more grouped.
-        // See: https://github.com/esbtools/event-handler/issues/11
         for (LockedResource<SharedIdentityEvents> identityLock : identityLocks.getLocks()) {
             try {
                 identityLock.ensureAcquiredOrThrow("Won't update status or process event.");
@@ -284,17 +417,53 @@ public class LightblueDocumentEventRepository implements DocumentEventRepository
                 if (entity.get_id() == null) {
                     if (entity.getStatus().equals(DocumentEventEntity.Status.processing)) {
                         insertAndUpdateEvents.add(InsertRequests.documentEventsReturningOnlyIds(entity));
+                        individuallySavedEvents.add(event);
                         savedEvents.add(event);
                     }
+                } else if (eventsAlreadyClaimed &&
+                        entity.getStatus().equals(DocumentEventEntity.Status.processing) &&
+                        (entity.getSurvivorOfIds() == null || entity.getSurvivorOfIds().isEmpty())) {
+                    // Persisted as is when claimed, so keep the processing date that was claimed.
+                    entity.setProcessingDate(update.originalProcessingDate);
+                    savedEvents.add(event);
+                } else if (groupClaims && ClaimGroup.canInclude(entity)) {
+                    ClaimGroup.stampClaimDate(entity, claimDate);
+                    claimGroups.computeIfAbsent(ClaimGroup.keyOf(update),
+                            k -> new ClaimGroup(update.originalProcessingDate))
+                            .events.add(event);
+                    savedEvents.add(event);
                 } else {
                     insertAndUpdateEvents.add(
                             UpdateRequests.documentEventStatusDatesAndSurvivorOfIfCurrent(
                                     entity, update.originalProcessingDate));
+                    individuallySavedEvents.add(event);
                     savedEvents.add(event);
                 }
             }
         }
 
+        List<ClaimGroup> groupsToClaim = new ArrayList<>(claimGroups.size());
+
+        for (ClaimGroup group : claimGroups.values()) {
+            if (group.events.size() == 1) {
+                LightblueDocumentEvent event = group.events.get(0);
+                insertAndUpdateEvents.add(
+                        UpdateRequests.documentEventStatusDatesAndSurvivorOfIfCurrent(
+                                event.wrappedDocumentEventEntity(), group.originalProcessingDate));
+                individuallySavedEvents.add(event);
+            } else {
+                groupsToClaim.add(group);
+            }
+        }
+
+        for (ClaimGroup group : groupsToClaim) {
+            insertAndUpdateEvents.add(group.toUpdateRequest());
+        }
+
+        if (insertAndUpdateEvents.getRequests().isEmpty()) {
+            return savedEvents;
+        }
+
         LightblueBulkDataResponse bulkResponse;
 
         try {
@@ -305,17 +474,17 @@ public class LightblueDocumentEventRepository implements DocumentEventRepository
             bulkResponse = e.getBulkResponse();
         }
 
-        Iterator<LightblueDocumentEvent> eventsIterator = savedEvents.iterator();
+        Set<LightblueDocumentEvent> notSaved = Collections.newSetFromMap(new IdentityHashMap<>());
         Iterator<LightblueDataResponse> responsesIterator = bulkResponse.getResponses().iterator();
 
-        while (eventsIterator.hasNext()) {
+        for (LightblueDocumentEvent event : individuallySavedEvents) {
             if (!responsesIterator.hasNext()) {
                 throw new IllegalStateException("Mismatched number of requests and responses! " +
-                        "Events looked like: <{}>. Responses looked like");
+                        "Events looked like: <" + savedEvents + ">. Responses looked like: <" +
+                        bulkResponse.getResponses() + ">");
             }
 
             LightblueDataResponse response = responsesIterator.next();
-            LightblueDocumentEvent event = eventsIterator.next();
             DocumentEventEntity entity = event.wrappedDocumentEventEntity();
 
             if (LightblueErrors.arePresentInResponse(response)) {
@@ -325,21 +494,14 @@ public class LightblueDocumentEventRepository implements DocumentEventRepository
                     logger.warn("Event update failed. Will not process. Event was: <{}>. " +
                             "Errors: <{}>", event, errorStrings);
                 }
-                eventsIterator.remove();
+                notSaved.add(event);
                 continue;
             }
 
             if (response.parseModifiedCount() == 0) {
                 logger.warn("Event updated by another thread. Will not process. " +
                         "Document event id: {}", event.wrappedDocumentEventEntity().get_id());
-                eventsIterator.remove();
-                continue;
-            }
-
-            // We don't care about returning events which are done processing. We only want events
-            // which are supposed to be turned into publishable documents.
-            if (!entity.getStatus().equals(DocumentEventEntity.Status.processing)) {
-                eventsIterator.remove();
+                notSaved.add(event);
                 continue;
             }
 
@@ -350,9 +512,83 @@ public class LightblueDocumentEventRepository implements DocumentEventRepository
             }
         }
 
+        for (ClaimGroup group : groupsToClaim) {
+            if (!responsesIterator.hasNext()) {
+                throw new IllegalStateException("Mismatched number of requests and responses! " +
+                        "Events looked like: <" + savedEvents + ">. Responses looked like: <" +
+                        bulkResponse.getResponses() + ">");
+            }
+
+            notSaved.addAll(eventsNotClaimed(group, responsesIterator.next(), claimDate));
+        }
+
+        // We don't care about returning events which are done processing. We only want events
+        // which are supposed to be turned into publishable documents.
+        savedEvents.removeIf(event -> notSaved.contains(event) ||
+                !event.wrappedDocumentEventEntity().getStatus()
+                        .equals(DocumentEventEntity.Status.processing));
+
         return savedEvents;
     }
 
+    /**
+     * Determines which events of a claim group were not updated, given the response of its
+     * grouped update. Only if the modified count does not match the size of the group do we look
+     * up which events were updated, by their processing date.
+     */
+    private List<LightblueDocumentEvent> eventsNotClaimed(ClaimGroup group,
+            LightblueDataResponse response, ZonedDateTime claimDate) {
+        if (LightblueErrors.arePresentInResponse(response)) {
+            if (logger.isWarnEnabled()) {
+                List<String> errorStrings = LightblueErrors.toStringsFromErrorResponse(response);
+
+                logger.warn("Grouped event update failed. Will not process. Events were: <{}>. " +
+                        "Errors: <{}>", group.events, errorStrings);
+            }
+            return group.events;
+        }
+
+        int modifiedCount = response.parseModifiedCount();
+
+        if (modifiedCount == group.events.size()) {
+            return Collections.emptyList();
+        }
+
+        if (modifiedCount == 0) {
+            logger.warn("Events updated by another thread. Will not process. " +
+                    "Document event ids: {}", Arrays.toString(group.ids()));
+            return group.events;
+        }
+
+        // Some were updated by another thread since we retrieved them. Find out which are ours.
+        Map<String, LightblueDocumentEvent> eventsById = new HashMap<>();
+        for (LightblueDocumentEvent event : group.events) {
+            eventsById.put(event.wrappedDocumentEventEntity().get_id(), event);
+        }
+
+        try {
+            DocumentEventEntity[] claimed = lightblue
+                    .data(FindRequests.documentEventIdsWithProcessingDate(
+                            group.ids(), claimDate.toInstant()))
+                    .parseProcessed(DocumentEventEntity[].class);
+
+            for (DocumentEventEntity entity : claimed) {
+                eventsById.remove(entity.get_id());
+            }
+        } catch (LightblueException e) {
+            // Can't tell which we updated, so process none. Any we did update will be retrieved
+            // again once they time out.
+            logger.warn("Failed to check which events of partially updated group were updated. " +
+                    "Will not process any. Document event ids: " + Arrays.toString(group.ids()), e);
+            return group.events;
+        }
+
+        logger.warn("Events updated by another thread. Will not process. " +
+                "Document event ids: {}", eventsById.keySet());
+
+        return new ArrayList<>(eventsById.values());
+    }
+
     private static DocumentEventEntity asEntity(DocumentEvent event) {
         if (event instanceof LightblueDocumentEvent) {
             return ((LightblueDocumentEvent) event).wrappedDocumentEventEntity();
@@ -370,9 +606,14 @@ public class LightblueDocumentEventRepository implements DocumentEventRepository
         final Identity identity;
         final Map<LightblueDocumentEvent, DocumentEventUpdate> updates = new IdentityHashMap<>();
 
-        private final Optional<LockedResource<SharedIdentityEvents>> lock;
         // TODO: Is this guaranteed to only ever be one event?
         private final List<LightblueDocumentEvent> optimized = new ArrayList<>();
+        /**
+         * While every event added is a {@link KeyedDocumentEvent}, optimized events are kept here,
+         * bucketed by {@link KeyedDocumentEvent#optimizationKey()}, instead of in
+         * {@link #optimized}. Null once any event is not keyed.
+         */
+        private @Nullable Map<Object, List<LightblueDocumentEvent>> optimizedByKey = new HashMap<>();
         private final Clock clock;
 
         /**
@@ -380,10 +621,11 @@ public class LightblueDocumentEventRepository implements DocumentEventRepository
          * implementations provided by {@code documentEventFactoriesByType}, grouped by their
          * {@link Identity}.
          *
-         * <p>As each entity is parsed, we attempt to lock its identity if we have not tried
-         * already. If we are successful, we check if this event can be optimized among others with
-         * the same identity (it almost certainly should be able to), and track the updates that
-         * need to be persisted as a result of these optimizations.
+         * <p>Once all entities are parsed, we attempt to lock their identities, in the order each
+         * identity was first seen, acquiring as many locks at once as we still need. For each
+         * identity we lock, we check if its events can be optimized among each other (they almost
+         * certainly should be able to), and track the updates that need to be persisted as a
+         * result of these optimizations. Events of identities we could not lock are ignored.
          *
          * @param maxIdentities The maximum number of identities to lock, which <em>should</em>
          *                      also mean the maximum number of events, given all events with the
@@ -400,9 +642,8 @@ public class LightblueDocumentEventRepository implements DocumentEventRepository
         static LockedResources<SharedIdentityEvents> parseAndOptimizeLockableDocumentEventEntities(
                 int maxIdentities, DocumentEventEntity[] entities, LightblueRequester requester,
                 Map<String, ? extends DocumentEventFactory> documentEventFactoriesByType,
-                LockStrategy lockStrategy, Clock clock) {
-            Map<Identity, SharedIdentityEvents> docEventsByIdentity = new HashMap<>();
-            List<LockedResource<SharedIdentityEvents>> locksAcquired = new ArrayList<>();
+                LockStrategy lockStrategy, IdentityPartitioner identityPartitioner, Clock clock) {
+            Map<Identity, List<LightblueDocumentEvent>> docEventsByIdentity = new LinkedHashMap<>();
 
             for (DocumentEventEntity eventEntity : entities) {
                 String typeOfEvent = eventEntity.getCanonicalType();
@@ -420,49 +661,80 @@ public class LightblueDocumentEventRepository implements DocumentEventRepository
                     newEvent = new UnparseableDocumentEvent(e, eventEntity);
                 }
 
-                Identity identity = newEvent.identity();
-                SharedIdentityEvents eventBatch = docEventsByIdentity.get(identity);
+                docEventsByIdentity
+                        .computeIfAbsent(newEvent.identity(), (identity) -> new ArrayList<>())
+                        .add(newEvent);
+            }
 
-                if (eventBatch == null) {
-                    if (locksAcquired.size() == maxIdentities) {
-                        continue;
-                    }
+            // Identities owned by this node come first, keeping their priority order. Those owned
+            // by other nodes are only tried with whatever capacity is left over.
+            List<Identity> identitiesInLockOrder = new ArrayList<>(docEventsByIdentity.size());
+            List<Identity> unownedIdentities = new ArrayList<>();
 
-                    eventBatch = new SharedIdentityEvents(lockStrategy, identity, clock);
-                    docEventsByIdentity.put(identity, eventBatch);
-                    if (eventBatch.lock.isPresent()) {
-                        locksAcquired.add(eventBatch.lock.get());
-                        logger.debug("Acquired lock for resource {}", eventBatch.getResourceId());
-                    }
+            for (Identity identity : docEventsByIdentity.keySet()) {
+                if (identityPartitioner.isOwned(identity.getResourceId())) {
+                    identitiesInLockOrder.add(identity);
+                } else {
+                    unownedIdentities.add(identity);
                 }
+            }
 
-                eventBatch.addEvent(newEvent);
+            if (logger.isDebugEnabled() && !unownedIdentities.isEmpty()) {
+                logger.debug("{} of {} identities are owned by other nodes. Will only try to " +
+                        "lock those with capacity left over after owned identities.",
+                        unownedIdentities.size(), docEventsByIdentity.size());
             }
 
-            return LockedResources.fromLocks(locksAcquired);
+            identitiesInLockOrder.addAll(unownedIdentities);
+
+            List<LockedResources<SharedIdentityEvents>> lockRounds = new ArrayList<>(1);
+            int locksAcquired = 0;
+            Iterator<Identity> identities = identitiesInLockOrder.iterator();
+
+            // Each round tries to lock only as many identities as we still need, so that we make
+            // as few acquisition attempts as possible without exceeding maxIdentities.
+            while (locksAcquired < maxIdentities && identities.hasNext()) {
+                List<SharedIdentityEvents> round = new ArrayList<>();
+
+                while (round.size() < maxIdentities - locksAcquired && identities.hasNext()) {
+                    round.add(new SharedIdentityEvents(identities.next(), clock));
+                }
+
+                LockedResources<SharedIdentityEvents> roundLockedResources =
+                        lockStrategy.tryAcquireAll(round);
+                Collection<LockedResource<SharedIdentityEvents>> roundLocks =
+                        roundLockedResources.getLocks();
+                lockRounds.add(roundLockedResources);
+                locksAcquired += roundLocks.size();
+
+                if (logger.isDebugEnabled() && roundLocks.size() < round.size()) {
+                    logger.debug("Locks not available for {} of {} identities. This is not " +
+                            "fatal. Assuming another thread is processing document events " +
+                            "sharing those identities.",
+                            round.size() - roundLocks.size(), round.size());
+                }
+
+                for (LockedResource<SharedIdentityEvents> lock : roundLocks) {
+                    SharedIdentityEvents eventBatch = lock.getResource();
+                    logger.debug("Acquired lock for resource {}", eventBatch.getResourceId());
+
+                    for (LightblueDocumentEvent event : docEventsByIdentity.get(eventBatch.identity)) {
+                        eventBatch.addEvent(event);
+                    }
+                }
+            }
+
+            return LockedResources.combine(lockRounds);
         }
 
         /**
-         * Attempts to acquire a lock on the provided {@code identity}. If the lock cannot be
-         * acquired, the object is still created, but it will throw out any added events since we
-         * cannot process them without a lock.
+         * Creates an empty batch of events sharing the provided {@code identity}. Events should
+         * only be {@link #addEvent(LightblueDocumentEvent) added} once the batch is locked, since
+         * we cannot process them without a lock.
          */
-        SharedIdentityEvents(LockStrategy lockStrategy, Identity identity, Clock clock) {
+        SharedIdentityEvents(Identity identity, Clock clock) {
             this.identity = identity;
             this.clock = clock;
-
-            Optional<LockedResource<SharedIdentityEvents>> lock;
-            try {
-                lock = Optional.of(lockStrategy.tryAcquire(this));
-            } catch (LockNotAvailableException e) {
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Lock not available. This is not fatal. Assuming another" +
-                            " thread is processing document events sharing identity: " + identity, e);
-                }
-                lock = Optional.empty();
-            }
-
-            this.lock = lock;
         }
 
         @Override
@@ -476,6 +748,7 @@ public class LightblueDocumentEventRepository implements DocumentEventRepository
                     "identity=" + identity +
                     ", updates=" + updates +
                     ", optimized=" + optimized +
+                    ", optimizedByKey=" + optimizedByKey +
                     '}';
         }
 
@@ -489,10 +762,6 @@ public class LightblueDocumentEventRepository implements DocumentEventRepository
                         "that didn't share the same identity.");
             }
 
-            if (!lock.isPresent()) {
-                return;
-            }
-
             // We have a new event, let's see if it is superseded by or can be merged with any
             // previous events we parsed or created as a result of a previous merge.
 
@@ -501,7 +770,9 @@ public class LightblueDocumentEventRepository implements DocumentEventRepository
             @Nullable LightblueDocumentEvent newOrMergerEvent = event;
             DocumentEventEntity newOrMergerEventEntity = event.wrappedDocumentEventEntity();
 
-            Iterator<LightblueDocumentEvent> optimizedIterator = optimized.iterator();
+            // Only events which could possibly be optimized with this one need to be checked.
+            Iterator<LightblueDocumentEvent> optimizedIterator =
+                    optimizationCandidatesFor(event).iterator();
 
             while (optimizedIterator.hasNext()) {
                 LightblueDocumentEvent previouslyOptimizedEvent = optimizedIterator.next();
@@ -600,10 +871,35 @@ public class LightblueDocumentEventRepository implements DocumentEventRepository
 
             if (newOrMergerEvent != null) {
                 newOrMergerEventEntity.setStatus(DocumentEventEntity.Status.processing);
-                optimized.add(newOrMergerEvent);
+                optimizationCandidatesFor(newOrMergerEvent).add(newOrMergerEvent);
                 updates.put(newOrMergerEvent, DocumentEventUpdate.timestamp(newOrMergerEvent, clock));
             }
         }
+
+        /**
+         * @return The mutable collection of optimized events which could be optimized with the
+         * provided {@code event}, and to which the event belongs if it survives optimization.
+         */
+        private List<LightblueDocumentEvent> optimizationCandidatesFor(LightblueDocumentEvent event) {
+            if (optimizedByKey == null) {
+                return optimized;
+            }
+
+            if (event instanceof KeyedDocumentEvent) {
+                return optimizedByKey.computeIfAbsent(
+                        ((KeyedDocumentEvent) event).optimizationKey(),
+                        (key) -> new ArrayList<>(1));
+            }
+
+            // Not every event is keyed, so fall back to comparing every pair of events.
+            for (List<LightblueDocumentEvent> bucket : optimizedByKey.values()) {
+                optimized.addAll(bucket);
+            }
+
+            optimizedByKey = null;
+
+            return optimized;
+        }
     }
 
     /**
@@ -616,6 +912,66 @@ public class LightblueDocumentEventRepository implements DocumentEventRepository
                 : "<survivorOfIds=" + eventEntity.getSurvivorOfIds() + ">";
     }
 
+    /**
+     * Existing events which can be claimed in one conditional update, because they share the same
+     * original processing date, and are updated to the same status and dates.
+     *
+     * <p>To make that possible, events in a group are all stamped with the same processing date
+     * (and processed date, if they are done processing) when they are persisted, instead of the
+     * slightly different times they were optimized. Events which are survivors of other events
+     * are never grouped, since each has its own survivor ids to persist.
+     */
+    static class ClaimGroup {
+        final @Nullable ZonedDateTime originalProcessingDate;
+        final List<LightblueDocumentEvent> events = new ArrayList<>();
+
+        ClaimGroup(@Nullable ZonedDateTime originalProcessingDate) {
+            this.originalProcessingDate = originalProcessingDate;
+        }
+
+        static boolean canInclude(DocumentEventEntity entity) {
+            return entity.getSurvivorOfIds() == null || entity.getSurvivorOfIds().isEmpty();
+        }
+
+        static void stampClaimDate(DocumentEventEntity entity, ZonedDateTime claimDate) {
+            entity.setProcessingDate(claimDate);
+
+            if (DocumentEventEntity.Status.superseded.equals(entity.getStatus()) ||
+                    DocumentEventEntity.Status.merged.equals(entity.getStatus())) {
+                entity.setProcessedDate(claimDate);
+            }
+        }
+
+        /** Must be called after the update's entity is stamped with the claim date. */
+        static List<Object> keyOf(DocumentEventUpdate update) {
+            DocumentEventEntity entity = update.event.wrappedDocumentEventEntity();
+
+            return Arrays.asList(
+                    update.originalProcessingDate == null
+                            ? null
+                            : update.originalProcessingDate.toInstant(),
+                    entity.getStatus(),
+                    entity.getProcessedDate() == null
+                            ? null
+                            : entity.getProcessedDate().toInstant());
+        }
+
+        String[] ids() {
+            return events.stream()
+                    .map(event -> event.wrappedDocumentEventEntity().get_id())
+                    .toArray(String[]::new);
+        }
+
+        DataUpdateRequest toUpdateRequest() {
+            List<DocumentEventEntity> entities = events.stream()
+                    .map(LightblueDocumentEvent::wrappedDocumentEventEntity)
+                    .collect(Collectors.toList());
+
+            return UpdateRequests.documentEventsStatusAndDatesIfCurrent(
+                    entities, originalProcessingDate);
+        }
+    }
+
     /**
      * Captures a new or changed event with its to-be-persisted state, and the original processing
      * timestamp of the currently persisted state (or null if we're processing the event for the
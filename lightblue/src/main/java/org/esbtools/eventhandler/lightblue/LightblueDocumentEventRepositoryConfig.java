@@ -80,4 +80,38 @@ public interface LightblueDocumentEventRepositoryConfig {
      * one call.
      */
     Optional<Integer> getOptionalMaxDocumentEventsPerInsert();
+
+    /**
+     * When retrieving document events, each existing event is claimed with a conditional update
+     * which only succeeds if the event's processing date is unchanged since it was read. If this is
+     * true, events which share the same original processing date and target status are claimed
+     * together in one conditional update, instead of one update per event. The number of modified
+     * events is checked, and only if it does not match is each event of the group checked
+     * individually to determine which were claimed by another thread.
+     *
+     * <p>Defaults to false.
+     */
+    default boolean shouldGroupDocumentEventClaims() {
+        return false;
+    }
+
+    /**
+     * If true, up to as many document events as asked for are claimed in a single conditional
+     * update, which only claims events which are still unprocessed or expired, and returns
+     * exactly those it claimed. Claims are per event, not per identity, so the identities of
+     * claimed events are still locked using the repository's lock strategy before they are
+     * optimized among each other as usual, persisting only the results of those optimizations.
+     * Claimed events whose identities cannot be locked are not processed until their claim
+     * expires.
+     *
+     * <p>This trades away optimizing among a larger batch of events, and ordering: events of the
+     * same identity may be claimed by different threads, and are not guaranteed to be processed
+     * in the order they were created. In exchange, claiming costs a find and an update regardless
+     * of how many events are claimed.
+     *
+     * <p>Defaults to false.
+     */
+    default boolean shouldClaimDocumentEventsAtomically() {
+        return false;
+    }
 }
@@ -27,12 +27,13 @@ import org.esbtools.eventhandler.lightblue.client.FindRequests;
 import org.esbtools.eventhandler.lightblue.client.LightblueErrors;
 import org.esbtools.eventhandler.lightblue.client.LightblueRequester;
 import org.esbtools.eventhandler.lightblue.client.UpdateRequests;
-import org.esbtools.eventhandler.lightblue.locking.LockNotAvailableException;
 import org.esbtools.eventhandler.lightblue.locking.LockStrategy;
 import org.esbtools.eventhandler.lightblue.locking.Lockable;
 import org.esbtools.eventhandler.lightblue.locking.LockedResource;
 import org.esbtools.eventhandler.lightblue.locking.LockedResources;
 import org.esbtools.eventhandler.lightblue.locking.LostLockException;
+import org.esbtools.eventhandler.lightblue.locking.NoOpLockStrategy;
+import org.esbtools.eventhandler.lightblue.partitioning.IdentityPartitioner;
 import org.esbtools.lightbluenotificationhook.NotificationEntity;
 
 import com.redhat.lightblue.client.LightblueClient;
@@ -51,10 +52,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -70,6 +74,7 @@ public class LightblueNotificationRepository implements NotificationRepository {
     private final LockStrategy lockStrategy;
     private final Map<String, NotificationFactory> notificationFactoryByEntityName;
     private final Clock clock;
+    private final IdentityPartitioner notificationPartitioner;
 
     private final Set<String> supportedEntityNames;
     /** Cached to avoid extra garbage. */
@@ -77,14 +82,37 @@ public class LightblueNotificationRepository implements NotificationRepository {
 
     private static final Logger logger = LoggerFactory.getLogger(LightblueNotificationRepository.class);
 
+    /**
+     * Used instead of {@link #lockStrategy} if notifications should not be locked.
+     *
+     * @see LightblueNotificationRepositoryConfig#shouldLockNotifications()
+     */
+    private static final LockStrategy noLocks = new NoOpLockStrategy();
+
     public LightblueNotificationRepository(LightblueClient lightblue, LockStrategy lockStrategy,
             LightblueNotificationRepositoryConfig config,
             Map<String, NotificationFactory> notificationFactoryByEntityName, Clock clock) {
+        this(lightblue, lockStrategy, config, notificationFactoryByEntityName, clock,
+                IdentityPartitioner.ownsEverything());
+    }
+
+    /**
+     * @param notificationPartitioner Partitions notifications by their id. Of the notifications
+     *                                retrieved, only those owned by this node are processed, unless
+     *                                none are, in which case this node is otherwise idle and tries
+     *                                to process any of them.
+     */
+    public LightblueNotificationRepository(LightblueClient lightblue, LockStrategy lockStrategy,
+            LightblueNotificationRepositoryConfig config,
+            Map<String, NotificationFactory> notificationFactoryByEntityName, Clock clock,
+            IdentityPartitioner notificationPartitioner) {
         this.lightblue = lightblue;
         this.lockStrategy = lockStrategy;
         this.config = config;
         this.notificationFactoryByEntityName = notificationFactoryByEntityName;
         this.clock = clock;
+        this.notificationPartitioner = Objects.requireNonNull(notificationPartitioner,
+                "notificationPartitioner");
 
         supportedEntityNames = notificationFactoryByEntityName.keySet();
         supportedEntityNamesArray = supportedEntityNames.toArray(new String[supportedEntityNames.size()]);
@@ -108,6 +136,11 @@ public class LightblueNotificationRepository implements NotificationRepository {
             return Collections.emptyList();
         }
 
+        if (config.shouldClaimNotificationsAtomically()) {
+            return claimOldestNotificationsUpTo(
+                    entitiesToProcess, maxNotifications, processingTimeout);
+        }
+
         NotificationEntity[] notificationEntities = lightblue
                 .data(FindRequests.oldestNotificationsForEntitiesUpTo(
                         entitiesToProcess, maxNotifications,
@@ -118,7 +151,9 @@ public class LightblueNotificationRepository implements NotificationRepository {
                 ProcessingNotification.parseLockableNotificationEntities(
                         notificationEntities,
                         new BulkLightblueRequester(lightblue),
-                        notificationFactoryByEntityName, lockStrategy, clock)) {
+                        notificationFactoryByEntityName,
+                        config.shouldLockNotifications() ? lockStrategy : noLocks,
+                        notificationPartitioner, clock)) {
             Collection<LockedResource<ProcessingNotification>> lockList = locks.getLocks();
 
             if (lockList.isEmpty()) {
@@ -190,6 +225,56 @@ public class LightblueNotificationRepository implements NotificationRepository {
 
     }
 
+    /**
+     * Claims notifications without locks: finds the ids of up to {@code maxNotifications}
+     * notifications available for processing, and then claims those which are still available in
+     * one conditional update, which returns the notifications it claimed.
+     *
+     * @see LightblueNotificationRepositoryConfig#shouldClaimNotificationsAtomically()
+     */
+    private List<LightblueNotification> claimOldestNotificationsUpTo(String[] entitiesToProcess,
+            int maxNotifications, Duration processingTimeout) throws LightblueException {
+        Instant expiredProcessingDate = clock.instant().minus(processingTimeout);
+
+        NotificationEntity[] available = lightblue
+                .data(FindRequests.oldestNotificationIdsForEntitiesUpTo(
+                        entitiesToProcess, maxNotifications, expiredProcessingDate))
+                .parseProcessed(NotificationEntity[].class);
+
+        if (available.length == 0) {
+            return Collections.emptyList();
+        }
+
+        String[] ids = Arrays.stream(available)
+                .map(NotificationEntity::get_id)
+                .filter(notificationPartitioner::isOwned)
+                .toArray(String[]::new);
+
+        if (ids.length == 0) {
+            // Nothing of our own to do, so help with others' notifications.
+            ids = Arrays.stream(available).map(NotificationEntity::get_id).toArray(String[]::new);
+        }
+
+        NotificationEntity[] claimed = lightblue
+                .data(UpdateRequests.notificationsClaimIfAvailable(
+                        ids, expiredProcessingDate, clock.instant()))
+                .parseProcessed(NotificationEntity[].class);
+
+        if (claimed.length < ids.length) {
+            logger.debug("Claimed {} of {} notifications. This is not fatal. Assuming another " +
+                    "thread is processing the rest.", claimed.length, ids.length);
+        }
+
+        LightblueRequester requester = new BulkLightblueRequester(lightblue);
+
+        return Arrays.stream(claimed)
+                .sorted(Comparator.comparing(NotificationEntity::getClientRequestDate,
+                        Comparator.nullsLast(Comparator.naturalOrder())))
+                .map(entity -> ProcessingNotification.parseNotificationEntity(
+                        entity, requester, notificationFactoryByEntityName))
+                .collect(Collectors.toList());
+    }
+
     @Override
     public void ensureTransactionActive(Notification notification) throws Exception {
         if (!(notification instanceof LightblueNotification)) {
@@ -211,14 +296,28 @@ public class LightblueNotificationRepository implements NotificationRepository {
         }
     }
 
+    /**
+     * The processing timeout minus the expire threshold, after which
+     * {@link #ensureTransactionActive(Notification)} fails.
+     */
+    @Override
+    public Optional<Duration> getTransactionTimeout() {
+        return Optional.of(config.getNotificationProcessingTimeout()
+                .minus(config.getNotificationExpireThreshold()));
+    }
+
     @Override
     public void markNotificationsProcessedOrFailed(Collection<? extends Notification> notification,
             Collection<FailedNotification> failures) throws LightblueException {
+        // Use one timestamp for all so notifications of the same status can be updated in one
+        // request.
+        Date processedDate = Date.from(clock.instant());
+
         List<NotificationEntity> processedNotificationEntities = notification.stream()
                 .map(LightblueNotificationRepository::asEntity)
                 .peek(entity -> {
                     entity.setStatus(NotificationEntity.Status.processed);
-                    entity.setProcessedDate(Date.from(clock.instant()));
+                    entity.setProcessedDate(processedDate);
                 })
                 .collect(Collectors.toList());
 
@@ -227,15 +326,17 @@ public class LightblueNotificationRepository implements NotificationRepository {
                 .map(LightblueNotificationRepository::asEntity)
                 .peek(entity -> {
                     entity.setStatus(NotificationEntity.Status.failed);
-                    entity.setProcessedDate(Date.from(clock.instant()));
+                    entity.setProcessedDate(processedDate);
                 })
                 .collect(Collectors.toList());
 
         DataBulkRequest markNotifications = new DataBulkRequest();
         markNotifications.addAll(
-                UpdateRequests.notificationsStatusAndProcessedDate(processedNotificationEntities));
+                UpdateRequests.notificationsStatusAndProcessedDateInGroups(
+                        processedNotificationEntities));
         markNotifications.addAll(
-                UpdateRequests.notificationsStatusAndProcessedDate(failedNotificationEntities));
+                UpdateRequests.notificationsStatusAndProcessedDateInGroups(
+                        failedNotificationEntities));
 
         if (markNotifications.getRequests().isEmpty()) {
             return;
@@ -274,61 +375,88 @@ public class LightblueNotificationRepository implements NotificationRepository {
         final String notificationId;
         final Date originalProcessingDate;
         final LightblueNotification notification;
+        /** The entity as retrieved, which is the entity the notification was parsed from. */
+        final NotificationEntity entity;
 
         static LockedResources<ProcessingNotification> parseLockableNotificationEntities(
                 NotificationEntity[] entities,
                 LightblueRequester requester,
                 Map<String, ? extends NotificationFactory> notificationFactoriesByEntityName,
-                LockStrategy lockStrategy, Clock clock) {
-            List<LockedResource<ProcessingNotification>> acquiredLocks =
-                    new ArrayList<>(entities.length);
+                LockStrategy lockStrategy, IdentityPartitioner notificationPartitioner,
+                Clock clock) {
+            List<ProcessingNotification> lockables = new ArrayList<>(entities.length);
 
             // Shuffling the entities means less lock contention among nodes which get similar
             // batches.
             List<NotificationEntity> shuffled = Arrays.asList(entities);
             Collections.shuffle(shuffled);
 
-            for (NotificationEntity entity : shuffled) {
-                LightblueNotification notification;
+            List<NotificationEntity> owned = shuffled.stream()
+                    .filter(entity -> notificationPartitioner.isOwned(entity.get_id()))
+                    .collect(Collectors.toList());
 
-                try {
-                    notification = notificationFactoriesByEntityName
-                            .get(entity.getEntityName())
-                            .getNotificationForEntity(entity, requester);
-                } catch (Exception e) {
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("Failed to parse notification entity: " + entity, e);
-                    }
+            if (owned.isEmpty()) {
+                // Nothing of our own to do, so help with others' notifications.
+                owned = shuffled;
+            } else if (logger.isDebugEnabled() && owned.size() < shuffled.size()) {
+                logger.debug("Skipping {} of {} notifications owned by other nodes.",
+                        shuffled.size() - owned.size(), shuffled.size());
+            }
 
-                    notification = new UnparseableNotification(e, entity);
-                }
+            for (NotificationEntity entity : owned) {
+                LightblueNotification notification = parseNotificationEntity(
+                        entity, requester, notificationFactoriesByEntityName);
 
                 Date originalProcessingDate = entity.getProcessingDate();
 
-                ProcessingNotification processing =
-                        new ProcessingNotification(entity.get_id(), notification,
-                                originalProcessingDate);
+                lockables.add(new ProcessingNotification(entity.get_id(), entity, notification,
+                        originalProcessingDate));
+            }
 
-                try {
-                    acquiredLocks.add(lockStrategy.tryAcquire(processing));
-                    entity.setProcessingDate(Date.from(clock.instant()));
-                    entity.setStatus(NotificationEntity.Status.processing);
-
-                    logger.debug("Acquired lock for resource {}", processing.getResourceId());
-                } catch (LockNotAvailableException e) {
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("Lock not available. This is not fatal. Assuming another" +
-                                " thread is processing notification: " + entity.get_id(), e);
-                    }
-                }
+            LockedResources<ProcessingNotification> acquiredLocks =
+                    lockStrategy.tryAcquireAll(lockables);
+
+            if (logger.isDebugEnabled() && acquiredLocks.getLocks().size() < lockables.size()) {
+                logger.debug("Locks not available for {} of {} notifications. This is not fatal. " +
+                        "Assuming another thread is processing those notifications.",
+                        lockables.size() - acquiredLocks.getLocks().size(), lockables.size());
+            }
+
+            for (LockedResource<ProcessingNotification> lock : acquiredLocks.getLocks()) {
+                NotificationEntity entity = lock.getResource().entity;
+                entity.setProcessingDate(Date.from(clock.instant()));
+                entity.setStatus(NotificationEntity.Status.processing);
+
+                logger.debug("Acquired lock for resource {}", lock.getResource().getResourceId());
             }
 
-            return LockedResources.fromLocks(acquiredLocks);
+            return acquiredLocks;
+        }
+
+        /**
+         * Parses the entity using the factory for its entity name, or wraps it in an
+         * {@link UnparseableNotification} if that fails.
+         */
+        static LightblueNotification parseNotificationEntity(NotificationEntity entity,
+                LightblueRequester requester,
+                Map<String, ? extends NotificationFactory> notificationFactoriesByEntityName) {
+            try {
+                return notificationFactoriesByEntityName
+                        .get(entity.getEntityName())
+                        .getNotificationForEntity(entity, requester);
+            } catch (Exception e) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Failed to parse notification entity: " + entity, e);
+                }
+
+                return new UnparseableNotification(e, entity);
+            }
         }
 
-        private ProcessingNotification(String notificationId, LightblueNotification notification,
-                Date originalProcessingDate) {
+        private ProcessingNotification(String notificationId, NotificationEntity entity,
+                LightblueNotification notification, Date originalProcessingDate) {
             this.notificationId = notificationId;
+            this.entity = entity;
             this.notification = notification;
             this.originalProcessingDate = originalProcessingDate;
         }
@@ -46,4 +46,29 @@ public interface LightblueNotificationRepositoryConfig {
      * timestamp before adding its document events. Other alternative schemes are possible.
      */
     Duration getNotificationExpireThreshold();
+
+    /**
+     * If true, notifications are claimed without locking them. Instead, up to as many
+     * notifications as asked for are claimed in a single conditional update, which only claims
+     * notifications which are still unprocessed or expired, and returns exactly those it claimed.
+     * Claiming then costs a find and an update regardless of how many notifications are claimed.
+     *
+     * <p>Defaults to false.
+     */
+    default boolean shouldClaimNotificationsAtomically() {
+        return false;
+    }
+
+    /**
+     * If false, notifications are not locked before they are claimed. Claiming a notification is
+     * already a conditional update which only succeeds if the notification's processing date is
+     * unchanged since it was retrieved, so concurrent claims of the same notification are still
+     * detected, by the update not modifying it. Locking only saves that update from being made in
+     * vain, at the cost of acquiring, pinging, and releasing a lock per notification.
+     *
+     * <p>Defaults to true.
+     */
+    default boolean shouldLockNotifications() {
+        return true;
+    }
 }
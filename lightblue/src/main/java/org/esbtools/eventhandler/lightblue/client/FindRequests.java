@@ -20,6 +20,7 @@ package org.esbtools.eventhandler.lightblue.client;
 
 import org.esbtools.eventhandler.lightblue.DocumentEventEntity;
 import org.esbtools.eventhandler.lightblue.config.EventHandlerConfigEntity;
+import org.esbtools.eventhandler.lightblue.partitioning.ClusterMemberEntity;
 import org.esbtools.lightbluenotificationhook.NotificationEntity;
 
 import com.redhat.lightblue.client.Literal;
@@ -89,6 +90,47 @@ public abstract class FindRequests {
         return findEntities;
     }
 
+    /**
+     * Constructs a find request which retrieves the ids of those document events among
+     * {@code ids} whose processing date is exactly {@code processingDate}.
+     */
+    public static DataFindRequest documentEventIdsWithProcessingDate(String[] ids,
+            Instant processingDate) {
+        DataFindRequest findEntities = new DataFindRequest(DocumentEventEntity.ENTITY_NAME,
+                DocumentEventEntity.VERSION);
+
+        findEntities.where(Query.and(
+                Query.withValues("_id", Query.NaryOp.in, Literal.values(ids)),
+                Query.withValue("processingDate", Query.BinOp.eq, Date.from(processingDate))));
+        findEntities.select(Projection.includeField("_id"));
+
+        return findEntities;
+    }
+
+    /**
+     * Like {@link #oldestNotificationsForEntitiesUpTo(String[], int, Instant)}, but only retrieves
+     * the notifications' ids. Useful for choosing which notifications to claim.
+     */
+    public static DataFindRequest oldestNotificationIdsForEntitiesUpTo(String[] entityNames,
+            int maxNotifications, Instant expiredProcessingDate) {
+        DataFindRequest findIds = oldestNotificationsForEntitiesUpTo(
+                entityNames, maxNotifications, expiredProcessingDate);
+        findIds.select(Projection.includeField("_id"));
+        return findIds;
+    }
+
+    /**
+     * Like {@link #priorityDocumentEventsForTypesUpTo(String[], int, Instant)}, but only retrieves
+     * the events' ids. Useful for choosing which events to claim.
+     */
+    public static DataFindRequest priorityDocumentEventIdsForTypesUpTo(String[] types,
+            int maxEvents, Instant expiredProcessingDate) {
+        DataFindRequest findIds = priorityDocumentEventsForTypesUpTo(
+                types, maxEvents, expiredProcessingDate);
+        findIds.select(Projection.includeField("_id"));
+        return findIds;
+    }
+
     public static DataFindRequest eventHandlerConfigForDomain(String configDomain) {
         DataFindRequest findConfig = new DataFindRequest(
                 EventHandlerConfigEntity.ENTITY_NAME,
@@ -99,4 +141,22 @@ public abstract class FindRequests {
 
         return findConfig;
     }
+
+    /**
+     * Constructs a find request which retrieves all members of the given {@code group} whose
+     * last heartbeat is at or after {@code heartbeatSince}.
+     */
+    public static DataFindRequest clusterMembersWithHeartbeatSince(String group,
+            Instant heartbeatSince) {
+        DataFindRequest findMembers = new DataFindRequest(
+                ClusterMemberEntity.ENTITY_NAME,
+                ClusterMemberEntity.ENTITY_VERSION);
+
+        findMembers.where(Query.and(
+                Query.withValue("group", Query.BinOp.eq, group),
+                Query.withValue("lastHeartbeatDate", Query.BinOp.gte, Date.from(heartbeatSince))));
+        findMembers.select(Projection.includeField("memberId"));
+
+        return findMembers;
+    }
 }
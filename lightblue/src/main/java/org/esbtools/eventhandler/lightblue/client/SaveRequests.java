@@ -0,0 +1,40 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler.lightblue.client;
+
+import org.esbtools.eventhandler.lightblue.partitioning.ClusterMemberEntity;
+
+import com.redhat.lightblue.client.Projection;
+import com.redhat.lightblue.client.request.data.DataSaveRequest;
+
+public abstract class SaveRequests {
+    /**
+     * Constructs a save request which creates the member if it does not exist yet, or otherwise
+     * replaces its last heartbeat.
+     */
+    public static DataSaveRequest clusterMemberHeartbeat(ClusterMemberEntity member) {
+        DataSaveRequest save = new DataSaveRequest(
+                ClusterMemberEntity.ENTITY_NAME,
+                ClusterMemberEntity.ENTITY_VERSION);
+        save.create(member);
+        save.setUpsert(true);
+        save.returns(Projection.includeField("memberId"));
+        return save;
+    }
+}
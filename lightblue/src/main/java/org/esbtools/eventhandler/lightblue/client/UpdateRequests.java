@@ -22,6 +22,7 @@ import org.esbtools.eventhandler.lightblue.DocumentEventEntity;
 import org.esbtools.lightbluenotificationhook.NotificationEntity;
 
 import com.redhat.lightblue.client.Literal;
+import com.redhat.lightblue.client.Projection;
 import com.redhat.lightblue.client.Query;
 import com.redhat.lightblue.client.Query.BinOp;
 import com.redhat.lightblue.client.Update;
@@ -30,15 +31,27 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public abstract class UpdateRequests {
     private static Logger logger = LoggerFactory.getLogger(UpdateRequests.class);
 
+    /**
+     * Updates the status and processed date of each notification, in one request per notification.
+     * Notifications without an id are skipped.
+     *
+     * @deprecated Use {@link #notificationsStatusAndProcessedDateInGroups(Collection)}, which
+     * updates notifications sharing the same status and processed date in one request.
+     */
+    @Deprecated
     public static Collection<DataUpdateRequest> notificationsStatusAndProcessedDate(
             Collection<NotificationEntity> updatedNotificationEntities) {
         List<DataUpdateRequest> requests = new ArrayList<>(updatedNotificationEntities.size());
@@ -74,6 +87,91 @@ public abstract class UpdateRequests {
         return requests;
     }
 
+    /**
+     * Updates the status and processed date of each notification. Notifications sharing the same
+     * status and processed date are updated together, in one request matching all of their ids.
+     * Notifications without an id are skipped.
+     */
+    public static Collection<DataUpdateRequest> notificationsStatusAndProcessedDateInGroups(
+            Collection<NotificationEntity> updatedNotificationEntities) {
+        Map<List<Object>, List<String>> statusAndProcessedDateToIds = new LinkedHashMap<>();
+
+        for (NotificationEntity entity : updatedNotificationEntities) {
+            if (entity.get_id() == null) {
+                logger.warn("Tried to update an entity's status and processed date, but entity " +
+                        "has no id. Entity was: " + entity);
+                continue;
+            }
+
+            statusAndProcessedDateToIds.computeIfAbsent(
+                    Arrays.asList(entity.getStatus(), entity.getProcessedDate()),
+                    k -> new ArrayList<>())
+                    .add(entity.get_id());
+        }
+
+        List<DataUpdateRequest> requests = new ArrayList<>(statusAndProcessedDateToIds.size());
+
+        for (Map.Entry<List<Object>, List<String>> group : statusAndProcessedDateToIds.entrySet()) {
+            NotificationEntity.Status status = (NotificationEntity.Status) group.getKey().get(0);
+            Date processedDate = (Date) group.getKey().get(1);
+            List<String> ids = group.getValue();
+
+            DataUpdateRequest request = new DataUpdateRequest(
+                    NotificationEntity.ENTITY_NAME,
+                    NotificationEntity.ENTITY_VERSION);
+
+            request.where(Query.withValues("_id", Query.NaryOp.in,
+                    Literal.values(ids.toArray(new String[ids.size()]))));
+
+            List<Update> updates = new ArrayList<>(2);
+            updates.add(Update.set("status", status.toString()));
+
+            if (processedDate != null) {
+                updates.add(Update.set("processedDate", processedDate));
+            }
+
+            // Work around client bug.
+            // https://github.com/lightblue-platform/lightblue-client/issues/225
+            request.updates(updates.toArray(new Update[updates.size()]));
+
+            requests.add(request);
+        }
+
+        return requests;
+    }
+
+    /**
+     * Constructs an update request which claims those notifications among {@code ids} which are
+     * still either {@link NotificationEntity.Status#unprocessed} or expired, by marking them
+     * {@link NotificationEntity.Status#processing} as of {@code claimDate}. The request returns
+     * only the notifications it claimed, in full.
+     *
+     * @see FindRequests#oldestNotificationsForEntitiesUpTo(String[], int, Instant)
+     */
+    public static DataUpdateRequest notificationsClaimIfAvailable(String[] ids,
+            Instant expiredProcessingDate, Instant claimDate) {
+        DataUpdateRequest request = new DataUpdateRequest(
+                NotificationEntity.ENTITY_NAME,
+                NotificationEntity.ENTITY_VERSION);
+
+        request.where(Query.and(
+                Query.withValues("_id", Query.NaryOp.in, Literal.values(ids)),
+                Query.or(
+                        Query.withValue("status", BinOp.eq,
+                                NotificationEntity.Status.unprocessed.toString()),
+                        Query.and(
+                                Query.withValue("status", BinOp.eq,
+                                        NotificationEntity.Status.processing.toString()),
+                                Query.withValue("processingDate", BinOp.lte,
+                                        Date.from(expiredProcessingDate))))));
+        request.updates(
+                Update.set("status", NotificationEntity.Status.processing.toString()),
+                Update.set("processingDate", Date.from(claimDate)));
+        request.returns(Projection.includeFieldRecursively("*"));
+
+        return request;
+    }
+
     /** "Status" here means status and corresponding date(s) to go along with it. */
     public static DataUpdateRequest notificationStatusIfCurrent(NotificationEntity entity,
             @Nullable Date originalProcessingDate) {
@@ -99,6 +197,14 @@ public abstract class UpdateRequests {
         return request;
     }
 
+    /**
+     * Updates the status and processed date of each document event, in one request per event.
+     * Events without an id are skipped.
+     *
+     * @deprecated Use {@link #documentEventsStatusAndProcessedDateInGroups(Collection)}, which
+     * updates events sharing the same status and processed date in one request.
+     */
+    @Deprecated
     public static Collection<DataUpdateRequest> documentEventsStatusAndProcessedDate(
             Collection<DocumentEventEntity> updatedEventEntities) {
         List<DataUpdateRequest> requests = new ArrayList<>(updatedEventEntities.size());
@@ -135,6 +241,94 @@ public abstract class UpdateRequests {
         return requests;
     }
 
+    /**
+     * Updates the status and processed date of each document event. Events sharing the same
+     * status and processed date are updated together, in one request matching all of their ids.
+     * Events without an id are skipped.
+     */
+    public static Collection<DataUpdateRequest> documentEventsStatusAndProcessedDateInGroups(
+            Collection<DocumentEventEntity> updatedEventEntities) {
+        Map<List<Object>, List<String>> statusAndProcessedDateToIds = new LinkedHashMap<>();
+
+        for (DocumentEventEntity entity : updatedEventEntities) {
+            if (entity.get_id() == null) {
+                logger.warn("Tried to update an entity's status and processed date, but entity " +
+                        "has no id. Entity was: " + entity);
+                continue;
+            }
+
+            ZonedDateTime processedDate = entity.getProcessedDate();
+
+            statusAndProcessedDateToIds.computeIfAbsent(
+                    Arrays.asList(entity.getStatus(),
+                            processedDate == null ? null : processedDate.toInstant()),
+                    k -> new ArrayList<>())
+                    .add(entity.get_id());
+        }
+
+        List<DataUpdateRequest> requests = new ArrayList<>(statusAndProcessedDateToIds.size());
+
+        for (Map.Entry<List<Object>, List<String>> group : statusAndProcessedDateToIds.entrySet()) {
+            DocumentEventEntity.Status status = (DocumentEventEntity.Status) group.getKey().get(0);
+            Instant processedDate = (Instant) group.getKey().get(1);
+            List<String> ids = group.getValue();
+
+            DataUpdateRequest request = new DataUpdateRequest(
+                    DocumentEventEntity.ENTITY_NAME,
+                    DocumentEventEntity.VERSION);
+
+            request.where(Query.withValues("_id", Query.NaryOp.in,
+                    Literal.values(ids.toArray(new String[ids.size()]))));
+
+            List<Update> updates = new ArrayList<>(2);
+            updates.add(Update.set("status", status.toString()));
+
+            if (processedDate != null) {
+                updates.add(Update.set("processedDate", Date.from(processedDate)));
+            }
+
+            // Work around client bug.
+            // https://github.com/lightblue-platform/lightblue-client/issues/225
+            request.updates(updates.toArray(new Update[updates.size()]));
+
+            requests.add(request);
+        }
+
+        return requests;
+    }
+
+    /**
+     * Constructs an update request which claims those document events among {@code ids} which
+     * are still either {@link DocumentEventEntity.Status#unprocessed} or expired, by marking them
+     * {@link DocumentEventEntity.Status#processing} as of {@code claimDate}. The request returns
+     * only the events it claimed, in full.
+     *
+     * @see FindRequests#priorityDocumentEventsForTypesUpTo(String[], int, Instant)
+     */
+    public static DataUpdateRequest documentEventsClaimIfAvailable(String[] ids,
+            Instant expiredProcessingDate, Instant claimDate) {
+        DataUpdateRequest request = new DataUpdateRequest(
+                DocumentEventEntity.ENTITY_NAME,
+                DocumentEventEntity.VERSION);
+
+        request.where(Query.and(
+                Query.withValues("_id", Query.NaryOp.in, Literal.values(ids)),
+                Query.or(
+                        Query.withValue("status", BinOp.eq,
+                                DocumentEventEntity.Status.unprocessed.toString()),
+                        Query.and(
+                                Query.withValue("status", BinOp.eq,
+                                        DocumentEventEntity.Status.processing.toString()),
+                                Query.withValue("processingDate", BinOp.lte,
+                                        Date.from(expiredProcessingDate))))));
+        request.updates(
+                Update.set("status", DocumentEventEntity.Status.processing.toString()),
+                Update.set("processingDate", Date.from(claimDate)));
+        request.returns(Projection.includeFieldRecursively("*"));
+
+        return request;
+    }
+
     /** "Status" here means status and corresponding date(s) to go along with it. */
     public static DataUpdateRequest documentEventStatusDatesAndSurvivorOfIfCurrent(DocumentEventEntity entity,
             @Nullable ZonedDateTime originalProcessingDate) {
@@ -148,24 +342,7 @@ public abstract class UpdateRequests {
         ZonedDateTime processedDate = entity.getProcessedDate();
 
         idStatusAndDateMatch.add(Query.withValue("_id", BinOp.eq, entity.get_id()));
-
-        if (originalProcessingDate != null) {
-            idStatusAndDateMatch.add(Query.withValue(
-                    "processingDate", BinOp.eq,
-                    Date.from(originalProcessingDate.toInstant())));
-
-            // We don't care if original event was processing or unprocessed. Unprocessed happens
-            // when event is manually unprocessed. Matching timestamp still ensures we prevent
-            // double processing.
-            idStatusAndDateMatch.add(Query.withValues("status", Query.NaryOp.in, Literal.values(
-                    DocumentEventEntity.Status.processing.toString(),
-                    DocumentEventEntity.Status.unprocessed.toString())));
-        } else {
-            idStatusAndDateMatch.add(
-                    Query.withValue("processingDate", BinOp.eq, Literal.value(null)));
-            idStatusAndDateMatch.add(
-                    Query.withValue("status", BinOp.eq, DocumentEventEntity.Status.unprocessed.toString()));
-        }
+        idStatusAndDateMatch.addAll(documentEventIsCurrent(originalProcessingDate));
 
         if (processedDate != null) {
             updateStatusDateAndSurvivorOf.add(
@@ -189,4 +366,75 @@ public abstract class UpdateRequests {
 
         return request;
     }
+
+    /**
+     * Like {@link #documentEventStatusDatesAndSurvivorOfIfCurrent(DocumentEventEntity,
+     * ZonedDateTime)}, but updates many entities at once, matching all of their ids. Each entity
+     * is only updated if it is still current, so the response's modified count may be less than
+     * the number of entities.
+     *
+     * <p>All entities must share the same status, processing date, and processed date, and must
+     * not be survivors of any other events, as only the first entity's values are used for the
+     * update.
+     */
+    public static DataUpdateRequest documentEventsStatusAndDatesIfCurrent(
+            List<DocumentEventEntity> entities, @Nullable ZonedDateTime originalProcessingDate) {
+        if (entities.isEmpty()) {
+            throw new IllegalArgumentException("Must provide at least one entity to update.");
+        }
+
+        DataUpdateRequest request = new DataUpdateRequest(
+                DocumentEventEntity.ENTITY_NAME,
+                DocumentEventEntity.VERSION);
+
+        String[] ids = entities.stream().map(DocumentEventEntity::get_id).toArray(String[]::new);
+        DocumentEventEntity entity = entities.get(0);
+
+        List<Query> idsStatusAndDateMatch = new ArrayList<>();
+        List<Update> updateStatusAndDates = new ArrayList<>(3);
+
+        ZonedDateTime processedDate = entity.getProcessedDate();
+
+        idsStatusAndDateMatch.add(Query.withValues("_id", Query.NaryOp.in, Literal.values(ids)));
+        idsStatusAndDateMatch.addAll(documentEventIsCurrent(originalProcessingDate));
+
+        if (processedDate != null) {
+            updateStatusAndDates.add(
+                    Update.set("processedDate", Date.from(processedDate.toInstant())));
+        }
+
+        updateStatusAndDates.add(
+                Update.set("status", entity.getStatus().toString()));
+        updateStatusAndDates.add(
+                Update.set("processingDate", Date.from(entity.getProcessingDate().toInstant())));
+
+        request.where(Query.and(idsStatusAndDateMatch));
+        request.updates(updateStatusAndDates);
+
+        return request;
+    }
+
+    private static List<Query> documentEventIsCurrent(@Nullable ZonedDateTime originalProcessingDate) {
+        List<Query> statusAndDateMatch = new ArrayList<>(2);
+
+        if (originalProcessingDate != null) {
+            statusAndDateMatch.add(Query.withValue(
+                    "processingDate", BinOp.eq,
+                    Date.from(originalProcessingDate.toInstant())));
+
+            // We don't care if original event was processing or unprocessed. Unprocessed happens
+            // when event is manually unprocessed. Matching timestamp still ensures we prevent
+            // double processing.
+            statusAndDateMatch.add(Query.withValues("status", Query.NaryOp.in, Literal.values(
+                    DocumentEventEntity.Status.processing.toString(),
+                    DocumentEventEntity.Status.unprocessed.toString())));
+        } else {
+            statusAndDateMatch.add(
+                    Query.withValue("processingDate", BinOp.eq, Literal.value(null)));
+            statusAndDateMatch.add(
+                    Query.withValue("status", BinOp.eq, DocumentEventEntity.Status.unprocessed.toString()));
+        }
+
+        return statusAndDateMatch;
+    }
 }
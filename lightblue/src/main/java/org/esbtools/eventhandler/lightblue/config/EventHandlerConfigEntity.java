@@ -37,7 +37,8 @@ import java.util.Set;
 @EntityName(EventHandlerConfigEntity.ENTITY_NAME)
 @Version(value = "0.1.1-SNAPSHOT", preferImplementationVersion = false, changelog = "Initial domain-specific config")
 public class EventHandlerConfigEntity implements LightblueNotificationRepositoryConfig,
-        LightblueDocumentEventRepositoryConfig {
+        LightblueDocumentEventRepositoryConfig, NotificationProcessorRouteConfig,
+        DocumentEventProcessorRouteConfig {
     public static final String ENTITY_NAME = "eventHandlerConfig";
     public static final String ENTITY_VERSION = Version.FromAnnotation.onEntity(EventHandlerConfigEntity.class);
 
@@ -50,6 +51,20 @@ public class EventHandlerConfigEntity implements LightblueNotificationRepository
     private Integer documentEventProcessingTimeoutSeconds;
     private Integer documentEventExpireThresholdSeconds;
     private Integer maxDocumentEventsPerInsert;
+    private Boolean groupDocumentEventClaims;
+    private Boolean claimDocumentEventsAtomically;
+    private Boolean claimNotificationsAtomically;
+    private Boolean lockNotifications;
+    private Integer documentEventPollingMinIntervalMillis;
+    private Integer documentEventPollingMaxIntervalMillis;
+    private Integer notificationPollingMinIntervalMillis;
+    private Integer notificationPollingMaxIntervalMillis;
+    private Integer documentEventTargetCycleTimeSeconds;
+    private Integer minDocumentEventsPerCycle;
+    private Integer maxDocumentEventsPerCycle;
+    private Integer notificationTargetCycleTimeSeconds;
+    private Integer minNotificationsPerCycle;
+    private Integer maxNotificationsPerCycle;
 
     public String getDomain() {
         return domain;
@@ -162,6 +177,41 @@ public class EventHandlerConfigEntity implements LightblueNotificationRepository
         this.maxDocumentEventsPerInsert = maxDocumentEventsPerInsert;
     }
 
+    @Override
+    public boolean shouldGroupDocumentEventClaims() {
+        return Boolean.TRUE.equals(groupDocumentEventClaims);
+    }
+
+    public Boolean getGroupDocumentEventClaims() {
+        return groupDocumentEventClaims;
+    }
+
+    @Description("If true, document events which share the same original processing date and " +
+            "target status are claimed together in one conditional update, instead of one " +
+            "update per event. Only if the number of modified events does not match is each " +
+            "event of the group checked individually.")
+    public void setGroupDocumentEventClaims(@Nullable Boolean groupDocumentEventClaims) {
+        this.groupDocumentEventClaims = groupDocumentEventClaims;
+    }
+
+    @Override
+    public boolean shouldClaimDocumentEventsAtomically() {
+        return Boolean.TRUE.equals(claimDocumentEventsAtomically);
+    }
+
+    public Boolean getClaimDocumentEventsAtomically() {
+        return claimDocumentEventsAtomically;
+    }
+
+    @Description("If true, document events are claimed in a single conditional update which " +
+            "only claims events which are still unprocessed or expired. Identities of claimed " +
+            "events are still locked before they are processed. This trades away optimizing " +
+            "among a larger batch of events, and the guarantee that events of the same identity " +
+            "are processed in order, for far fewer requests.")
+    public void setClaimDocumentEventsAtomically(@Nullable Boolean claimDocumentEventsAtomically) {
+        this.claimDocumentEventsAtomically = claimDocumentEventsAtomically;
+    }
+
     @Override
     public Set<String> getEntityNamesToProcess() {
         return entityNamesToProcess;
@@ -215,4 +265,200 @@ public class EventHandlerConfigEntity implements LightblueNotificationRepository
     public void setNotificationExpireThresholdSeconds(Integer notificationExpireThresholdSeconds) {
         this.notificationExpireThresholdSeconds = notificationExpireThresholdSeconds;
     }
+
+    @Override
+    public boolean shouldClaimNotificationsAtomically() {
+        return Boolean.TRUE.equals(claimNotificationsAtomically);
+    }
+
+    public Boolean getClaimNotificationsAtomically() {
+        return claimNotificationsAtomically;
+    }
+
+    @Description("If true, notifications are claimed without locking them, in a single " +
+            "conditional update which only claims notifications which are still unprocessed or " +
+            "expired.")
+    public void setClaimNotificationsAtomically(@Nullable Boolean claimNotificationsAtomically) {
+        this.claimNotificationsAtomically = claimNotificationsAtomically;
+    }
+
+    @Override
+    public boolean shouldLockNotifications() {
+        return !Boolean.FALSE.equals(lockNotifications);
+    }
+
+    public Boolean getLockNotifications() {
+        return lockNotifications;
+    }
+
+    @Description("If false, notifications are not locked before they are claimed. Claims are " +
+            "conditional updates which already detect concurrent claims of the same " +
+            "notification, so locks only save some claims from being made in vain, at the cost " +
+            "of acquiring, pinging, and releasing a lock per notification. Defaults to true.")
+    public void setLockNotifications(@Nullable Boolean lockNotifications) {
+        this.lockNotifications = lockNotifications;
+    }
+
+    @Override
+    @Transient
+    public Duration getDocumentEventPollingMinInterval() {
+        return documentEventPollingMinIntervalMillis == null
+                ? null
+                : Duration.ofMillis(documentEventPollingMinIntervalMillis);
+    }
+
+    public Integer getDocumentEventPollingMinIntervalMillis() {
+        return documentEventPollingMinIntervalMillis;
+    }
+
+    @Description("How soon, in milliseconds, to poll for document events again after a poll " +
+            "retrieved a full batch, when polling with an adaptive interval. Defaults to 0.")
+    public void setDocumentEventPollingMinIntervalMillis(
+            Integer documentEventPollingMinIntervalMillis) {
+        this.documentEventPollingMinIntervalMillis = documentEventPollingMinIntervalMillis;
+    }
+
+    @Override
+    @Transient
+    public Duration getDocumentEventPollingMaxInterval() {
+        return documentEventPollingMaxIntervalMillis == null
+                ? null
+                : Duration.ofMillis(documentEventPollingMaxIntervalMillis);
+    }
+
+    public Integer getDocumentEventPollingMaxIntervalMillis() {
+        return documentEventPollingMaxIntervalMillis;
+    }
+
+    @Description("The most time, in milliseconds, to wait between polls for document events " +
+            "when polling with an adaptive interval. Each poll which retrieves nothing doubles " +
+            "the interval, up to this ceiling. Defaults to one minute.")
+    public void setDocumentEventPollingMaxIntervalMillis(
+            Integer documentEventPollingMaxIntervalMillis) {
+        this.documentEventPollingMaxIntervalMillis = documentEventPollingMaxIntervalMillis;
+    }
+
+    @Override
+    @Transient
+    public Duration getNotificationPollingMinInterval() {
+        return notificationPollingMinIntervalMillis == null
+                ? null
+                : Duration.ofMillis(notificationPollingMinIntervalMillis);
+    }
+
+    public Integer getNotificationPollingMinIntervalMillis() {
+        return notificationPollingMinIntervalMillis;
+    }
+
+    @Description("How soon, in milliseconds, to poll for notifications again after a poll " +
+            "retrieved a full batch, when polling with an adaptive interval. Defaults to 0.")
+    public void setNotificationPollingMinIntervalMillis(
+            Integer notificationPollingMinIntervalMillis) {
+        this.notificationPollingMinIntervalMillis = notificationPollingMinIntervalMillis;
+    }
+
+    @Override
+    @Transient
+    public Duration getNotificationPollingMaxInterval() {
+        return notificationPollingMaxIntervalMillis == null
+                ? null
+                : Duration.ofMillis(notificationPollingMaxIntervalMillis);
+    }
+
+    public Integer getNotificationPollingMaxIntervalMillis() {
+        return notificationPollingMaxIntervalMillis;
+    }
+
+    @Description("The most time, in milliseconds, to wait between polls for notifications " +
+            "when polling with an adaptive interval. Each poll which retrieves nothing doubles " +
+            "the interval, up to this ceiling. Defaults to one minute.")
+    public void setNotificationPollingMaxIntervalMillis(
+            Integer notificationPollingMaxIntervalMillis) {
+        this.notificationPollingMaxIntervalMillis = notificationPollingMaxIntervalMillis;
+    }
+
+    @Override
+    @Transient
+    public Duration getDocumentEventTargetCycleTime() {
+        return documentEventTargetCycleTimeSeconds == null
+                ? null
+                : Duration.ofSeconds(documentEventTargetCycleTimeSeconds);
+    }
+
+    public Integer getDocumentEventTargetCycleTimeSeconds() {
+        return documentEventTargetCycleTimeSeconds;
+    }
+
+    @Description("How long retrieving a batch of document events and processing it should " +
+            "take, when adjusting the number of document events retrieved per batch adaptively. " +
+            "Batches which take longer are halved. Full batches which take less time grow. " +
+            "Defaults to one minute.")
+    public void setDocumentEventTargetCycleTimeSeconds(
+            Integer documentEventTargetCycleTimeSeconds) {
+        this.documentEventTargetCycleTimeSeconds = documentEventTargetCycleTimeSeconds;
+    }
+
+    @Override
+    public Integer getMinDocumentEventsPerCycle() {
+        return minDocumentEventsPerCycle;
+    }
+
+    @Description("The fewest document events to retrieve per batch when adjusting the number of " +
+            "document events retrieved per batch adaptively. Defaults to 1.")
+    public void setMinDocumentEventsPerCycle(Integer minDocumentEventsPerCycle) {
+        this.minDocumentEventsPerCycle = minDocumentEventsPerCycle;
+    }
+
+    @Override
+    public Integer getMaxDocumentEventsPerCycle() {
+        return maxDocumentEventsPerCycle;
+    }
+
+    @Description("The most document events to retrieve per batch when adjusting the number of " +
+            "document events retrieved per batch adaptively. Defaults to 1000.")
+    public void setMaxDocumentEventsPerCycle(Integer maxDocumentEventsPerCycle) {
+        this.maxDocumentEventsPerCycle = maxDocumentEventsPerCycle;
+    }
+
+    @Override
+    @Transient
+    public Duration getNotificationTargetCycleTime() {
+        return notificationTargetCycleTimeSeconds == null
+                ? null
+                : Duration.ofSeconds(notificationTargetCycleTimeSeconds);
+    }
+
+    public Integer getNotificationTargetCycleTimeSeconds() {
+        return notificationTargetCycleTimeSeconds;
+    }
+
+    @Description("How long retrieving a batch of notifications and processing it should " +
+            "take, when adjusting the number of notifications retrieved per batch adaptively. " +
+            "Batches which take longer are halved. Full batches which take less time grow. " +
+            "Defaults to one minute.")
+    public void setNotificationTargetCycleTimeSeconds(Integer notificationTargetCycleTimeSeconds) {
+        this.notificationTargetCycleTimeSeconds = notificationTargetCycleTimeSeconds;
+    }
+
+    @Override
+    public Integer getMinNotificationsPerCycle() {
+        return minNotificationsPerCycle;
+    }
+
+    @Description("The fewest notifications to retrieve per batch when adjusting the number of " +
+            "notifications retrieved per batch adaptively. Defaults to 1.")
+    public void setMinNotificationsPerCycle(Integer minNotificationsPerCycle) {
+        this.minNotificationsPerCycle = minNotificationsPerCycle;
+    }
+
+    @Override
+    public Integer getMaxNotificationsPerCycle() {
+        return maxNotificationsPerCycle;
+    }
+
+    @Description("The most notifications to retrieve per batch when adjusting the number of " +
+            "notifications retrieved per batch adaptively. Defaults to 1000.")
+    public void setMaxNotificationsPerCycle(Integer maxNotificationsPerCycle) {
+        this.maxNotificationsPerCycle = maxNotificationsPerCycle;
+    }
 }
@@ -36,12 +36,20 @@ import java.util.Set;
 import java.util.stream.Collectors;
 
 @ThreadSafe
-public class MutableLightblueDocumentEventRepositoryConfig implements LightblueDocumentEventRepositoryConfig {
+public class MutableLightblueDocumentEventRepositoryConfig implements LightblueDocumentEventRepositoryConfig,
+        DocumentEventProcessorRouteConfig {
     private Set<String> canonicalTypesToProcess = Collections.emptySet();
     private int documentEventsBatchSize = 0;
     private Optional<Integer> maxDocumentEventsPerInsert = Optional.empty();
     private Duration processingTimeout = Duration.ofMinutes(10);
     private Duration expireThreshold = Duration.ofMinutes(2);
+    private boolean groupDocumentEventClaims = false;
+    private boolean claimDocumentEventsAtomically = false;
+    private Duration pollingMinInterval = Duration.ZERO;
+    private Duration pollingMaxInterval = Duration.ofMinutes(1);
+    private Duration targetCycleTime = Duration.ofMinutes(1);
+    private int minPerCycle = 1;
+    private int maxPerCycle = 1000;
 
     private static final Logger log = LoggerFactory.getLogger(MutableLightblueDocumentEventRepositoryConfig.class);
 
@@ -170,4 +178,125 @@ public class MutableLightblueDocumentEventRepositoryConfig implements LightblueD
         }
         return this;
     }
+
+    @Override
+    public boolean shouldGroupDocumentEventClaims() {
+        return groupDocumentEventClaims;
+    }
+
+    public MutableLightblueDocumentEventRepositoryConfig setGroupDocumentEventClaims(
+            boolean groupDocumentEventClaims) {
+        boolean old = this.groupDocumentEventClaims;
+        this.groupDocumentEventClaims = groupDocumentEventClaims;
+        if (old != groupDocumentEventClaims) {
+            log.info("Group document event claims updated. " +
+                    "Old value was {}. New value is {}.", old, groupDocumentEventClaims);
+        }
+        return this;
+    }
+
+    @Override
+    public boolean shouldClaimDocumentEventsAtomically() {
+        return claimDocumentEventsAtomically;
+    }
+
+    public MutableLightblueDocumentEventRepositoryConfig setClaimDocumentEventsAtomically(
+            boolean claimDocumentEventsAtomically) {
+        boolean old = this.claimDocumentEventsAtomically;
+        this.claimDocumentEventsAtomically = claimDocumentEventsAtomically;
+        if (old != claimDocumentEventsAtomically) {
+            log.info("Claim document events atomically updated. " +
+                    "Old value was {}. New value is {}.", old, claimDocumentEventsAtomically);
+        }
+        return this;
+    }
+
+    @Override
+    public Duration getDocumentEventPollingMinInterval() {
+        return pollingMinInterval;
+    }
+
+    public MutableLightblueDocumentEventRepositoryConfig setDocumentEventPollingMinInterval(
+            Duration pollingMinInterval) {
+        Duration old = this.pollingMinInterval;
+        this.pollingMinInterval = pollingMinInterval;
+        if (!old.equals(pollingMinInterval)) {
+            log.info("Document event polling min interval updated." +
+                    " Old value was {}. New value is {}.", old, pollingMinInterval);
+        }
+        return this;
+    }
+
+    @Override
+    public Duration getDocumentEventPollingMaxInterval() {
+        return pollingMaxInterval;
+    }
+
+    public MutableLightblueDocumentEventRepositoryConfig setDocumentEventPollingMaxInterval(
+            Duration pollingMaxInterval) {
+        Duration old = this.pollingMaxInterval;
+        this.pollingMaxInterval = pollingMaxInterval;
+        if (!old.equals(pollingMaxInterval)) {
+            log.info("Document event polling max interval updated." +
+                    " Old value was {}. New value is {}.", old, pollingMaxInterval);
+        }
+        return this;
+    }
+
+    @Override
+    public Duration getDocumentEventTargetCycleTime() {
+        return targetCycleTime;
+    }
+
+    public MutableLightblueDocumentEventRepositoryConfig setDocumentEventTargetCycleTime(
+            Duration targetCycleTime) {
+        Duration old = this.targetCycleTime;
+        this.targetCycleTime = targetCycleTime;
+        if (!old.equals(targetCycleTime)) {
+            log.info("Document event target cycle time updated." +
+                    " Old value was {}. New value is {}.", old, targetCycleTime);
+        }
+        return this;
+    }
+
+    /**
+     * How long a batch of document events may take to process before it risks being retrieved
+     * again: {@link #getDocumentEventProcessingTimeout()} minus
+     * {@link #getDocumentEventExpireThreshold()}.
+     */
+    public Duration getDocumentEventCycleTimeLimit() {
+        return getDocumentEventProcessingTimeout().minus(getDocumentEventExpireThreshold());
+    }
+
+    @Override
+    public Integer getMinDocumentEventsPerCycle() {
+        return minPerCycle;
+    }
+
+    public MutableLightblueDocumentEventRepositoryConfig setMinDocumentEventsPerCycle(
+            int minPerCycle) {
+        int old = this.minPerCycle;
+        this.minPerCycle = minPerCycle;
+        if (old != minPerCycle) {
+            log.info("Min document events per cycle updated." +
+                    " Old value was {}. New value is {}.", old, minPerCycle);
+        }
+        return this;
+    }
+
+    @Override
+    public Integer getMaxDocumentEventsPerCycle() {
+        return maxPerCycle;
+    }
+
+    public MutableLightblueDocumentEventRepositoryConfig setMaxDocumentEventsPerCycle(
+            int maxPerCycle) {
+        int old = this.maxPerCycle;
+        this.maxPerCycle = maxPerCycle;
+        if (old != maxPerCycle) {
+            log.info("Max document events per cycle updated." +
+                    " Old value was {}. New value is {}.", old, maxPerCycle);
+        }
+        return this;
+    }
 }
@@ -34,10 +34,18 @@ import java.util.Set;
 import java.util.stream.Collectors;
 
 @ThreadSafe
-public class MutableLightblueNotificationRepositoryConfig implements LightblueNotificationRepositoryConfig {
+public class MutableLightblueNotificationRepositoryConfig implements LightblueNotificationRepositoryConfig,
+        NotificationProcessorRouteConfig {
     private Set<String> entityNamesToProcess;
     private Duration processingTimeout;
     private Duration expireThreshold;
+    private boolean claimNotificationsAtomically = false;
+    private boolean lockNotifications = true;
+    private Duration pollingMinInterval = Duration.ZERO;
+    private Duration pollingMaxInterval = Duration.ofMinutes(1);
+    private Duration targetCycleTime = Duration.ofMinutes(1);
+    private int minPerCycle = 1;
+    private int maxPerCycle = 1000;
 
     private static final Logger log = LoggerFactory.getLogger(MutableLightblueNotificationRepositoryConfig.class);
 
@@ -116,4 +124,124 @@ public class MutableLightblueNotificationRepositoryConfig implements LightblueNo
         }
         return this;
     }
+
+    @Override
+    public boolean shouldClaimNotificationsAtomically() {
+        return claimNotificationsAtomically;
+    }
+
+    public MutableLightblueNotificationRepositoryConfig setClaimNotificationsAtomically(
+            boolean claimNotificationsAtomically) {
+        boolean old = this.claimNotificationsAtomically;
+        this.claimNotificationsAtomically = claimNotificationsAtomically;
+        if (old != claimNotificationsAtomically) {
+            log.info("Claim notifications atomically updated." +
+                    " Old value was {}. New value is {}.", old, claimNotificationsAtomically);
+        }
+        return this;
+    }
+
+    @Override
+    public boolean shouldLockNotifications() {
+        return lockNotifications;
+    }
+
+    public MutableLightblueNotificationRepositoryConfig setLockNotifications(
+            boolean lockNotifications) {
+        boolean old = this.lockNotifications;
+        this.lockNotifications = lockNotifications;
+        if (old != lockNotifications) {
+            log.info("Lock notifications updated." +
+                    " Old value was {}. New value is {}.", old, lockNotifications);
+        }
+        return this;
+    }
+
+    @Override
+    public Duration getNotificationPollingMinInterval() {
+        return pollingMinInterval;
+    }
+
+    public MutableLightblueNotificationRepositoryConfig setNotificationPollingMinInterval(
+            Duration pollingMinInterval) {
+        Duration old = this.pollingMinInterval;
+        this.pollingMinInterval = pollingMinInterval;
+        if (!old.equals(pollingMinInterval)) {
+            log.info("Notification polling min interval updated." +
+                    " Old value was {}. New value is {}.", old, pollingMinInterval);
+        }
+        return this;
+    }
+
+    @Override
+    public Duration getNotificationPollingMaxInterval() {
+        return pollingMaxInterval;
+    }
+
+    public MutableLightblueNotificationRepositoryConfig setNotificationPollingMaxInterval(
+            Duration pollingMaxInterval) {
+        Duration old = this.pollingMaxInterval;
+        this.pollingMaxInterval = pollingMaxInterval;
+        if (!old.equals(pollingMaxInterval)) {
+            log.info("Notification polling max interval updated." +
+                    " Old value was {}. New value is {}.", old, pollingMaxInterval);
+        }
+        return this;
+    }
+
+    @Override
+    public Duration getNotificationTargetCycleTime() {
+        return targetCycleTime;
+    }
+
+    public MutableLightblueNotificationRepositoryConfig setNotificationTargetCycleTime(
+            Duration targetCycleTime) {
+        Duration old = this.targetCycleTime;
+        this.targetCycleTime = targetCycleTime;
+        if (!old.equals(targetCycleTime)) {
+            log.info("Notification target cycle time updated." +
+                    " Old value was {}. New value is {}.", old, targetCycleTime);
+        }
+        return this;
+    }
+
+    /**
+     * How long a batch of notifications may take to process before it risks being retrieved again:
+     * {@link #getNotificationProcessingTimeout()} minus {@link #getNotificationExpireThreshold()}.
+     */
+    public Duration getNotificationCycleTimeLimit() {
+        return getNotificationProcessingTimeout().minus(getNotificationExpireThreshold());
+    }
+
+    @Override
+    public Integer getMinNotificationsPerCycle() {
+        return minPerCycle;
+    }
+
+    public MutableLightblueNotificationRepositoryConfig setMinNotificationsPerCycle(
+            int minPerCycle) {
+        int old = this.minPerCycle;
+        this.minPerCycle = minPerCycle;
+        if (old != minPerCycle) {
+            log.info("Min notifications per cycle updated." +
+                    " Old value was {}. New value is {}.", old, minPerCycle);
+        }
+        return this;
+    }
+
+    @Override
+    public Integer getMaxNotificationsPerCycle() {
+        return maxPerCycle;
+    }
+
+    public MutableLightblueNotificationRepositoryConfig setMaxNotificationsPerCycle(
+            int maxPerCycle) {
+        int old = this.maxPerCycle;
+        this.maxPerCycle = maxPerCycle;
+        if (old != maxPerCycle) {
+            log.info("Max notifications per cycle updated." +
+                    " Old value was {}. New value is {}.", old, maxPerCycle);
+        }
+        return this;
+    }
 }
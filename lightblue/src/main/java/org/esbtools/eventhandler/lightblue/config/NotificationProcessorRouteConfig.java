@@ -0,0 +1,73 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler.lightblue.config;
+
+import org.esbtools.eventhandler.lightblue.LightblueNotificationRepositoryConfig;
+
+import java.time.Duration;
+
+/**
+ * Configures how an {@code org.esbtools.eventhandler.PollingNotificationProcessorRoute} polls for
+ * notifications, when it polls adaptively. Unlike the
+ * {@link LightblueNotificationRepositoryConfig repository's configuration}, this is not used by
+ * the repository, but it is stored and updated along with it.
+ */
+public interface NotificationProcessorRouteConfig {
+    /**
+     * How soon to poll for notifications again after a poll retrieved a full batch, when polling
+     * with an {@code org.esbtools.eventhandler.AdaptivePollingInterval}. A full batch suggests more
+     * notifications are waiting, so this is typically small or zero.
+     */
+    Duration getNotificationPollingMinInterval();
+
+    /**
+     * How long to wait between polls for notifications at most, when polling with an
+     * {@code org.esbtools.eventhandler.AdaptivePollingInterval}. Each poll which retrieves
+     * nothing doubles the interval, up to this ceiling.
+     */
+    Duration getNotificationPollingMaxInterval();
+
+    /**
+     * How long retrieving a batch of notifications and processing it should take, when adjusting
+     * the number of notifications retrieved per batch with an
+     * {@code org.esbtools.eventhandler.AdaptiveBatchSize}. Batches which take longer are halved.
+     * Full batches which take less time grow.
+     *
+     * <p>Regardless of this target, batches should finish within
+     * {@link LightblueNotificationRepositoryConfig#getNotificationProcessingTimeout()} minus
+     * {@link LightblueNotificationRepositoryConfig#getNotificationExpireThreshold()}.
+     */
+    Duration getNotificationTargetCycleTime();
+
+    /**
+     * The fewest notifications to retrieve per batch when adjusting the number of notifications
+     * retrieved per batch with an {@code org.esbtools.eventhandler.AdaptiveBatchSize}.
+     *
+     * @see #getNotificationTargetCycleTime()
+     */
+    Integer getMinNotificationsPerCycle();
+
+    /**
+     * The most notifications to retrieve per batch when adjusting the number of notifications
+     * retrieved per batch with an {@code org.esbtools.eventhandler.AdaptiveBatchSize}.
+     *
+     * @see #getNotificationTargetCycleTime()
+     */
+    Integer getMaxNotificationsPerCycle();
+}
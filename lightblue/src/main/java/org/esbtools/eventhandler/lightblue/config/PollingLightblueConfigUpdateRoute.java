@@ -127,6 +127,92 @@ public class PollingLightblueConfigUpdateRoute extends RouteBuilder {
             Optional<Integer> maxDocumentEventsPerInsert = storedConfig
                     .getOptionalMaxDocumentEventsPerInsert();
             documentEventRepositoryConfig.setMaxDocumentEventsPerInsert(maxDocumentEventsPerInsert);
+
+            Boolean groupDocumentEventClaims = storedConfig.getGroupDocumentEventClaims();
+            if (groupDocumentEventClaims != null) {
+                documentEventRepositoryConfig.setGroupDocumentEventClaims(groupDocumentEventClaims);
+            }
+
+            Boolean claimDocumentEventsAtomically = storedConfig.getClaimDocumentEventsAtomically();
+            if (claimDocumentEventsAtomically != null) {
+                documentEventRepositoryConfig
+                        .setClaimDocumentEventsAtomically(claimDocumentEventsAtomically);
+            }
+
+            Boolean claimNotificationsAtomically = storedConfig.getClaimNotificationsAtomically();
+            if (claimNotificationsAtomically != null) {
+                notificationRepositoryConfig
+                        .setClaimNotificationsAtomically(claimNotificationsAtomically);
+            }
+
+            Boolean lockNotifications = storedConfig.getLockNotifications();
+            if (lockNotifications != null) {
+                notificationRepositoryConfig.setLockNotifications(lockNotifications);
+            }
+
+            Duration documentEventPollingMinInterval = storedConfig
+                    .getDocumentEventPollingMinInterval();
+            if (documentEventPollingMinInterval != null) {
+                documentEventRepositoryConfig
+                        .setDocumentEventPollingMinInterval(documentEventPollingMinInterval);
+            }
+
+            Duration documentEventPollingMaxInterval = storedConfig
+                    .getDocumentEventPollingMaxInterval();
+            if (documentEventPollingMaxInterval != null) {
+                documentEventRepositoryConfig
+                        .setDocumentEventPollingMaxInterval(documentEventPollingMaxInterval);
+            }
+
+            Duration notificationPollingMinInterval = storedConfig
+                    .getNotificationPollingMinInterval();
+            if (notificationPollingMinInterval != null) {
+                notificationRepositoryConfig
+                        .setNotificationPollingMinInterval(notificationPollingMinInterval);
+            }
+
+            Duration notificationPollingMaxInterval = storedConfig
+                    .getNotificationPollingMaxInterval();
+            if (notificationPollingMaxInterval != null) {
+                notificationRepositoryConfig
+                        .setNotificationPollingMaxInterval(notificationPollingMaxInterval);
+            }
+
+            Duration documentEventTargetCycleTime = storedConfig
+                    .getDocumentEventTargetCycleTime();
+            if (documentEventTargetCycleTime != null) {
+                documentEventRepositoryConfig
+                        .setDocumentEventTargetCycleTime(documentEventTargetCycleTime);
+            }
+
+            Integer minDocumentEventsPerCycle = storedConfig.getMinDocumentEventsPerCycle();
+            if (minDocumentEventsPerCycle != null) {
+                documentEventRepositoryConfig
+                        .setMinDocumentEventsPerCycle(minDocumentEventsPerCycle);
+            }
+
+            Integer maxDocumentEventsPerCycle = storedConfig.getMaxDocumentEventsPerCycle();
+            if (maxDocumentEventsPerCycle != null) {
+                documentEventRepositoryConfig
+                        .setMaxDocumentEventsPerCycle(maxDocumentEventsPerCycle);
+            }
+
+            Duration notificationTargetCycleTime = storedConfig
+                    .getNotificationTargetCycleTime();
+            if (notificationTargetCycleTime != null) {
+                notificationRepositoryConfig
+                        .setNotificationTargetCycleTime(notificationTargetCycleTime);
+            }
+
+            Integer minNotificationsPerCycle = storedConfig.getMinNotificationsPerCycle();
+            if (minNotificationsPerCycle != null) {
+                notificationRepositoryConfig.setMinNotificationsPerCycle(minNotificationsPerCycle);
+            }
+
+            Integer maxNotificationsPerCycle = storedConfig.getMaxNotificationsPerCycle();
+            if (maxNotificationsPerCycle != null) {
+                notificationRepositoryConfig.setMaxNotificationsPerCycle(maxNotificationsPerCycle);
+            }
         });
     }
 }
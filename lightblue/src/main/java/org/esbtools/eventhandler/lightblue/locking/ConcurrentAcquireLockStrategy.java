@@ -0,0 +1,95 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler.lightblue.locking;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Decorates another {@link LockStrategy} such that {@link #tryAcquireAll(Collection)} attempts all
+ * acquisitions concurrently using the provided executor, instead of one after another.
+ *
+ * <p>This is useful for strategies where each acquisition is a remote call, such as
+ * {@link LightblueAutoPingLockStrategy}: the latency of acquiring a batch of locks becomes roughly
+ * that of the slowest acquisition rather than the sum of all of them. The executor bounds how many
+ * acquisitions may be in flight at once.
+ *
+ * <p>Locks acquired together are also released together: closing the {@link LockedResources}
+ * returned from {@link #tryAcquireAll(Collection)} releases all of its locks concurrently using
+ * the same executor.
+ *
+ * <p>Single acquisitions are simply delegated.
+ */
+public class ConcurrentAcquireLockStrategy implements LockStrategy {
+    private final LockStrategy delegate;
+    private final ExecutorService acquireExecutor;
+
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrentAcquireLockStrategy.class);
+
+    /**
+     * @param delegate The strategy which actually acquires each lock.
+     * @param acquireExecutor Runs acquisitions and releases. Its lifecycle is owned by the caller.
+     */
+    public ConcurrentAcquireLockStrategy(LockStrategy delegate, ExecutorService acquireExecutor) {
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+        this.acquireExecutor = Objects.requireNonNull(acquireExecutor, "acquireExecutor");
+    }
+
+    @Override
+    public <T> LockedResource<T> tryAcquire(String resourceId, T resource)
+            throws LockNotAvailableException {
+        return delegate.tryAcquire(resourceId, resource);
+    }
+
+    @Override
+    public <T extends Lockable> LockedResources<T> tryAcquireAll(
+            Collection<? extends T> lockables) {
+        List<Future<LockedResource<T>>> acquisitions = new ArrayList<>(lockables.size());
+
+        for (T lockable : lockables) {
+            acquisitions.add(acquireExecutor.submit(() -> delegate.tryAcquire(lockable)));
+        }
+
+        List<LockedResource<T>> acquired = new ArrayList<>(lockables.size());
+
+        // Wait for every acquisition, even if interrupted, so that we never lose track of (and
+        // therefore never release) a lock which was acquired.
+        for (Future<LockedResource<T>> acquisition : acquisitions) {
+            try {
+                acquired.add(Uninterruptibles.getUninterruptibly(acquisition));
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof LockNotAvailableException)) {
+                    logger.warn("Unexpected exception trying to acquire lock. Assuming lock is " +
+                            "not available.", e.getCause());
+                }
+            }
+        }
+
+        return LockedResources.fromLocks(acquired, acquireExecutor);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler.lightblue.locking;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link LockStrategy} whose locks only exclude other threads in the same JVM, keyed by
+ * resource id.
+ *
+ * <p>Acquiring and releasing never block and never leave the process: each lock is an entry in a
+ * {@link ConcurrentHashMap}, which is internally striped, claimed with an atomic
+ * {@code putIfAbsent} and released with an atomic {@code remove} of only the owner's own entry.
+ * Locks never expire; they are held until closed.
+ *
+ * <p>This is appropriate as the sole strategy only when a single process handles a given set of
+ * resources, such as one event handler per domain. Otherwise, it may be layered in front of a
+ * distributed strategy with {@link LocalThenRemoteLockStrategy}.
+ */
+public class InProcessLockStrategy implements LockStrategy {
+    private final ConcurrentMap<String, InProcessLockedResource<?>> locksByResourceId =
+            new ConcurrentHashMap<>();
+
+    @Override
+    public <T> LockedResource<T> tryAcquire(String resourceId, T resource)
+            throws LockNotAvailableException {
+        Objects.requireNonNull(resourceId, "resourceId");
+
+        InProcessLockedResource<T> lock = new InProcessLockedResource<>(resourceId, resource);
+
+        if (locksByResourceId.putIfAbsent(resourceId, lock) != null) {
+            throw new LockNotAvailableException(resourceId, resource);
+        }
+
+        return lock;
+    }
+
+    /**
+     * @return The number of locks currently held through this strategy.
+     */
+    public int getLockCount() {
+        return locksByResourceId.size();
+    }
+
+    private class InProcessLockedResource<T> implements LockedResource<T> {
+        private final String resourceId;
+        private final T resource;
+
+        InProcessLockedResource(String resourceId, T resource) {
+            this.resourceId = resourceId;
+            this.resource = resource;
+        }
+
+        @Override
+        public void ensureAcquiredOrThrow(String lostLockMessage) throws LostLockException {
+            if (locksByResourceId.get(resourceId) != this) {
+                throw new LostLockException(this, lostLockMessage);
+            }
+        }
+
+        @Override
+        public T getResource() {
+            return resource;
+        }
+
+        @Override
+        public void close() {
+            locksByResourceId.remove(resourceId, this);
+        }
+
+        @Override
+        public String toString() {
+            return "InProcessLockedResource{" +
+                    "resourceId='" + resourceId + '\'' +
+                    ", resource=" + resource +
+                    '}';
+        }
+    }
+}
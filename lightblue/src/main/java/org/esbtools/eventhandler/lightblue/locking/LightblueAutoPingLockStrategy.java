@@ -24,14 +24,19 @@ import com.redhat.lightblue.client.response.lock.InvalidLockException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.time.Duration;
+import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Uses lightblue's locking APIs with TTL, automatically pinging the lock in the background until it
@@ -43,11 +48,30 @@ import java.util.concurrent.atomic.AtomicBoolean;
  *
  * <p>Consumers are expected to check the lock at critical points to ensure it did not expire by
  * calling {@link LockedResource#ensureAcquiredOrThrow(String)}.
+ *
+ * <p>By default, each acquired lock is pinged from its own single thread scheduler. When many
+ * locks are held at once (for example, one per identity in a large batch of document events), you
+ * should instead provide a shared scheduler via
+ * {@link #LightblueAutoPingLockStrategy(Locking, Duration, Duration, ScheduledExecutorService)}.
+ * All locks acquired by the strategy will then share that scheduler's threads, and their next ping
+ * times are tracked by the scheduler's delay queue. See {@link #newSharedPingScheduler(int)}.
+ *
+ * <p>Alternatively, locks may be renewed together, in rounds, by a {@link LockPingRegistry}. See
+ * {@link #LightblueAutoPingLockStrategy(Locking, Duration, LockPingRegistry)}.
+ *
+ * <p>By default, {@link LockedResource#ensureAcquiredOrThrow(String)} always pings the lock. See
+ * {@link #withLeaseSafetyMargin(Duration)} to instead answer it locally while a lock's lease is
+ * known to be valid.
  */
 public class LightblueAutoPingLockStrategy implements LockStrategy {
     private final Locking locking;
     private final Duration autoPingInterval;
     private final Duration timeToLive;
+    private final @Nullable ScheduledExecutorService sharedPingScheduler;
+    private final @Nullable LockPingRegistry pingRegistry;
+    private final @Nullable Duration leaseSafetyMargin;
+
+    private static final AtomicInteger pingThreadCounter = new AtomicInteger(1);
 
     /**
      * Same as {@link #LightblueAutoPingLockStrategy(Locking, Duration, Duration)}
@@ -67,14 +91,81 @@ public class LightblueAutoPingLockStrategy implements LockStrategy {
      */
     public LightblueAutoPingLockStrategy(Locking locking, Duration autoPingInterval,
             Duration timeToLive) {
+        this(locking, autoPingInterval, timeToLive, null);
+    }
+
+    /**
+     * Same as {@link #LightblueAutoPingLockStrategy(Locking, Duration, Duration)}, except all
+     * acquired locks are pinged using the provided {@code sharedPingScheduler} instead of creating
+     * a new thread per lock.
+     *
+     * @param sharedPingScheduler Scheduler used to ping all locks acquired by this strategy. It may
+     *                            be shared with other strategies. Its lifecycle is owned by the
+     *                            caller: it is never shut down by the strategy or its locks.
+     *                            Schedulers should remove tasks on cancellation (see
+     *                            {@link ScheduledThreadPoolExecutor#setRemoveOnCancelPolicy(boolean)})
+     *                            so that released locks do not linger in its queue.
+     */
+    public LightblueAutoPingLockStrategy(Locking locking, Duration autoPingInterval,
+            Duration timeToLive, @Nullable ScheduledExecutorService sharedPingScheduler) {
+        this(locking, autoPingInterval, timeToLive, sharedPingScheduler, null, null);
+    }
+
+    /**
+     * Acquires locks using the provided {@code locking} client, but leaves pinging them to the
+     * provided {@code pingRegistry}, which renews all due locks together.
+     *
+     * @param locking The locking client to use to acquire and release locks. The registry's
+     *                {@link LockPinger} must ping within the same locking domain.
+     * @param timeToLive Time until locks automatically expire. Should be [much] larger than the
+     *                   registry's {@link LockPingRegistry#getPingInterval() ping interval}.
+     * @param pingRegistry Pings all locks acquired by this strategy. May be shared with other
+     *                     strategies.
+     */
+    public LightblueAutoPingLockStrategy(Locking locking, Duration timeToLive,
+            LockPingRegistry pingRegistry) {
+        this(locking, pingRegistry.getPingInterval(), timeToLive, null, pingRegistry, null);
+    }
+
+    private LightblueAutoPingLockStrategy(Locking locking, Duration autoPingInterval,
+            Duration timeToLive, @Nullable ScheduledExecutorService sharedPingScheduler,
+            @Nullable LockPingRegistry pingRegistry, @Nullable Duration leaseSafetyMargin) {
         this.locking = locking;
         this.autoPingInterval = autoPingInterval;
         this.timeToLive = timeToLive;
+        this.sharedPingScheduler = sharedPingScheduler;
+        this.pingRegistry = pingRegistry;
+        this.leaseSafetyMargin = leaseSafetyMargin;
 
         if (timeToLive.compareTo(autoPingInterval) <= 0) {
             throw new IllegalArgumentException("Time to live should be greater than auto ping " +
                     "interval, otherwise the lock will likely be lost.");
         }
+
+        if (leaseSafetyMargin != null && (leaseSafetyMargin.isNegative() ||
+                timeToLive.compareTo(leaseSafetyMargin) <= 0)) {
+            throw new IllegalArgumentException("Lease safety margin should be positive and less " +
+                    "than time to live, otherwise leases would never be trusted.");
+        }
+    }
+
+    /**
+     * Returns a strategy which acquires locks the same way as this one, but whose locks track
+     * their own lease locally: each successful acquire or ping renews the lease for the time to
+     * live, measured from when that call was sent.
+     *
+     * <p>{@link LockedResource#ensureAcquiredOrThrow(String)} is then answered in memory, without
+     * calling lightblue, as long as more than {@code leaseSafetyMargin} of the lease remains and
+     * the lock is not otherwise known to be lost or released. Closer to expiry, the lock is
+     * pinged as usual.
+     *
+     * <p>The margin should account for clock drift and the time between checking the lock and
+     * finishing the work it protects.
+     */
+    public LightblueAutoPingLockStrategy withLeaseSafetyMargin(Duration leaseSafetyMargin) {
+        return new LightblueAutoPingLockStrategy(locking, autoPingInterval, timeToLive,
+                sharedPingScheduler, pingRegistry,
+                Objects.requireNonNull(leaseSafetyMargin, "leaseSafetyMargin"));
     }
 
     @Override
@@ -83,36 +174,96 @@ public class LightblueAutoPingLockStrategy implements LockStrategy {
             // TODO: May want to include hostname and/or thread information in clientId
             String callerId = UUID.randomUUID().toString();
             return new AutoPingingLock<>(locking, callerId, resourceId, resource, autoPingInterval,
-                    timeToLive);
+                    timeToLive, sharedPingScheduler, pingRegistry, leaseSafetyMargin);
         } catch (LightblueException e) {
             throw new LockNotAvailableException(resourceId, resource, e);
         }
     }
 
+    /**
+     * Creates a bounded scheduler suitable for sharing among many auto pinging locks. It uses
+     * daemon threads and removes pings of released locks from its queue immediately.
+     *
+     * @param threads The maximum number of threads to ping locks with. Pings are short, blocking
+     *                calls, so a small number is generally plenty even for many locks.
+     * @see #LightblueAutoPingLockStrategy(Locking, Duration, Duration, ScheduledExecutorService)
+     */
+    public static ScheduledExecutorService newSharedPingScheduler(int threads) {
+        ThreadFactory daemonThreads = runnable -> {
+            Thread thread = new Thread(runnable,
+                    "lightblue-lock-ping-" + pingThreadCounter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(threads,
+                daemonThreads);
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
     static final class AutoPingingLock<T> implements LockedResource<T> {
         private final String callerId;
         private final T resource;
         private final String resourceId;
         private final Locking locking;
-        private final ScheduledExecutorService autoPingScheduler =
-                Executors.newSingleThreadScheduledExecutor();
-        private final ScheduledFuture<?> autoPinger;
+        /** Null if pinged by a registry. */
+        private final @Nullable ScheduledExecutorService autoPingScheduler;
+        /** Whether or not the scheduler was created for, and so should be shut down with, us. */
+        private final boolean ownsScheduler;
+        /** Null if pinged by a registry. */
+        private final @Nullable ScheduledFuture<?> autoPinger;
+        private final @Nullable LockPingRegistry pingRegistry;
         private final AtomicBoolean isClosed = new AtomicBoolean(false);
+        private volatile long lastRenewedNanos;
+        private final long ttlNanos;
+        /**
+         * How long after renewal we trust the lease without pinging, or a negative number if we
+         * should always ping.
+         */
+        private final long trustedLeaseNanos;
 
         private static final Logger logger = LoggerFactory.getLogger(AutoPingingLock.class);
 
         AutoPingingLock(Locking locking, String callerId, String resourceId, T resource,
-                Duration autoPingInterval, Duration ttl) throws LightblueException,
-                LockNotAvailableException {
+                Duration autoPingInterval, Duration ttl,
+                @Nullable ScheduledExecutorService sharedPingScheduler,
+                @Nullable LockPingRegistry pingRegistry, @Nullable Duration leaseSafetyMargin)
+                throws LightblueException, LockNotAvailableException {
             this.callerId = callerId;
             this.resource = resource;
             this.locking = locking;
             this.resourceId = resourceId;
+            this.pingRegistry = pingRegistry;
+            this.ttlNanos = ttl.toNanos();
+            this.trustedLeaseNanos = leaseSafetyMargin == null
+                    ? -1
+                    : ttl.minus(leaseSafetyMargin).toNanos();
+
+            long acquireStartNanos = System.nanoTime();
 
             if (!locking.acquire(callerId, resourceId, ttl.toMillis())) {
                 throw new LockNotAvailableException(resourceId, resource);
             }
 
+            renewedAt(acquireStartNanos);
+
+            if (pingRegistry != null) {
+                this.autoPingScheduler = null;
+                this.ownsScheduler = false;
+                this.autoPinger = null;
+                pingRegistry.register(this);
+                return;
+            }
+
+            if (sharedPingScheduler == null) {
+                this.autoPingScheduler = Executors.newSingleThreadScheduledExecutor();
+                this.ownsScheduler = true;
+            } else {
+                this.autoPingScheduler = sharedPingScheduler;
+                this.ownsScheduler = false;
+            }
+
             this.autoPinger = autoPingScheduler.scheduleWithFixedDelay(
                     new PingTask(this),
                     /* initial delay*/ autoPingInterval.toMillis(),
@@ -122,11 +273,19 @@ public class LightblueAutoPingLockStrategy implements LockStrategy {
 
         @Override
         public void ensureAcquiredOrThrow(String lostLockMessage) throws LostLockException {
+            if (isLeaseTrusted()) {
+                return;
+            }
+
             try {
+                long pingStartNanos = System.nanoTime();
+
                 if (!locking.ping(callerId, resourceId)) {
                     stopPinging();
                     throw new LostLockException(this, lostLockMessage);
                 }
+
+                renewedAt(pingStartNanos);
             } catch (LightblueException e) {
                 try {
                     close();
@@ -153,8 +312,7 @@ public class LightblueAutoPingLockStrategy implements LockStrategy {
             }
 
             try {
-                autoPinger.cancel(true);
-                autoPingScheduler.shutdownNow();
+                cancelAutoPinger();
                 locking.release(callerId, resourceId);
                 isClosed.set(true);
             } catch (LightblueException e) {
@@ -176,12 +334,62 @@ public class LightblueAutoPingLockStrategy implements LockStrategy {
          * Does NOT call out to lightblue to release the lock. If lightblue may still have the lock
          * and you are not okay with it expiring on its own, use {@link #close()}.
          */
-        private void stopPinging() {
-            autoPinger.cancel(true);
-            autoPingScheduler.shutdownNow();
+        void stopPinging() {
+            cancelAutoPinger();
             isClosed.set(true);
         }
 
+        private void cancelAutoPinger() {
+            if (pingRegistry != null) {
+                pingRegistry.unregister(this);
+                return;
+            }
+
+            // Don't interrupt a shared scheduler's thread; it may be pinging a different lock.
+            autoPinger.cancel(ownsScheduler);
+
+            if (ownsScheduler) {
+                autoPingScheduler.shutdownNow();
+            }
+        }
+
+        /**
+         * Lost or released locks are never trusted, so that checking them still pings lightblue
+         * and fails as it would without lease tracking.
+         */
+        private boolean isLeaseTrusted() {
+            return trustedLeaseNanos >= 0 && !isClosed.get() &&
+                    System.nanoTime() - lastRenewedNanos < trustedLeaseNanos;
+        }
+
+        String callerId() {
+            return callerId;
+        }
+
+        String resourceId() {
+            return resourceId;
+        }
+
+        /**
+         * @return The {@link System#nanoTime()} at which the last successful acquire or ping of
+         * this lock started.
+         */
+        long lastRenewedNanos() {
+            return lastRenewedNanos;
+        }
+
+        /**
+         * @return The {@link System#nanoTime()} by which this lock expires unless renewed, as far
+         * as we know.
+         */
+        long expiresAtNanos() {
+            return lastRenewedNanos + ttlNanos;
+        }
+
+        void renewedAt(long pingStartNanos) {
+            lastRenewedNanos = pingStartNanos;
+        }
+
         static class PingTask implements Runnable {
             final AutoPingingLock lock;
 
@@ -192,11 +400,15 @@ public class LightblueAutoPingLockStrategy implements LockStrategy {
             @Override
             public void run() {
                 try {
+                    long pingStartNanos = System.nanoTime();
+
                     if (!lock.locking.ping(lock.callerId, lock.resourceId)) {
                         lock.stopPinging();
                         throw new RuntimeException("Lost lock. Will stop pinging. Lock was: " + lock);
                     }
 
+                    lock.renewedAt(pingStartNanos);
+
                     logger.debug("Periodic lock ping successful. callerId={} resourceId={}",
                             lock.callerId, lock.resourceId);
                 } catch (InvalidLockException e) {
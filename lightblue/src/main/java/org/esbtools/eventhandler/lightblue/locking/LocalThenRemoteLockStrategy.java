@@ -0,0 +1,201 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler.lightblue.locking;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Acquires each lock first from an {@link InProcessLockStrategy} and only then from a remote
+ * strategy, such as {@link LightblueAutoPingLockStrategy}.
+ *
+ * <p>Threads in the same JVM contending for a resource are therefore turned away locally, without
+ * a remote call, and never race each other to the remote lock store. A resulting lock is held
+ * only while both the local and remote locks are held; losing either releases the other.
+ *
+ * <p>Share one {@code InProcessLockStrategy} between every strategy which locks the same
+ * resource ids in a process.
+ */
+public class LocalThenRemoteLockStrategy implements LockStrategy {
+    private final InProcessLockStrategy local;
+    private final LockStrategy remote;
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalThenRemoteLockStrategy.class);
+
+    public LocalThenRemoteLockStrategy(LockStrategy remote) {
+        this(new InProcessLockStrategy(), remote);
+    }
+
+    public LocalThenRemoteLockStrategy(InProcessLockStrategy local, LockStrategy remote) {
+        this.local = Objects.requireNonNull(local, "local");
+        this.remote = Objects.requireNonNull(remote, "remote");
+    }
+
+    @Override
+    public <T> LockedResource<T> tryAcquire(String resourceId, T resource)
+            throws LockNotAvailableException {
+        LockedResource<T> localLock = local.tryAcquire(resourceId, resource);
+
+        try {
+            return new LocalAndRemoteLockedResource<>(localLock,
+                    remote.tryAcquire(resourceId, resource));
+        } catch (LockNotAvailableException | RuntimeException e) {
+            closeQuietly(localLock);
+            throw e;
+        }
+    }
+
+    @Override
+    public <T extends Lockable> LockedResources<T> tryAcquireAll(
+            Collection<? extends T> lockables) {
+        Map<String, LockedResource<T>> localLocksByResourceId = new HashMap<>(lockables.size());
+        List<T> locallyLocked = new ArrayList<>(lockables.size());
+
+        for (T lockable : lockables) {
+            try {
+                LockedResource<T> localLock = local.tryAcquire(lockable);
+                localLocksByResourceId.put(lockable.getResourceId(), localLock);
+                locallyLocked.add(lockable);
+            } catch (LockNotAvailableException e) {
+                // Not fatal; another thread in this process has it.
+            }
+        }
+
+        LockedResources<T> remoteLocks;
+
+        try {
+            remoteLocks = remote.tryAcquireAll(locallyLocked);
+        } catch (RuntimeException e) {
+            localLocksByResourceId.values().forEach(LocalThenRemoteLockStrategy::closeQuietly);
+            throw e;
+        }
+
+        List<LockedResource<T>> acquired = new ArrayList<>(remoteLocks.getLocks().size());
+        List<LockedResource<T>> acquiredLocalLocks = new ArrayList<>(acquired.size());
+
+        for (LockedResource<T> remoteLock : remoteLocks.getLocks()) {
+            LockedResource<T> localLock = localLocksByResourceId.remove(
+                    remoteLock.getResource().getResourceId());
+            acquired.add(new LocalAndRemoteLockedResource<>(localLock, remoteLock));
+            acquiredLocalLocks.add(localLock);
+        }
+
+        // Anything left was not available remotely.
+        localLocksByResourceId.values().forEach(LocalThenRemoteLockStrategy::closeQuietly);
+
+        return new LocalAndRemoteLockedResources<>(acquired, acquiredLocalLocks, remoteLocks);
+    }
+
+    private static void closeQuietly(LockedResource<?> lock) {
+        try {
+            lock.close();
+        } catch (IOException e) {
+            logger.warn("Failed to release lock: " + lock, e);
+        }
+    }
+
+    private static class LocalAndRemoteLockedResource<T> implements LockedResource<T> {
+        private final LockedResource<T> localLock;
+        private final LockedResource<T> remoteLock;
+
+        LocalAndRemoteLockedResource(LockedResource<T> localLock, LockedResource<T> remoteLock) {
+            this.localLock = localLock;
+            this.remoteLock = remoteLock;
+        }
+
+        @Override
+        public void ensureAcquiredOrThrow(String lostLockMessage) throws LostLockException {
+            try {
+                localLock.ensureAcquiredOrThrow(lostLockMessage);
+            } catch (LostLockException e) {
+                closeQuietly(remoteLock);
+                throw e;
+            }
+
+            try {
+                remoteLock.ensureAcquiredOrThrow(lostLockMessage);
+            } catch (LostLockException e) {
+                closeQuietly(localLock);
+                throw e;
+            }
+        }
+
+        @Override
+        public T getResource() {
+            return remoteLock.getResource();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                remoteLock.close();
+            } finally {
+                localLock.close();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "LocalAndRemoteLockedResource{" +
+                    "localLock=" + localLock +
+                    ", remoteLock=" + remoteLock +
+                    '}';
+        }
+    }
+
+    /**
+     * Releases the remote locks however the remote strategy releases them (for example,
+     * concurrently), then the local locks.
+     */
+    private static class LocalAndRemoteLockedResources<T> implements LockedResources<T> {
+        private final Collection<LockedResource<T>> locks;
+        private final Collection<LockedResource<T>> localLocks;
+        private final LockedResources<T> remoteLocks;
+
+        LocalAndRemoteLockedResources(Collection<LockedResource<T>> locks,
+                Collection<LockedResource<T>> localLocks, LockedResources<T> remoteLocks) {
+            this.locks = Collections.unmodifiableCollection(locks);
+            this.localLocks = localLocks;
+            this.remoteLocks = remoteLocks;
+        }
+
+        @Override
+        public Collection<LockedResource<T>> getLocks() {
+            return locks;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                remoteLocks.close();
+            } finally {
+                localLocks.forEach(LocalThenRemoteLockStrategy::closeQuietly);
+            }
+        }
+    }
+}
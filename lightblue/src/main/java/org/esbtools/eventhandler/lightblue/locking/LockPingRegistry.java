@@ -0,0 +1,207 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler.lightblue.locking;
+
+import org.esbtools.eventhandler.lightblue.locking.LockPinger.PingResult;
+import org.esbtools.eventhandler.lightblue.locking.LightblueAutoPingLockStrategy.AutoPingingLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Tracks every live lock acquired by one or more {@link LightblueAutoPingLockStrategy strategies}
+ * and renews all of those due for a ping together, in one call to a {@link LockPinger}, instead
+ * of pinging each lock on its own schedule. This replaces a scheduled task per lock with one per
+ * registry. It does not by itself reduce requests to lightblue, since the {@link LockPinger}
+ * adapters for lightblue's locking API still ping each lock with its own request.
+ *
+ * <p>Once per ping interval, all registered locks which have not been renewed for at least half of
+ * the interval are pinged. Locks which are reported lost stop being pinged, which is reflected the
+ * next time their holder calls {@link LockedResource#ensureAcquiredOrThrow(String)}. This means a
+ * newly acquired lock is first pinged within one and a half ping intervals, and so the time to live
+ * of locks should be comfortably larger than that. A round of pings must also finish before the
+ * locks in it expire; a warning is logged if it does not. With many live locks, use a pinger which
+ * pings concurrently, such as
+ * {@link LockPinger#fromLocking(com.redhat.lightblue.client.Locking, java.util.concurrent.ExecutorService)}.
+ *
+ * <p>All registered locks must belong to the locking domain the {@code pinger} pings.
+ *
+ * @see LightblueAutoPingLockStrategy#LightblueAutoPingLockStrategy(com.redhat.lightblue.client.Locking, Duration, LockPingRegistry)
+ */
+public class LockPingRegistry implements Closeable {
+    private final LockPinger pinger;
+    private final Duration pingInterval;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+    private final ScheduledFuture<?> pingDueLocksTask;
+    private final Set<AutoPingingLock<?>> liveLocks = ConcurrentHashMap.newKeySet();
+
+    private static final Logger logger = LoggerFactory.getLogger(LockPingRegistry.class);
+
+    /**
+     * Pings locks in a new, dedicated daemon thread, which is stopped when the registry is
+     * {@link #close() closed}.
+     */
+    public LockPingRegistry(LockPinger pinger, Duration pingInterval) {
+        this(pinger, pingInterval, LightblueAutoPingLockStrategy.newSharedPingScheduler(1), true);
+    }
+
+    /**
+     * @param scheduler Used to periodically ping due locks. Its lifecycle is owned by the caller:
+     *                  it is not shut down when the registry is closed.
+     */
+    public LockPingRegistry(LockPinger pinger, Duration pingInterval,
+            ScheduledExecutorService scheduler) {
+        this(pinger, pingInterval, scheduler, false);
+    }
+
+    private LockPingRegistry(LockPinger pinger, Duration pingInterval,
+            ScheduledExecutorService scheduler, boolean ownsScheduler) {
+        this.pinger = pinger;
+        this.pingInterval = pingInterval;
+        this.scheduler = scheduler;
+        this.ownsScheduler = ownsScheduler;
+
+        this.pingDueLocksTask = scheduler.scheduleWithFixedDelay(
+                this::pingDueLocks,
+                /* initial delay*/ pingInterval.toMillis(),
+                /* delay */ pingInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    public Duration getPingInterval() {
+        return pingInterval;
+    }
+
+    /**
+     * @return The number of locks currently being pinged.
+     */
+    public int getLiveLockCount() {
+        return liveLocks.size();
+    }
+
+    /**
+     * Stops pinging all locks. Locks are not released; they will expire on their own unless closed
+     * by their holders.
+     */
+    @Override
+    public void close() {
+        pingDueLocksTask.cancel(false);
+        liveLocks.clear();
+
+        if (ownsScheduler) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    void register(AutoPingingLock<?> lock) {
+        liveLocks.add(lock);
+    }
+
+    void unregister(AutoPingingLock<?> lock) {
+        liveLocks.remove(lock);
+    }
+
+    void pingDueLocks() {
+        try {
+            long dueIfRenewedBefore = System.nanoTime() - pingInterval.toNanos() / 2;
+
+            List<AutoPingingLock<?>> dueLocks = liveLocks.stream()
+                    .filter(lock -> lock.lastRenewedNanos() - dueIfRenewedBefore <= 0)
+                    .collect(Collectors.toList());
+
+            // A resource id should only ever be held by one of our locks at a time, but a lock
+            // which expired without us noticing may still be registered alongside its successor.
+            // Such duplicates are pinged in a subsequent round.
+            while (!dueLocks.isEmpty()) {
+                Map<String, AutoPingingLock<?>> round = new HashMap<>(dueLocks.size());
+                List<AutoPingingLock<?>> nextRound = new ArrayList<>(0);
+
+                for (AutoPingingLock<?> lock : dueLocks) {
+                    if (round.putIfAbsent(lock.resourceId(), lock) != null) {
+                        nextRound.add(lock);
+                    }
+                }
+
+                ping(round);
+                dueLocks = nextRound;
+            }
+        } catch (RuntimeException e) {
+            // Never let an exception escape, or the scheduler will stop pinging entirely.
+            logger.error("Unexpected exception pinging locks. Will keep trying.", e);
+        }
+    }
+
+    private void ping(Map<String, AutoPingingLock<?>> locksByResourceId) {
+        Map<String, String> callerIdsByResourceId = new HashMap<>(locksByResourceId.size());
+        locksByResourceId.forEach((resourceId, lock) ->
+                callerIdsByResourceId.put(resourceId, lock.callerId()));
+
+        long earliestExpiryNanos = locksByResourceId.values().stream()
+                .mapToLong(AutoPingingLock::expiresAtNanos)
+                .min()
+                .getAsLong();
+
+        long pingStartNanos = System.nanoTime();
+        Map<String, PingResult> results = pinger.pingAll(callerIdsByResourceId);
+        long pingEndNanos = System.nanoTime();
+
+        // Locks are pinged well before they expire, but only if a round of pings is fast enough.
+        if (pingEndNanos - earliestExpiryNanos >= 0) {
+            logger.warn("Lock ping round of {} locks took {}ms, which is longer than the " +
+                    "earliest of them had left to live ({}ms). Locks may have expired before they " +
+                    "could be renewed. Consider pinging locks concurrently, or a shorter ping " +
+                    "interval.",
+                    locksByResourceId.size(),
+                    TimeUnit.NANOSECONDS.toMillis(pingEndNanos - pingStartNanos),
+                    TimeUnit.NANOSECONDS.toMillis(earliestExpiryNanos - pingStartNanos));
+        }
+
+        locksByResourceId.forEach((resourceId, lock) -> {
+            PingResult result = results.getOrDefault(resourceId, PingResult.FAILED);
+
+            switch (result) {
+                case RENEWED:
+                    lock.renewedAt(pingStartNanos);
+                    break;
+                case LOST:
+                    logger.error("Lost lock. Will stop pinging. Lock was: {}", lock);
+                    lock.stopPinging();
+                    break;
+                default:
+                    logger.error("Periodic lock ping failed for lock {}. Will keep trying.", lock);
+            }
+        });
+
+        logger.debug("Lock ping round complete for {} locks.", locksByResourceId.size());
+    }
+}
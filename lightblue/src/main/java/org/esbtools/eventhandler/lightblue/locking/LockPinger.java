@@ -0,0 +1,125 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler.lightblue.locking;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.redhat.lightblue.client.LightblueException;
+import com.redhat.lightblue.client.Locking;
+import com.redhat.lightblue.client.response.lock.InvalidLockException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Renews a round of locks, all held within the same locking domain, reporting the outcome of each.
+ *
+ * <p>The {@link Locking} adapters, {@link #fromLocking(Locking)} and
+ * {@link #fromLocking(Locking, ExecutorService)}, still ping each lock with its own call, because
+ * lightblue's locking API has no way to renew many locks in one request. They do not reduce the
+ * number of round trips to lightblue: a round of N locks costs N requests. An implementation
+ * backed by a store which can renew many locks in one request is free to do so.
+ *
+ * @see LockPingRegistry
+ */
+public interface LockPinger {
+    /**
+     * Attempts to renew each provided lock.
+     *
+     * @param callerIdsByResourceId The locks to renew: each resource id is held by its associated
+     *                              caller id.
+     * @return The outcome of each ping, by resource id. Any resource id which is missing from the
+     * returned map is treated as {@link PingResult#FAILED}.
+     */
+    Map<String, PingResult> pingAll(Map<String, String> callerIdsByResourceId);
+
+    enum PingResult {
+        /** The lock is still held, and its time to live was reset. */
+        RENEWED,
+
+        /** The lock is no longer held by its caller. */
+        LOST,
+
+        /**
+         * We could not determine if the lock is still held, for instance due to a communication
+         * failure. It may be worth trying again.
+         */
+        FAILED
+    }
+
+    /**
+     * Adapts a {@link Locking} client, pinging each lock with its own call, one after another.
+     *
+     * <p>A round of pings takes as long as all of its calls combined. Prefer
+     * {@link #fromLocking(Locking, ExecutorService)} when many locks are live at once.
+     */
+    static LockPinger fromLocking(Locking locking) {
+        return fromLocking(locking, MoreExecutors.newDirectExecutorService());
+    }
+
+    /**
+     * Adapts a {@link Locking} client, pinging each lock with its own call, concurrently using the
+     * provided executor. A round of pings then takes roughly as long as its slowest call, rather
+     * than all of its calls combined. This only hides latency: lightblue still receives one
+     * request per lock. The executor bounds how many pings may be in flight at once.
+     *
+     * @param pingExecutor Runs pings. Its lifecycle is owned by the caller.
+     */
+    static LockPinger fromLocking(Locking locking, ExecutorService pingExecutor) {
+        Logger logger = LoggerFactory.getLogger(LockPinger.class);
+
+        return callerIdsByResourceId -> {
+            Map<String, Future<PingResult>> pings = new HashMap<>(callerIdsByResourceId.size());
+
+            callerIdsByResourceId.forEach((resourceId, callerId) ->
+                    pings.put(resourceId, pingExecutor.submit(() -> {
+                        try {
+                            return locking.ping(callerId, resourceId)
+                                    ? PingResult.RENEWED
+                                    : PingResult.LOST;
+                        } catch (InvalidLockException e) {
+                            return PingResult.LOST;
+                        } catch (LightblueException e) {
+                            logger.error("Lock ping failed for callerId <{}> and resourceId <{}>.",
+                                    callerId, resourceId, e);
+                            return PingResult.FAILED;
+                        }
+                    })));
+
+            Map<String, PingResult> results = new HashMap<>(pings.size());
+
+            pings.forEach((resourceId, ping) -> {
+                try {
+                    results.put(resourceId, Uninterruptibles.getUninterruptibly(ping));
+                } catch (ExecutionException e) {
+                    logger.error("Unexpected exception pinging lock for resourceId <{}>.",
+                            resourceId, e.getCause());
+                    results.put(resourceId, PingResult.FAILED);
+                }
+            });
+
+            return results;
+        };
+    }
+}
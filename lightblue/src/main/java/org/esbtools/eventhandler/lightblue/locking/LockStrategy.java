@@ -18,6 +18,10 @@
 
 package org.esbtools.eventhandler.lightblue.locking;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 /**
  * Abstracts an atomic exclusive locking mechanism which is used to coordinate concurrent work on
  * logical "resources."
@@ -59,4 +63,29 @@ public interface LockStrategy {
     default LockedResource<String> tryAcquire(String resourceId) throws LockNotAvailableException {
         return tryAcquire(resourceId, resourceId);
     }
+
+    /**
+     * Attempts to acquire locks for all of the provided {@code lockables}, returning only those
+     * which were acquired. Resources which could not be locked are simply not included in the
+     * result; use {@link #tryAcquire(Lockable)} if you need to know why a particular lock was not
+     * available.
+     *
+     * <p>The default implementation tries each lock one at a time. Strategies which can acquire
+     * many locks more efficiently, for example concurrently or in bulk, should override this.
+     *
+     * @return The acquired locks, in the same order as the provided {@code lockables}.
+     */
+    default <T extends Lockable> LockedResources<T> tryAcquireAll(Collection<? extends T> lockables) {
+        List<LockedResource<T>> acquired = new ArrayList<>(lockables.size());
+
+        for (T lockable : lockables) {
+            try {
+                acquired.add(tryAcquire(lockable));
+            } catch (LockNotAvailableException e) {
+                // Not fatal; resource is just left out of the result.
+            }
+        }
+
+        return LockedResources.fromLocks(acquired);
+    }
 }
@@ -20,6 +20,7 @@ package org.esbtools.eventhandler.lightblue.locking;
 
 import java.io.Closeable;
 import java.util.Collection;
+import java.util.concurrent.ExecutorService;
 
 public interface LockedResources<T> extends Closeable {
     Collection<LockedResource<T>> getLocks();
@@ -27,4 +28,22 @@ public interface LockedResources<T> extends Closeable {
     static <T> LockedResources<T> fromLocks(Collection<LockedResource<T>> locks) {
         return new WrappedLockedResources<>(locks);
     }
+
+    /**
+     * Like {@link #fromLocks(Collection)}, except closing the returned resources releases all of
+     * the locks concurrently using the provided {@code releaseExecutor}, waiting until all have
+     * been released. Failures to release are still aggregated.
+     */
+    static <T> LockedResources<T> fromLocks(Collection<LockedResource<T>> locks,
+            ExecutorService releaseExecutor) {
+        return new WrappedLockedResources<>(locks, releaseExecutor);
+    }
+
+    /**
+     * Combines several {@code LockedResources} into one, which releases each of them when closed,
+     * however they each release their own locks.
+     */
+    static <T> LockedResources<T> combine(Collection<? extends LockedResources<T>> lockedResources) {
+        return new CombinedLockedResources<>(lockedResources);
+    }
 }
@@ -0,0 +1,100 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler.lightblue.locking;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decorates another {@link LockStrategy}, remembering resource ids which were recently refused
+ * so that attempts to lock them again within a configurable window fail immediately, with a
+ * {@link LockNotAvailableException}, without asking the underlying strategy.
+ *
+ * <p>When many nodes poll the same resources, most lock attempts fail because another node holds
+ * the lock, and that node is likely to keep holding it for the next several polls. Each of those
+ * failures would otherwise cost a remote call.
+ *
+ * <p>The cache is bounded: once full, the ids least recently refused or checked are forgotten
+ * first. Only refusals are cached. A failure due to an error communicating with the underlying lock
+ * store is not cached, since it says nothing about who holds the lock.
+ *
+ * <p>Acquiring many locks with {@link #tryAcquireAll(Collection)} tries each lock in turn, so that
+ * each failure's cause is known. To acquire them concurrently, decorate this strategy with a
+ * {@link ConcurrentAcquireLockStrategy}, rather than the other way around.
+ */
+public class NegativeCachingLockStrategy implements LockStrategy {
+    private final LockStrategy delegate;
+    private final Cache<String, Boolean> recentlyRefusedResourceIds;
+
+    /**
+     * @param delegate The strategy which actually acquires locks.
+     * @param refusalWindow How long after a resource is refused we assume it is still unavailable.
+     *                      Should be shorter than a typical lock is held.
+     * @param maxRefusedResourceIds The maximum number of refused resource ids to remember.
+     */
+    public NegativeCachingLockStrategy(LockStrategy delegate, Duration refusalWindow,
+            long maxRefusedResourceIds) {
+        this(delegate, refusalWindow, maxRefusedResourceIds, Ticker.systemTicker());
+    }
+
+    NegativeCachingLockStrategy(LockStrategy delegate, Duration refusalWindow,
+            long maxRefusedResourceIds, Ticker ticker) {
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+        this.recentlyRefusedResourceIds = CacheBuilder.newBuilder()
+                .expireAfterWrite(refusalWindow.toNanos(), TimeUnit.NANOSECONDS)
+                .maximumSize(maxRefusedResourceIds)
+                .ticker(ticker)
+                .build();
+    }
+
+    @Override
+    public <T> LockedResource<T> tryAcquire(String resourceId, T resource)
+            throws LockNotAvailableException {
+        if (wasRecentlyRefused(resourceId)) {
+            throw new LockNotAvailableException(resourceId, resource);
+        }
+
+        try {
+            return delegate.tryAcquire(resourceId, resource);
+        } catch (LockNotAvailableException e) {
+            if (e.getCause() == null) {
+                recentlyRefusedResourceIds.put(resourceId, Boolean.TRUE);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return The approximate number of resource ids currently assumed unavailable.
+     */
+    public long getRecentlyRefusedCount() {
+        recentlyRefusedResourceIds.cleanUp();
+        return recentlyRefusedResourceIds.size();
+    }
+
+    private boolean wasRecentlyRefused(String resourceId) {
+        return recentlyRefusedResourceIds.getIfPresent(resourceId) != null;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler.lightblue.locking;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A lock strategy which grants every lock without coordinating with anything, and whose locks are
+ * never lost.
+ *
+ * <p>Useful where concurrent work on the same resource is already prevented some other way, such
+ * as by a conditional update which only succeeds if the resource was not changed since it was
+ * read. Then locks only add cost.
+ */
+public class NoOpLockStrategy implements LockStrategy {
+    @Override
+    public <T> LockedResource<T> tryAcquire(String resourceId, T resource) {
+        return new NoOpLockedResource<>(resource);
+    }
+
+    @Override
+    public <T extends Lockable> LockedResources<T> tryAcquireAll(Collection<? extends T> lockables) {
+        List<LockedResource<T>> acquired = new ArrayList<>(lockables.size());
+
+        for (T lockable : lockables) {
+            acquired.add(new NoOpLockedResource<>(lockable));
+        }
+
+        return LockedResources.fromLocks(acquired);
+    }
+
+    private static class NoOpLockedResource<T> implements LockedResource<T> {
+        private final T resource;
+
+        NoOpLockedResource(T resource) {
+            this.resource = resource;
+        }
+
+        @Override
+        public void ensureAcquiredOrThrow(String lostLockMessage) {
+            // Never lost.
+        }
+
+        @Override
+        public T getResource() {
+            return resource;
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release.
+        }
+
+        @Override
+        public String toString() {
+            return "NoOpLockedResource{" +
+                    "resource=" + resource +
+                    '}';
+        }
+    }
+}
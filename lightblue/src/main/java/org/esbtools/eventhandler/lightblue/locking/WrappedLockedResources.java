@@ -18,17 +18,34 @@
 
 package org.esbtools.eventhandler.lightblue.locking;
 
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 class WrappedLockedResources<T> implements LockedResources<T> {
     private final Collection<LockedResource<T>> locks;
+    private final @Nullable ExecutorService releaseExecutor;
 
     public WrappedLockedResources(Collection<LockedResource<T>> locks) {
+        this(locks, null);
+    }
+
+    /**
+     * @param releaseExecutor If not null, locks are released concurrently using this executor.
+     */
+    public WrappedLockedResources(Collection<LockedResource<T>> locks,
+            @Nullable ExecutorService releaseExecutor) {
         this.locks = locks;
+        this.releaseExecutor = releaseExecutor;
     }
 
     @Override
@@ -42,6 +59,20 @@ class WrappedLockedResources<T> implements LockedResources<T> {
             return;
         }
 
+        List<IOException> exceptions = releaseExecutor == null || locks.size() == 1
+                ? closeSerially()
+                : closeConcurrently(releaseExecutor);
+
+        if (!exceptions.isEmpty()) {
+            if (exceptions.size() == 1) {
+                throw exceptions.get(0);
+            }
+
+            throw new MultipleIOExceptions(exceptions);
+        }
+    }
+
+    private List<IOException> closeSerially() {
         List<IOException> exceptions = new ArrayList<>(0);
 
         for (LockedResource lock : locks) {
@@ -52,12 +83,42 @@ class WrappedLockedResources<T> implements LockedResources<T> {
             }
         }
 
-        if (!exceptions.isEmpty()) {
-            if (exceptions.size() == 1) {
-                throw exceptions.get(0);
+        return exceptions;
+    }
+
+    private List<IOException> closeConcurrently(ExecutorService releaseExecutor) {
+        List<IOException> exceptions = new ArrayList<>(0);
+        List<Future<Void>> releases = new ArrayList<>(locks.size());
+
+        for (LockedResource lock : locks) {
+            try {
+                releases.add(releaseExecutor.submit(() -> {
+                    lock.close();
+                    return null;
+                }));
+            } catch (RejectedExecutionException e) {
+                // Executor is no longer accepting work; release in this thread instead.
+                try {
+                    lock.close();
+                } catch (IOException closeException) {
+                    exceptions.add(closeException);
+                }
             }
+        }
 
-            throw new MultipleIOExceptions(exceptions);
+        // Wait for every release, even if interrupted, so that callers can rely on all locks
+        // having been released (or failed to release) when close returns.
+        for (Future<Void> release : releases) {
+            try {
+                Uninterruptibles.getUninterruptibly(release);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                exceptions.add(cause instanceof IOException
+                        ? (IOException) cause
+                        : new IOException("Unexpected exception releasing lock.", cause));
+            }
         }
+
+        return exceptions;
     }
 }
@@ -0,0 +1,100 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler.lightblue.partitioning;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.redhat.lightblue.client.util.ClientConstants;
+import com.redhat.lightblue.generator.Description;
+import com.redhat.lightblue.generator.EntityName;
+import com.redhat.lightblue.generator.Identity;
+import com.redhat.lightblue.generator.Required;
+import com.redhat.lightblue.generator.Version;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Serialization-friendly "data object" for a live event handler node, which periodically
+ * refreshes its heartbeat so that other nodes know to share work with it.
+ *
+ * @see LightblueClusterMembershipRoute
+ */
+@EntityName(ClusterMemberEntity.ENTITY_NAME)
+@Version(value = "0.1.1-SNAPSHOT", preferImplementationVersion = false, changelog = "Initial release")
+public class ClusterMemberEntity {
+    public static final String ENTITY_NAME = "eventHandlerClusterMember";
+    public static final String ENTITY_VERSION = Version.FromAnnotation.onEntity(ClusterMemberEntity.class);
+
+    private String memberId;
+    private String group;
+    private ZonedDateTime lastHeartbeatDate;
+
+    private static final String LIGHTBLUE_DATE_FORMAT = ClientConstants.LIGHTBLUE_DATE_FORMAT_STR;
+
+    public static ClusterMemberEntity heartbeat(String memberId, String group,
+            ZonedDateTime heartbeatDate) {
+        ClusterMemberEntity entity = new ClusterMemberEntity();
+        entity.setMemberId(memberId);
+        entity.setGroup(group);
+        entity.setLastHeartbeatDate(heartbeatDate);
+        return entity;
+    }
+
+    public String getMemberId() {
+        return memberId;
+    }
+
+    @Identity
+    @Required
+    @Description("Uniquely identifies a node among all members of all groups.")
+    public void setMemberId(String memberId) {
+        this.memberId = memberId;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    @Required
+    @Description("Members of the same group share the same work. This is typically the same as " +
+            "the event handler config domain.")
+    public void setGroup(String group) {
+        this.group = group;
+    }
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = LIGHTBLUE_DATE_FORMAT)
+    public ZonedDateTime getLastHeartbeatDate() {
+        return lastHeartbeatDate;
+    }
+
+    @Required
+    @Description("When the member last announced it was alive. Members which have not done so " +
+            "recently are no longer assigned any work.")
+    public void setLastHeartbeatDate(ZonedDateTime lastHeartbeatDate) {
+        this.lastHeartbeatDate = lastHeartbeatDate;
+    }
+
+    @Override
+    public String toString() {
+        return "ClusterMemberEntity{" +
+                "memberId='" + memberId + '\'' +
+                ", group='" + group + '\'' +
+                ", lastHeartbeatDate=" + lastHeartbeatDate +
+                '}';
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler.lightblue.partitioning;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Divides the hash space of resource ids into ranges owned by each member of a cluster, using
+ * consistent hashing so that when a member joins or leaves, only the ranges adjacent to it change
+ * owners.
+ *
+ * <p>Each member is placed on the hash ring several times ("virtual nodes") so that ranges are
+ * spread evenly even among few members.
+ *
+ * <p>Until members are known, this node owns everything. Members are typically kept up to date by
+ * {@link LightblueClusterMembershipRoute}.
+ */
+@ThreadSafe
+public class ConsistentHashPartitioner implements IdentityPartitioner {
+    private final String memberId;
+    private final int virtualNodesPerMember;
+
+    private volatile Set<String> members = Collections.emptySet();
+    private volatile NavigableMap<Integer, String> ring = Collections.emptyNavigableMap();
+
+    private static final HashFunction hashFunction = Hashing.murmur3_32();
+    private static final Logger logger = LoggerFactory.getLogger(ConsistentHashPartitioner.class);
+
+    /**
+     * @param memberId Uniquely identifies this node among all members of the cluster.
+     * @param virtualNodesPerMember How many times each member is placed on the hash ring. More
+     *                              spreads ranges more evenly, at the cost of a larger ring.
+     */
+    public ConsistentHashPartitioner(String memberId, int virtualNodesPerMember) {
+        if (virtualNodesPerMember < 1) {
+            throw new IllegalArgumentException("virtualNodesPerMember must be at least 1 but " +
+                    "was: " + virtualNodesPerMember);
+        }
+
+        this.memberId = Objects.requireNonNull(memberId, "memberId");
+        this.virtualNodesPerMember = virtualNodesPerMember;
+    }
+
+    public String getMemberId() {
+        return memberId;
+    }
+
+    public Set<String> getMembers() {
+        return members;
+    }
+
+    /**
+     * Replaces the known members of the cluster, rebuilding the hash ring if they changed.
+     */
+    public synchronized void updateMembers(Collection<String> memberIds) {
+        Set<String> newMembers = Collections.unmodifiableSet(new TreeSet<>(memberIds));
+
+        if (newMembers.equals(members)) {
+            return;
+        }
+
+        NavigableMap<Integer, String> newRing = new TreeMap<>();
+
+        for (String member : newMembers) {
+            for (int i = 0; i < virtualNodesPerMember; i++) {
+                newRing.put(hash(member + "#" + i), member);
+            }
+        }
+
+        logger.info("Cluster members changed from {} to {}. Member {} is{} a member.",
+                members, newMembers, memberId, newMembers.contains(memberId) ? "" : " not");
+
+        ring = Collections.unmodifiableNavigableMap(newRing);
+        members = newMembers;
+    }
+
+    /**
+     * @return The member owning the range which contains {@code resourceId}'s hash, or this
+     * member if no members are known.
+     */
+    public String ownerOf(String resourceId) {
+        NavigableMap<Integer, String> currentRing = ring;
+
+        if (currentRing.isEmpty()) {
+            return memberId;
+        }
+
+        Map.Entry<Integer, String> owner = currentRing.ceilingEntry(hash(resourceId));
+
+        return owner == null
+                ? currentRing.firstEntry().getValue()
+                : owner.getValue();
+    }
+
+    @Override
+    public boolean isOwned(String resourceId) {
+        return memberId.equals(ownerOf(resourceId));
+    }
+
+    private static int hash(String value) {
+        return hashFunction.hashString(value, StandardCharsets.UTF_8).asInt();
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler.lightblue.partitioning;
+
+/**
+ * Decides which resources, by their resource id, this node should prefer to work on.
+ *
+ * <p>Ownership is only a preference used to reduce lock contention among nodes. It is never a
+ * substitute for locking: a node may still work on a resource it does not own, for example when it
+ * has nothing else to do, and ownership may change at any time as nodes join or leave.
+ *
+ * @see ConsistentHashPartitioner
+ */
+public interface IdentityPartitioner {
+    /**
+     * @param resourceId Typically an identity's {@link
+     * org.esbtools.eventhandler.lightblue.locking.Lockable#getResourceId() resource id}.
+     * @return Whether or not this node owns the partition which contains the resource.
+     */
+    boolean isOwned(String resourceId);
+
+    /**
+     * @return A partitioner for a node which works alone, and so owns every resource.
+     */
+    static IdentityPartitioner ownsEverything() {
+        return (resourceId) -> true;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler.lightblue.partitioning;
+
+import org.esbtools.eventhandler.lightblue.client.FindRequests;
+import org.esbtools.eventhandler.lightblue.client.SaveRequests;
+
+import com.redhat.lightblue.client.LightblueClient;
+import org.apache.camel.builder.RouteBuilder;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Periodically announces this node as a live member of its group, stored as a
+ * {@link ClusterMemberEntity}, and updates a {@link ConsistentHashPartitioner} with all members of
+ * the group which have announced themselves recently.
+ *
+ * <p>Members which stop announcing themselves, such as nodes which were shut down, simply fall
+ * out of the partitioning once {@code memberTimeout} passes. Their entities may be cleaned up with
+ * a {@link org.esbtools.eventhandler.lightblue.PeriodicDeleteOldEntitiesRoute} on
+ * {@code lastHeartbeatDate}.
+ */
+public class LightblueClusterMembershipRoute extends RouteBuilder {
+    private final String group;
+    private final Duration heartbeatInterval;
+    private final Duration memberTimeout;
+    private final LightblueClient lightblue;
+    private final ConsistentHashPartitioner partitioner;
+    private final Clock clock;
+
+    /**
+     * @param group See {@link ClusterMemberEntity#setGroup(String)}.
+     * @param heartbeatInterval How often to announce this member and refresh the others.
+     * @param memberTimeout How long since its last heartbeat until a member is considered gone.
+     *                      Should be several heartbeat intervals.
+     * @param lightblue A lightblue client configured to talk to lightblue
+     * @param partitioner The partitioner to update. Its member id identifies this member.
+     */
+    public LightblueClusterMembershipRoute(String group, Duration heartbeatInterval,
+            Duration memberTimeout, LightblueClient lightblue,
+            ConsistentHashPartitioner partitioner, Clock clock) {
+        this.group = Objects.requireNonNull(group, "group");
+        this.heartbeatInterval = Objects.requireNonNull(heartbeatInterval, "heartbeatInterval");
+        this.memberTimeout = Objects.requireNonNull(memberTimeout, "memberTimeout");
+        this.lightblue = Objects.requireNonNull(lightblue, "lightblue");
+        this.partitioner = Objects.requireNonNull(partitioner, "partitioner");
+        this.clock = Objects.requireNonNull(clock, "clock");
+
+        if (memberTimeout.compareTo(heartbeatInterval) <= 0) {
+            throw new IllegalArgumentException("memberTimeout must be longer than " +
+                    "heartbeatInterval, otherwise members will time out between heartbeats. " +
+                    "memberTimeout was " + memberTimeout + " and heartbeatInterval was " +
+                    heartbeatInterval);
+        }
+    }
+
+    @Override
+    public void configure() throws Exception {
+        String memberId = partitioner.getMemberId();
+
+        from("timer:clusterMembershipHeartbeat-" + memberId +
+                "?period=" + heartbeatInterval.toMillis())
+        .routeId("clusterMembershipHeartbeat-" + memberId)
+        .process(exchange -> {
+            ZonedDateTime now = ZonedDateTime.now(clock);
+
+            lightblue.data(SaveRequests.clusterMemberHeartbeat(
+                    ClusterMemberEntity.heartbeat(memberId, group, now)));
+
+            ClusterMemberEntity[] liveMembers = lightblue
+                    .data(FindRequests.clusterMembersWithHeartbeatSince(
+                            group, now.minus(memberTimeout).toInstant()))
+                    .parseProcessed(ClusterMemberEntity[].class);
+
+            Set<String> memberIds = new HashSet<>(liveMembers.length + 1);
+            memberIds.add(memberId);
+
+            for (ClusterMemberEntity member : liveMembers) {
+                memberIds.add(member.getMemberId());
+            }
+
+            partitioner.updateMembers(memberIds);
+        });
+    }
+}
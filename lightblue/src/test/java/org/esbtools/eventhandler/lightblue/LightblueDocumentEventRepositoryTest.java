@@ -333,6 +333,55 @@ public class LightblueDocumentEventRepositoryTest {
         assertThat(supersededSurvivorOfIds).named("superseded entities survivor of ids").isEmpty();
     }
 
+    @Test
+    public void shouldClaimDocumentEventsAtomicallyUpToRequestedMax() throws Exception {
+        config.setClaimDocumentEventsAtomically(true);
+
+        insertDocumentEventEntities(
+                newStringDocumentEventEntity("1"),
+                newStringDocumentEventEntity("2"),
+                newStringDocumentEventEntity("3"));
+
+        List<LightblueDocumentEvent> retrieved = repository.retrievePriorityDocumentEventsUpTo(2);
+
+        List<DocumentEventEntity> processing = findDocumentEventEntitiesWhere(
+                Query.withValue("status", Query.BinOp.eq, DocumentEventEntity.Status.processing));
+        List<DocumentEventEntity> unprocessed = findDocumentEventEntitiesWhere(
+                Query.withValue("status", Query.BinOp.eq, DocumentEventEntity.Status.unprocessed));
+
+        assertEquals(2, retrieved.size());
+        assertEquals(2, processing.size());
+        assertEquals(1, unprocessed.size());
+    }
+
+    @Test
+    public void shouldMarkSupersededEventsAndTrackVictimIdsWhenClaimingAtomically()
+            throws Exception {
+        config.setClaimDocumentEventsAtomically(true);
+
+        Clock creationTimeClock = Clock.offset(fixedClock, Duration.ofHours(1).negated());
+
+        insertDocumentEventEntities(
+                newStringDocumentEventEntity("duplicate", creationTimeClock),
+                newStringDocumentEventEntity("duplicate", creationTimeClock),
+                newStringDocumentEventEntity("duplicate", creationTimeClock));
+
+        List<LightblueDocumentEvent> retrieved = repository.retrievePriorityDocumentEventsUpTo(3);
+
+        List<DocumentEventEntity> supersededEntities = findDocumentEventEntitiesWhere(
+                Query.withValue("status", Query.BinOp.eq, DocumentEventEntity.Status.superseded));
+        List<DocumentEventEntity> survivorEntities = findDocumentEventEntitiesWhere(
+                Query.withValue("status", Query.BinOp.eq, DocumentEventEntity.Status.processing));
+
+        assertEquals(1, retrieved.size());
+        assertEquals(2, supersededEntities.size());
+        assertEquals(1, survivorEntities.size());
+        assertThat(survivorEntities.get(0).getSurvivorOfIds()).containsExactlyElementsIn(
+                supersededEntities.stream()
+                        .map(DocumentEventEntity::get_id)
+                        .collect(Collectors.toList()));
+    }
+
     @Test
     public void shouldCheckIfLowerPriorityEventsSupersedeHigherPriorityEventsAndMarkAsSupersededAndTrackVictimsIds()
             throws Exception {
@@ -892,6 +941,74 @@ public class LightblueDocumentEventRepositoryTest {
         }
     }
 
+    @Test
+    public void shouldMarkRetrievedDocumentEventsAsProcessingWhenGroupingClaims() throws Exception {
+        config.setGroupDocumentEventClaims(true);
+
+        insertDocumentEventEntities(
+                newStringDocumentEventEntity("foo"),
+                newStringDocumentEventEntity("bar"),
+                newStringDocumentEventEntity("baz"));
+
+        List<LightblueDocumentEvent> retrieved = repository.retrievePriorityDocumentEventsUpTo(3);
+
+        DataFindRequest findDocEvent = new DataFindRequest(DocumentEventEntity.ENTITY_NAME, DocumentEventEntity.VERSION);
+        findDocEvent.select(Projection.includeFieldRecursively("*"));
+        findDocEvent.where(Query.withValue("canonicalType", Query.BinOp.eq, "String"));
+        DocumentEventEntity[] found = client.data(findDocEvent).parseProcessed(DocumentEventEntity[].class);
+
+        assertEquals(3, retrieved.size());
+        assertEquals(3, found.length);
+
+        for (DocumentEventEntity entity : found) {
+            assertEquals(DocumentEventEntity.Status.processing, entity.getStatus());
+        }
+    }
+
+    @Test
+    public void shouldOnlyIgnoreEventsOfClaimGroupWhichWereUpdatedByAnotherThread()
+            throws Exception {
+        config.setGroupDocumentEventClaims(true);
+        lockStrategy.pauseAfterLock();
+
+        Instant timedout = fixedClock.instant()
+                .minus(PROCESSING_TIMEOUT)
+                .minus(Duration.ofMillis(1));
+
+        LightblueDocumentEvent event1 = newDocumentEventThatStartedProcessingAt("1", timedout);
+        LightblueDocumentEvent event2 = newDocumentEventThatStartedProcessingAt("2", timedout);
+
+        DocumentEventEntity[] inserted = insertDocumentEventEntities(
+                event1.wrappedDocumentEventEntity(), event2.wrappedDocumentEventEntity());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            Future<List<LightblueDocumentEvent>> futureEvents =
+                    executor.submit(() -> repository.retrievePriorityDocumentEventsUpTo(2));
+
+            lockStrategy.waitForLock();
+
+            // Update one event's timestamp while lock strategy is paused
+            inserted[0].setProcessingDate(ZonedDateTime.now(fixedClock).plus(1, ChronoUnit.SECONDS));
+            saveDocumentEventEntity(inserted[0]);
+
+            lockStrategy.unpause();
+
+            List<LightblueDocumentEvent> retrieved = futureEvents.get();
+
+            assertEquals(1, retrieved.size());
+            assertEquals(inserted[1].get_id(), retrieved.get(0).wrappedDocumentEventEntity().get_id());
+        } finally {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
     @Test(expected = Exception.class)
     public void shouldRecognizeUpdatesToProvidedTimeoutsConfiguration() throws Exception {
         Duration newProcessingTimeout = PROCESSING_TIMEOUT.dividedBy(2);
@@ -1017,7 +1134,12 @@ public class LightblueDocumentEventRepositoryTest {
     }
 
     private LightblueDocumentEvent newDocumentEventThatStartedProcessingAt(Instant processingDate) {
-        LightblueDocumentEvent event = new StringDocumentEvent(null, "processing", fixedClock);
+        return newDocumentEventThatStartedProcessingAt("processing", processingDate);
+    }
+
+    private LightblueDocumentEvent newDocumentEventThatStartedProcessingAt(String value,
+            Instant processingDate) {
+        LightblueDocumentEvent event = new StringDocumentEvent(null, value, fixedClock);
         DocumentEventEntity expiredEntity = event.wrappedDocumentEventEntity();
         expiredEntity.setStatus(DocumentEventEntity.Status.processing);
         expiredEntity.setProcessingDate(ZonedDateTime.ofInstant(processingDate, fixedClock.getZone()));
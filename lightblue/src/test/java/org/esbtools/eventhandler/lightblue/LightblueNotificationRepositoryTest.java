@@ -196,6 +196,58 @@ public class LightblueNotificationRepositoryTest {
                 .containsExactly("processing", "processing", "processing", "processing");
     }
 
+    @Test
+    public void shouldClaimNotificationsAtomicallyOldestFirstUpToRequestedMax() throws Exception {
+        config.setClaimNotificationsAtomically(true);
+
+        NotificationEntity entity1 = notificationEntityForStringInsert("1", fixedClock.instant());
+        NotificationEntity entity2 = notificationEntityForStringInsert("2", fixedClock.instant().plus(1, ChronoUnit.MINUTES));
+        NotificationEntity entity3 = notificationEntityForStringInsert("3", fixedClock.instant().plus(2, ChronoUnit.MINUTES));
+        NotificationEntity entity4 = notificationEntityForStringInsert("4", fixedClock.instant().plus(3, ChronoUnit.MINUTES));
+
+        insertNotificationEntities(entity3, entity1, entity4, entity2);
+
+        List<LightblueNotification> retrieved = repository.retrieveOldestNotificationsUpTo(3);
+
+        assertThat(retrieved.stream()
+                .map(notification -> notification
+                        .wrappedNotificationEntity()
+                        .getEntityDataForField("value"))
+                .collect(Collectors.toList()))
+                .containsExactly("1", "2", "3");
+
+        List<NotificationEntity> processing = findNotificationEntitiesWhere(Query.withValue(
+                "status", Query.BinOp.eq, NotificationEntity.Status.processing.toString()));
+
+        assertThat(processing.stream()
+                .map(entity -> entity.getEntityDataForField("value"))
+                .collect(Collectors.toList()))
+                .containsExactly("1", "2", "3");
+    }
+
+    @Test
+    public void shouldNotLockNotificationsWhenClaimingAtomically() throws Exception {
+        config.setClaimNotificationsAtomically(true);
+        lockStrategy.allowLockButImmediateLoseIt();
+
+        insertNotificationEntities(randomNotificationEntities(2));
+
+        assertThat(repository.retrieveOldestNotificationsUpTo(2)).hasSize(2);
+    }
+
+    @Test
+    public void shouldClaimNotificationsWithoutLocksIfConfiguredNotToLock() throws Exception {
+        config.setLockNotifications(false);
+        lockStrategy.allowLockButImmediateLoseIt();
+
+        insertNotificationEntities(randomNotificationEntities(2));
+
+        assertThat(repository.retrieveOldestNotificationsUpTo(2)).hasSize(2);
+        assertThat(findNotificationEntitiesWhere(Query.withValue(
+                "status", Query.BinOp.eq, NotificationEntity.Status.processing.toString())))
+                .hasSize(2);
+    }
+
     @Test
     public void shouldRetrieveNonOverlappingSetsOfNotificationsIfCalledByMultipleThreads()
             throws LightblueException, InterruptedException, TimeoutException, ExecutionException {
@@ -0,0 +1,115 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler.lightblue;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.esbtools.eventhandler.lightblue.LightblueDocumentEventRepository.SharedIdentityEvents;
+import org.esbtools.eventhandler.lightblue.client.LightblueRequester;
+import org.esbtools.eventhandler.lightblue.locking.InProcessLockStrategy;
+import org.esbtools.eventhandler.lightblue.locking.LockedResource;
+import org.esbtools.eventhandler.lightblue.locking.LockedResources;
+import org.esbtools.eventhandler.lightblue.partitioning.IdentityPartitioner;
+import org.esbtools.eventhandler.lightblue.testing.GroupedStringDocumentEvent;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mockito;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+@RunWith(JUnit4.class)
+public class SharedIdentityEventsTest {
+    Clock fixedClock = Clock.fixed(Instant.now(), ZoneId.of("GMT"));
+
+    AtomicInteger comparisons = new AtomicInteger(0);
+
+    Map<String, DocumentEventFactory> documentEventFactoriesByType = Collections.singletonMap(
+            "GroupedString",
+            (entity, requester) -> new GroupedStringDocumentEvent(entity, comparisons));
+
+    @Test
+    public void shouldOnlyCompareKeyedEventsWithEventsSharingTheirKey() throws Exception {
+        int groups = 50;
+        int duplicatesPerGroup = 20;
+        DocumentEventEntity[] entities = new DocumentEventEntity[groups * duplicatesPerGroup];
+
+        for (int i = 0; i < entities.length; i++) {
+            entities[i] = GroupedStringDocumentEvent.newEntity(Integer.toString(i),
+                    "group" + (i % groups), "value", ZonedDateTime.now(fixedClock));
+        }
+
+        try (LockedResources<SharedIdentityEvents> locks = parseAndOptimize(entities)) {
+            assertThat(locks.getLocks()).hasSize(1);
+
+            SharedIdentityEvents events = locks.getLocks().iterator().next().getResource();
+
+            Map<DocumentEventEntity.Status, Long> countsByStatus = events.updates.keySet().stream()
+                    .map(LightblueDocumentEvent::wrappedDocumentEventEntity)
+                    .collect(Collectors.groupingBy(DocumentEventEntity::getStatus,
+                            Collectors.counting()));
+
+            assertThat(countsByStatus.get(DocumentEventEntity.Status.processing))
+                    .isEqualTo((long) groups);
+            assertThat(countsByStatus.get(DocumentEventEntity.Status.superseded))
+                    .isEqualTo((long) groups * (duplicatesPerGroup - 1));
+        }
+
+        // Each duplicate is superseded by the first event of its group. Comparing every pair
+        // would have taken many times more comparisons.
+        assertThat(comparisons.get()).isEqualTo(groups * (duplicatesPerGroup - 1));
+    }
+
+    @Test
+    public void shouldTrackSurvivorsOfSupersededKeyedEvents() throws Exception {
+        DocumentEventEntity[] entities = new DocumentEventEntity[] {
+                GroupedStringDocumentEvent.newEntity("1", "a", "value", ZonedDateTime.now(fixedClock)),
+                GroupedStringDocumentEvent.newEntity("2", "b", "value", ZonedDateTime.now(fixedClock)),
+                GroupedStringDocumentEvent.newEntity("3", "a", "value", ZonedDateTime.now(fixedClock)),
+                GroupedStringDocumentEvent.newEntity("4", "a", "other", ZonedDateTime.now(fixedClock))
+        };
+
+        try (LockedResources<SharedIdentityEvents> locks = parseAndOptimize(entities)) {
+            LockedResource<SharedIdentityEvents> lock = locks.getLocks().iterator().next();
+
+            assertThat(entities[0].getStatus()).isEqualTo(DocumentEventEntity.Status.processing);
+            assertThat(entities[0].getSurvivorOfIds()).containsExactly("3");
+            assertThat(entities[1].getStatus()).isEqualTo(DocumentEventEntity.Status.processing);
+            assertThat(entities[2].getStatus()).isEqualTo(DocumentEventEntity.Status.superseded);
+            assertThat(entities[3].getStatus()).isEqualTo(DocumentEventEntity.Status.processing);
+            assertThat(lock.getResource().updates).hasSize(4);
+        }
+    }
+
+    private LockedResources<SharedIdentityEvents> parseAndOptimize(
+            DocumentEventEntity[] entities) {
+        return SharedIdentityEvents.parseAndOptimizeLockableDocumentEventEntities(
+                entities.length, entities, Mockito.mock(LightblueRequester.class),
+                documentEventFactoriesByType, new InProcessLockStrategy(),
+                IdentityPartitioner.ownsEverything(), fixedClock);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.esbtools.eventhandler.lightblue.client;
+
+import org.esbtools.eventhandler.lightblue.DocumentEventEntity;
+import org.esbtools.lightbluenotificationhook.NotificationEntity;
+
+import com.google.common.truth.Truth;
+import com.redhat.lightblue.client.request.data.DataUpdateRequest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class UpdateRequestsTest {
+    ZonedDateTime now = ZonedDateTime.now();
+
+    @Test
+    public void shouldUpdateDocumentEventsSharingStatusAndProcessedDateInOneRequest() {
+        List<DataUpdateRequest> requests = new ArrayList<>(
+                UpdateRequests.documentEventsStatusAndProcessedDateInGroups(Arrays.asList(
+                        documentEvent("1", DocumentEventEntity.Status.published, now),
+                        documentEvent("2", DocumentEventEntity.Status.failed, now),
+                        documentEvent("3", DocumentEventEntity.Status.published, now))));
+
+        Truth.assertThat(requests).hasSize(2);
+        Truth.assertThat(ids(requests.get(0))).containsExactly("1", "3").inOrder();
+        Truth.assertThat(status(requests.get(0))).isEqualTo("published");
+        Truth.assertThat(ids(requests.get(1))).containsExactly("2");
+        Truth.assertThat(status(requests.get(1))).isEqualTo("failed");
+    }
+
+    @Test
+    public void shouldUpdateDocumentEventsWithDifferentProcessedDatesInSeparateRequests() {
+        Collection<DataUpdateRequest> requests =
+                UpdateRequests.documentEventsStatusAndProcessedDateInGroups(Arrays.asList(
+                        documentEvent("1", DocumentEventEntity.Status.published, now),
+                        documentEvent("2", DocumentEventEntity.Status.published,
+                                now.plusSeconds(1))));
+
+        Truth.assertThat(requests).hasSize(2);
+    }
+
+    @Test
+    public void shouldNotSetProcessedDateOfDocumentEventsWithoutOne() {
+        Collection<DataUpdateRequest> requests =
+                UpdateRequests.documentEventsStatusAndProcessedDateInGroups(Arrays.asList(
+                        documentEvent("1", DocumentEventEntity.Status.failed, null)));
+
+        Truth.assertThat(requests).hasSize(1);
+        Truth.assertThat(requests.iterator().next().getBody()).doesNotContain("processedDate");
+    }
+
+    @Test
+    public void shouldSkipDocumentEventsWithoutIds() {
+        Collection<DataUpdateRequest> requests =
+                UpdateRequests.documentEventsStatusAndProcessedDateInGroups(Arrays.asList(
+                        documentEvent(null, DocumentEventEntity.Status.published, now),
+                        documentEvent("2", DocumentEventEntity.Status.published, now)));
+
+        Truth.assertThat(requests).hasSize(1);
+        Truth.assertThat(ids(requests.iterator().next())).containsExactly("2");
+    }
+
+    @Test
+    public void shouldUpdateNotificationsSharingStatusAndProcessedDateInOneRequest() {
+        Date processedDate = new Date();
+
+        List<DataUpdateRequest> requests = new ArrayList<>(
+                UpdateRequests.notificationsStatusAndProcessedDateInGroups(Arrays.asList(
+                        notification("1", NotificationEntity.Status.processed, processedDate),
+                        notification("2", NotificationEntity.Status.processed, processedDate),
+                        notification("3", NotificationEntity.Status.failed, processedDate),
+                        notification(null, NotificationEntity.Status.failed, processedDate))));
+
+        Truth.assertThat(requests).hasSize(2);
+        Truth.assertThat(ids(requests.get(0))).containsExactly("1", "2").inOrder();
+        Truth.assertThat(status(requests.get(0))).isEqualTo("processed");
+        Truth.assertThat(ids(requests.get(1))).containsExactly("3");
+        Truth.assertThat(status(requests.get(1))).isEqualTo("failed");
+    }
+
+    static DocumentEventEntity documentEvent(String id, DocumentEventEntity.Status status,
+            ZonedDateTime processedDate) {
+        DocumentEventEntity entity = new DocumentEventEntity();
+        entity.set_id(id);
+        entity.setStatus(status);
+        entity.setProcessedDate(processedDate);
+        return entity;
+    }
+
+    static NotificationEntity notification(String id, NotificationEntity.Status status,
+            Date processedDate) {
+        NotificationEntity entity = new NotificationEntity();
+        entity.set_id(id);
+        entity.setStatus(status);
+        entity.setProcessedDate(processedDate);
+        return entity;
+    }
+
+    static List<String> ids(DataUpdateRequest request) {
+        List<String> ids = new ArrayList<>();
+        request.getBodyJson().get("query").get("values").forEach(id -> ids.add(id.asText()));
+        return ids;
+    }
+
+    static String status(DataUpdateRequest request) {
+        return request.getBodyJson().get("update").get(0).get("$set").get("status").asText();
+    }
+}
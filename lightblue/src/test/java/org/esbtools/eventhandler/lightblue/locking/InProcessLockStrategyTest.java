@@ -0,0 +1,165 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler.lightblue.locking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.esbtools.eventhandler.lightblue.testing.InMemoryLocking;
+
+import com.redhat.lightblue.client.LightblueException;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(JUnit4.class)
+public class InProcessLockStrategyTest {
+    InProcessLockStrategy localLockStrategy = new InProcessLockStrategy();
+
+    AtomicInteger remoteAcquireAttempts = new AtomicInteger(0);
+
+    InMemoryLocking countingLocking = new InMemoryLocking() {
+        @Override
+        public boolean acquire(String callerId, String resourceId, Long ttl)
+                throws LightblueException {
+            remoteAcquireAttempts.incrementAndGet();
+            return super.acquire(callerId, resourceId, ttl);
+        }
+    };
+
+    LocalThenRemoteLockStrategy localThenRemoteLockStrategy = new LocalThenRemoteLockStrategy(
+            localLockStrategy,
+            new LightblueAutoPingLockStrategy(countingLocking, Duration.ofSeconds(2)));
+
+    @After
+    public void releaseAll() {
+        InMemoryLocking.releaseAll();
+    }
+
+    @Test(expected = LockNotAvailableException.class)
+    public void shouldNotAllowAcquiringSameResourceTwice() throws Exception {
+        localLockStrategy.tryAcquire("resource1");
+        localLockStrategy.tryAcquire("resource1");
+    }
+
+    @Test
+    public void shouldAllowAcquiringResourceAgainAfterRelease() throws Exception {
+        localLockStrategy.tryAcquire("resource1").close();
+        localLockStrategy.tryAcquire("resource1").close();
+
+        assertEquals(0, localLockStrategy.getLockCount());
+    }
+
+    @Test(expected = LostLockException.class)
+    public void shouldThrowLostLockExceptionOnceReleased() throws Exception {
+        LockedResource<String> lock = localLockStrategy.tryAcquire("resource1");
+        lock.close();
+        lock.ensureAcquiredOrThrow("lost");
+    }
+
+    @Test
+    public void shouldNotReleaseAnotherOwnersLockWhenClosedTwice() throws Exception {
+        LockedResource<String> first = localLockStrategy.tryAcquire("resource1");
+        first.close();
+
+        LockedResource<String> second = localLockStrategy.tryAcquire("resource1");
+        first.close();
+
+        second.ensureAcquiredOrThrow("lost");
+    }
+
+    @Test
+    public void shouldNotAskRemoteForResourcesLockedInProcess() throws Exception {
+        LockedResource<String> lock = localThenRemoteLockStrategy.tryAcquire("resource1");
+
+        try {
+            localThenRemoteLockStrategy.tryAcquire("resource1");
+        } catch (LockNotAvailableException expected) {
+            // Expected
+        }
+
+        assertEquals(1, remoteAcquireAttempts.get());
+        lock.ensureAcquiredOrThrow("lost");
+        assertFalse(countingLocking.acquire("resource1"));
+    }
+
+    @Test
+    public void shouldReleaseLocalLockIfRemoteLockIsNotAvailable() throws Exception {
+        assertTrue(countingLocking.acquire("resource1"));
+
+        try {
+            localThenRemoteLockStrategy.tryAcquire("resource1");
+        } catch (LockNotAvailableException expected) {
+            // Expected
+        }
+
+        assertEquals(0, localLockStrategy.getLockCount());
+    }
+
+    @Test
+    public void shouldReleaseBothLocalAndRemoteLocksOnClose() throws Exception {
+        localThenRemoteLockStrategy.tryAcquire("resource1").close();
+
+        assertEquals(0, localLockStrategy.getLockCount());
+        assertTrue(countingLocking.acquire("resource1"));
+    }
+
+    @Test
+    public void shouldReleaseLocalLockWhenRemoteLockIsLost() throws Exception {
+        LockedResource<String> lock = localThenRemoteLockStrategy.tryAcquire("resource1");
+
+        InMemoryLocking.releaseResource("resource1");
+
+        try {
+            lock.ensureAcquiredOrThrow("lost");
+        } catch (LostLockException expected) {
+            // Expected
+        }
+
+        assertEquals(0, localLockStrategy.getLockCount());
+    }
+
+    @Test
+    public void shouldOnlyAcquireManyWhichAreAvailableLocallyAndRemotely() throws Exception {
+        LockedResource<String> heldLocally = localLockStrategy.tryAcquire("resource1");
+        assertTrue(countingLocking.acquire("resource2"));
+        remoteAcquireAttempts.set(0);
+
+        LockedResources<Lockable> locks = localThenRemoteLockStrategy.tryAcquireAll(Arrays.asList(
+                () -> "resource1", () -> "resource2", () -> "resource3"));
+
+        assertEquals(1, locks.getLocks().size());
+        assertEquals("resource3",
+                locks.getLocks().iterator().next().getResource().getResourceId());
+        assertEquals(2, remoteAcquireAttempts.get());
+        assertEquals(2, localLockStrategy.getLockCount());
+
+        locks.close();
+        heldLocally.close();
+
+        assertEquals(0, localLockStrategy.getLockCount());
+        assertTrue(countingLocking.acquire("resource3"));
+    }
+}
@@ -18,12 +18,15 @@
 
 package org.esbtools.eventhandler.lightblue.locking;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import org.esbtools.eventhandler.lightblue.testing.InMemoryLocking;
 
+import com.redhat.lightblue.client.LightblueException;
+
 import org.hamcrest.Matchers;
 import org.junit.After;
 import org.junit.Rule;
@@ -35,9 +38,13 @@ import org.junit.runners.JUnit4;
 import java.io.IOException;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @RunWith(JUnit4.class)
 public class LightblueAutoPingLockStrategyTest {
@@ -53,6 +60,27 @@ public class LightblueAutoPingLockStrategyTest {
             new LightblueAutoPingLockStrategy(inMemoryLocking,
                     Duration.ofMillis(100), Duration.ofMillis(500));
 
+    ScheduledExecutorService sharedPingScheduler =
+            LightblueAutoPingLockStrategy.newSharedPingScheduler(1);
+
+    LightblueAutoPingLockStrategy sharedSchedulerLockStrategy100MsPing500msTtl =
+            new LightblueAutoPingLockStrategy(inMemoryLocking,
+                    Duration.ofMillis(100), Duration.ofMillis(500), sharedPingScheduler);
+
+    AtomicInteger pingRounds = new AtomicInteger(0);
+
+    LockPinger countingPinger = callerIdsByResourceId -> {
+        pingRounds.incrementAndGet();
+        return LockPinger.fromLocking(inMemoryLocking).pingAll(callerIdsByResourceId);
+    };
+
+    LockPingRegistry pingRegistry100MsPing = new LockPingRegistry(countingPinger,
+            Duration.ofMillis(100));
+
+    LightblueAutoPingLockStrategy registryLockStrategy500msTtl =
+            new LightblueAutoPingLockStrategy(inMemoryLocking, Duration.ofMillis(500),
+                    pingRegistry100MsPing);
+
     ExecutorService executor = Executors.newFixedThreadPool(5);
 
     /**
@@ -65,6 +93,8 @@ public class LightblueAutoPingLockStrategyTest {
     @After
     public void shutdownExecutorAndReleaseLocks() {
         executor.shutdown();
+        sharedPingScheduler.shutdownNow();
+        pingRegistry100MsPing.close();
 
         lockedResources.forEach((lockedResource) -> {
             try {
@@ -183,4 +213,237 @@ public class LightblueAutoPingLockStrategyTest {
                     inMemoryLocking.waitUntilNextPingAtMost(Duration.ofSeconds(1)));
         }
     }
+
+    @Test
+    public void shouldMaintainManyLocksPastTheirOriginalTtlUsingASharedScheduler()
+            throws Exception {
+        for (int i = 0; i < 20; i++) {
+            lockedResources.add(sharedSchedulerLockStrategy100MsPing500msTtl.tryAcquire("resource" + i));
+        }
+
+        // Sleep past TTL.
+        Thread.sleep(2000);
+
+        for (int i = 0; i < 20; i++) {
+            assertFalse("The lock expired!", inMemoryLocking.acquire("resource" + i));
+        }
+    }
+
+    @Test
+    public void shouldKeepSharedSchedulerRunningAfterReleasingLocks() throws Exception {
+        LockedResource<String> released =
+                sharedSchedulerLockStrategy100MsPing500msTtl.tryAcquire("resource1");
+        released.close();
+
+        lockedResources.add(sharedSchedulerLockStrategy100MsPing500msTtl.tryAcquire("resource2"));
+
+        assertFalse(sharedPingScheduler.isShutdown());
+        assertTrue("Expected remaining lock to still be pinged",
+                inMemoryLocking.waitUntilNextPingAtMost(Duration.ofSeconds(1)));
+    }
+
+    @Test
+    public void shouldMaintainManyLocksPastTheirOriginalTtlUsingAPingRegistry()
+            throws Exception {
+        for (int i = 0; i < 20; i++) {
+            lockedResources.add(registryLockStrategy500msTtl.tryAcquire("resource" + i));
+        }
+
+        // Sleep past TTL.
+        Thread.sleep(2000);
+
+        for (int i = 0; i < 20; i++) {
+            assertFalse("The lock expired!", inMemoryLocking.acquire("resource" + i));
+        }
+
+        // Roughly one round of pings per interval, instead of one task per lock per interval.
+        assertTrue("Expected at most about one ping round per interval but got " + pingRounds.get(),
+                pingRounds.get() <= 25);
+    }
+
+    @Test
+    public void shouldMaintainManyLocksWithSlowPingsUsingAConcurrentPinger() throws Exception {
+        InMemoryLocking slowLocking = new InMemoryLocking() {
+            @Override
+            public boolean ping(String callerId, String resourceId) throws LightblueException {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.ping(callerId, resourceId);
+            }
+        };
+
+        // Pinged one after another, 20 locks would take a second to ping; longer than their TTL.
+        try (LockPingRegistry concurrentPingRegistry = new LockPingRegistry(
+                LockPinger.fromLocking(slowLocking, executor), Duration.ofMillis(100))) {
+            LightblueAutoPingLockStrategy strategy = new LightblueAutoPingLockStrategy(
+                    slowLocking, Duration.ofMillis(500), concurrentPingRegistry);
+
+            for (int i = 0; i < 20; i++) {
+                lockedResources.add(strategy.tryAcquire("resource" + i));
+            }
+
+            // Sleep past TTL.
+            Thread.sleep(2000);
+
+            for (int i = 0; i < 20; i++) {
+                assertFalse("The lock expired!", slowLocking.acquire("resource" + i));
+            }
+
+            assertEquals(20, concurrentPingRegistry.getLiveLockCount());
+        }
+    }
+
+    @Test
+    public void shouldStopPingingLocksReleasedFromAPingRegistry() throws Exception {
+        LockedResource<String> lock = registryLockStrategy500msTtl.tryAcquire("resource1");
+        lockedResources.add(lock);
+
+        assertEquals(1, pingRegistry100MsPing.getLiveLockCount());
+
+        lock.close();
+
+        assertEquals(0, pingRegistry100MsPing.getLiveLockCount());
+    }
+
+    @Test
+    public void shouldStopPingingLostLocksInAPingRegistry() throws Exception {
+        LockedResource<String> lock = registryLockStrategy500msTtl.tryAcquire("resource1");
+        lockedResources.add(lock);
+
+        InMemoryLocking.releaseAll();
+
+        Thread.sleep(500);
+
+        assertEquals(0, pingRegistry100MsPing.getLiveLockCount());
+    }
+
+    @Test
+    public void shouldAcquireAllAvailableLocksAndSkipThoseHeldElsewhere() throws Exception {
+        assertTrue(inMemoryLocking.acquire("resource2"));
+
+        LockedResources<Lockable> locks = lockStrategy2SecondPing.tryAcquireAll(Arrays.asList(
+                () -> "resource1", () -> "resource2", () -> "resource3"));
+        lockedResources.addAll(locks.getLocks());
+
+        assertEquals(Arrays.asList("resource1", "resource3"), locks.getLocks().stream()
+                .map(lock -> lock.getResource().getResourceId())
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void shouldAcquireAllAvailableLocksConcurrently() throws Exception {
+        assertTrue(inMemoryLocking.acquire("resource2"));
+
+        LockStrategy concurrentStrategy =
+                new ConcurrentAcquireLockStrategy(lockStrategy2SecondPing, executor);
+
+        LockedResources<Lockable> locks = concurrentStrategy.tryAcquireAll(Arrays.asList(
+                () -> "resource1", () -> "resource2", () -> "resource3", () -> "resource4"));
+        lockedResources.addAll(locks.getLocks());
+
+        assertEquals(Arrays.asList("resource1", "resource3", "resource4"), locks.getLocks().stream()
+                .map(lock -> lock.getResource().getResourceId())
+                .collect(Collectors.toList()));
+        assertFalse(inMemoryLocking.acquire("resource4"));
+    }
+
+    @Test
+    public void shouldConfirmLockIsStillAcquiredWithoutPingingWhileLeaseIsTrusted()
+            throws Exception {
+        AtomicInteger pings = new AtomicInteger(0);
+        InMemoryLocking countingLocking = new InMemoryLocking() {
+            @Override
+            public boolean ping(String callerId, String resourceId) throws LightblueException {
+                pings.incrementAndGet();
+                return super.ping(callerId, resourceId);
+            }
+        };
+
+        LightblueAutoPingLockStrategy leaseAwareStrategy = new LightblueAutoPingLockStrategy(
+                countingLocking, Duration.ofSeconds(2), Duration.ofSeconds(10))
+                .withLeaseSafetyMargin(Duration.ofSeconds(5));
+
+        LockedResource<String> lock = leaseAwareStrategy.tryAcquire("resourceAbc");
+        lockedResources.add(lock);
+
+        lock.ensureAcquiredOrThrow("should not be lost");
+        lock.ensureAcquiredOrThrow("should not be lost");
+
+        assertEquals(0, pings.get());
+    }
+
+    @Test
+    public void shouldPingToConfirmLockIsStillAcquiredWhenLeaseIsNearExpiry() throws Exception {
+        AtomicInteger pings = new AtomicInteger(0);
+        InMemoryLocking countingLocking = new InMemoryLocking() {
+            @Override
+            public boolean ping(String callerId, String resourceId) throws LightblueException {
+                pings.incrementAndGet();
+                return super.ping(callerId, resourceId);
+            }
+        };
+
+        LightblueAutoPingLockStrategy leaseAwareStrategy = new LightblueAutoPingLockStrategy(
+                countingLocking, Duration.ofMillis(400), Duration.ofMillis(500))
+                .withLeaseSafetyMargin(Duration.ofMillis(450));
+
+        LockedResource<String> lock = leaseAwareStrategy.tryAcquire("resourceAbc");
+        lockedResources.add(lock);
+
+        Thread.sleep(100);
+
+        lock.ensureAcquiredOrThrow("should not be lost");
+
+        assertEquals(1, pings.get());
+    }
+
+    @Test(expected = LostLockException.class)
+    public void shouldNotTrustLeaseOfClosedLock() throws Exception {
+        LockedResource<String> lock = lockStrategy2SecondPing
+                .withLeaseSafetyMargin(Duration.ofSeconds(1))
+                .tryAcquire("resourceAbc");
+        lockedResources.add(lock);
+
+        lock.close();
+
+        lock.ensureAcquiredOrThrow("should throw");
+    }
+
+    @Test
+    public void shouldReleaseLocksAcquiredTogetherConcurrently() throws Exception {
+        LockStrategy concurrentStrategy =
+                new ConcurrentAcquireLockStrategy(lockStrategy2SecondPing, executor);
+
+        LockedResources<Lockable> locks = concurrentStrategy.tryAcquireAll(Arrays.asList(
+                () -> "resource1", () -> "resource2", () -> "resource3"));
+        lockedResources.addAll(locks.getLocks());
+
+        locks.close();
+
+        assertTrue(inMemoryLocking.acquire("resource1"));
+        assertTrue(inMemoryLocking.acquire("resource2"));
+        assertTrue(inMemoryLocking.acquire("resource3"));
+    }
+
+    @Test
+    public void shouldReleaseAllCombinedLocks() throws Exception {
+        LockStrategy concurrentStrategy =
+                new ConcurrentAcquireLockStrategy(lockStrategy2SecondPing, executor);
+
+        LockedResources<Lockable> combined = LockedResources.combine(Arrays.asList(
+                concurrentStrategy.tryAcquireAll(Arrays.asList(() -> "resource1", () -> "resource2")),
+                lockStrategy2SecondPing.tryAcquireAll(Arrays.asList(() -> "resource3"))));
+        lockedResources.addAll(combined.getLocks());
+
+        assertEquals(3, combined.getLocks().size());
+
+        combined.close();
+
+        assertTrue(inMemoryLocking.acquire("resource1"));
+        assertTrue(inMemoryLocking.acquire("resource2"));
+        assertTrue(inMemoryLocking.acquire("resource3"));
+    }
 }
@@ -0,0 +1,154 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler.lightblue.locking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.esbtools.eventhandler.lightblue.testing.InMemoryLocking;
+
+import com.google.common.base.Ticker;
+import com.redhat.lightblue.client.LightblueException;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+@RunWith(JUnit4.class)
+public class NegativeCachingLockStrategyTest {
+    AtomicInteger acquireAttempts = new AtomicInteger(0);
+
+    InMemoryLocking countingLocking = new InMemoryLocking() {
+        @Override
+        public boolean acquire(String callerId, String resourceId, Long ttl)
+                throws LightblueException {
+            acquireAttempts.incrementAndGet();
+
+            if (resourceId.startsWith("unreachable")) {
+                throw new LightblueException("Simulated communication failure");
+            }
+
+            return super.acquire(callerId, resourceId, ttl);
+        }
+    };
+
+    AtomicLong nanos = new AtomicLong(0);
+
+    Ticker fakeTicker = new Ticker() {
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    };
+
+    NegativeCachingLockStrategy lockStrategy = new NegativeCachingLockStrategy(
+            new LightblueAutoPingLockStrategy(countingLocking, Duration.ofSeconds(2)),
+            Duration.ofSeconds(10), 100, fakeTicker);
+
+    List<LockedResource> lockedResources = new ArrayList<>();
+
+    @After
+    public void releaseLocks() {
+        lockedResources.forEach((lockedResource) -> {
+            try {
+                lockedResource.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+
+        InMemoryLocking.releaseAll();
+    }
+
+    @Test
+    public void shouldNotAskDelegateForRecentlyRefusedResource() throws Exception {
+        assertTrue(countingLocking.acquire("resourceAbc"));
+        acquireAttempts.set(0);
+
+        assertNotAvailable("resourceAbc");
+        assertNotAvailable("resourceAbc");
+
+        assertEquals(1, acquireAttempts.get());
+    }
+
+    @Test
+    public void shouldAskDelegateAgainOnceRefusalWindowPasses() throws Exception {
+        assertTrue(countingLocking.acquire("resourceAbc"));
+
+        assertNotAvailable("resourceAbc");
+
+        InMemoryLocking.releaseResource("resourceAbc");
+        nanos.addAndGet(Duration.ofSeconds(11).toNanos());
+
+        lockedResources.add(lockStrategy.tryAcquire("resourceAbc"));
+    }
+
+    @Test
+    public void shouldRememberRefusalsFromAcquiringMany() throws Exception {
+        assertTrue(countingLocking.acquire("resource2"));
+        acquireAttempts.set(0);
+
+        LockedResources<Lockable> locks = lockStrategy.tryAcquireAll(Arrays.asList(
+                () -> "resource1", () -> "resource2"));
+        lockedResources.addAll(locks.getLocks());
+
+        assertEquals(1, locks.getLocks().size());
+        assertEquals(1, lockStrategy.getRecentlyRefusedCount());
+
+        assertNotAvailable("resource2");
+        assertEquals(2, acquireAttempts.get());
+    }
+
+    @Test
+    public void shouldNotRememberCommunicationFailures() throws Exception {
+        assertNotAvailable("unreachableResource");
+        assertNotAvailable("unreachableResource");
+
+        assertEquals(2, acquireAttempts.get());
+        assertEquals(0, lockStrategy.getRecentlyRefusedCount());
+    }
+
+    @Test
+    public void shouldNotRememberCommunicationFailuresFromAcquiringMany() throws Exception {
+        LockedResources<Lockable> locks = lockStrategy.tryAcquireAll(Arrays.asList(
+                () -> "resource1", () -> "unreachableResource"));
+        lockedResources.addAll(locks.getLocks());
+
+        assertEquals(1, locks.getLocks().size());
+        assertEquals(0, lockStrategy.getRecentlyRefusedCount());
+    }
+
+    private void assertNotAvailable(String resourceId) {
+        try {
+            lockedResources.add(lockStrategy.tryAcquire(resourceId));
+            fail("Expected lock to be unavailable: " + resourceId);
+        } catch (LockNotAvailableException expected) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler.lightblue.partitioning;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(JUnit4.class)
+public class ConsistentHashPartitionerTest {
+    static final List<String> threeMembers = Arrays.asList("node1", "node2", "node3");
+
+    ConsistentHashPartitioner node1 = new ConsistentHashPartitioner("node1", 64);
+    ConsistentHashPartitioner node2 = new ConsistentHashPartitioner("node2", 64);
+    ConsistentHashPartitioner node3 = new ConsistentHashPartitioner("node3", 64);
+
+    @Test
+    public void shouldOwnEverythingUntilMembersAreKnown() {
+        for (int i = 0; i < 100; i++) {
+            assertTrue(node1.isOwned("resource" + i));
+        }
+    }
+
+    @Test
+    public void shouldAssignEachResourceToExactlyOneMember() {
+        node1.updateMembers(threeMembers);
+        node2.updateMembers(threeMembers);
+        node3.updateMembers(threeMembers);
+
+        for (int i = 0; i < 1000; i++) {
+            String resourceId = "resource" + i;
+            int owners = (node1.isOwned(resourceId) ? 1 : 0) +
+                    (node2.isOwned(resourceId) ? 1 : 0) +
+                    (node3.isOwned(resourceId) ? 1 : 0);
+
+            assertEquals(resourceId, 1, owners);
+        }
+    }
+
+    @Test
+    public void shouldSpreadResourcesRoughlyEvenlyAmongMembers() {
+        node1.updateMembers(threeMembers);
+
+        Map<String, Integer> countsByOwner = new HashMap<>();
+
+        for (int i = 0; i < 3000; i++) {
+            countsByOwner.merge(node1.ownerOf("resource" + i), 1, Integer::sum);
+        }
+
+        for (String member : threeMembers) {
+            int count = countsByOwner.getOrDefault(member, 0);
+            assertTrue(member + " owned " + count, count > 500 && count < 1500);
+        }
+    }
+
+    @Test
+    public void shouldOnlyMoveResourcesToNewMemberWhenMemberJoins() {
+        node1.updateMembers(Arrays.asList("node1", "node2"));
+
+        Map<String, String> ownersBefore = new HashMap<>();
+
+        for (int i = 0; i < 1000; i++) {
+            ownersBefore.put("resource" + i, node1.ownerOf("resource" + i));
+        }
+
+        node1.updateMembers(threeMembers);
+
+        for (Map.Entry<String, String> before : ownersBefore.entrySet()) {
+            String ownerAfter = node1.ownerOf(before.getKey());
+
+            assertTrue(before.getKey() + " moved from " + before.getValue() + " to " + ownerAfter,
+                    ownerAfter.equals(before.getValue()) || ownerAfter.equals("node3"));
+        }
+    }
+}
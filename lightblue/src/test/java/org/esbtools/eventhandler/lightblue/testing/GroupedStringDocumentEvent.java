@@ -0,0 +1,115 @@
+/*
+ *  Copyright 2016 esbtools Contributors and/or its affiliates.
+ *
+ *  This file is part of esbtools.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.esbtools.eventhandler.lightblue.testing;
+
+import org.esbtools.eventhandler.DocumentEvent;
+import org.esbtools.eventhandler.lightblue.DocumentEventEntity;
+import org.esbtools.eventhandler.lightblue.DocumentEventEntity.KeyAndValue;
+import org.esbtools.eventhandler.lightblue.Identity;
+import org.esbtools.eventhandler.lightblue.KeyedDocumentEvent;
+import org.esbtools.eventhandler.lightblue.LightblueDocumentEvent;
+
+import com.google.common.util.concurrent.Futures;
+
+import java.time.ZonedDateTime;
+import java.util.Objects;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A test document event which looks up a String value within a group. All events share the same
+ * identity, but only events of the same group and value supersede one another, so the group is
+ * used as the {@link #optimizationKey() optimization key}. Events never merge.
+ *
+ * <p>Counts every comparison made, so tests can verify how many comparisons optimization takes.
+ */
+public class GroupedStringDocumentEvent implements KeyedDocumentEvent {
+    private final String group;
+    private final String value;
+    private final DocumentEventEntity wrappedEntity;
+    private final AtomicInteger comparisons;
+
+    public GroupedStringDocumentEvent(DocumentEventEntity wrappedEntity,
+            AtomicInteger comparisons) {
+        this.wrappedEntity = wrappedEntity;
+        this.comparisons = comparisons;
+
+        group = wrappedEntity.getParameterByKey("group");
+        value = wrappedEntity.getParameterByKey("value");
+    }
+
+    public static DocumentEventEntity newEntity(String id, String group, String value,
+            ZonedDateTime creationDate) {
+        DocumentEventEntity entity = DocumentEventEntity.newlyCreated(null, "GroupedString", 50,
+                creationDate, new KeyAndValue("group", group), new KeyAndValue("value", value));
+        entity.set_id(id);
+        return entity;
+    }
+
+    @Override
+    public Object optimizationKey() {
+        return group;
+    }
+
+    @Override
+    public Identity identity() {
+        return new TypeIdentity(GroupedStringDocumentEvent.class);
+    }
+
+    @Override
+    public DocumentEventEntity wrappedDocumentEventEntity() {
+        return wrappedEntity;
+    }
+
+    @Override
+    public Future<?> lookupDocument() {
+        return Futures.immediateFuture(group + ":" + value);
+    }
+
+    @Override
+    public boolean isSupersededBy(DocumentEvent event) {
+        comparisons.incrementAndGet();
+
+        if (!(event instanceof GroupedStringDocumentEvent)) {
+            return false;
+        }
+
+        GroupedStringDocumentEvent other = (GroupedStringDocumentEvent) event;
+
+        return Objects.equals(group, other.group) && Objects.equals(value, other.value);
+    }
+
+    @Override
+    public boolean couldMergeWith(DocumentEvent event) {
+        return false;
+    }
+
+    @Override
+    public LightblueDocumentEvent merge(DocumentEvent event) {
+        throw new UnsupportedOperationException("Can't do that");
+    }
+
+    @Override
+    public String toString() {
+        return "GroupedStringDocumentEvent{" +
+                "group='" + group + '\'' +
+                ", value='" + value + '\'' +
+                '}';
+    }
+}